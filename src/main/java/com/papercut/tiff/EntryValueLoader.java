@@ -0,0 +1,19 @@
+package com.papercut.tiff;
+
+import java.io.IOException;
+
+/**
+ * 延迟加载的字段值读取
+ */
+interface EntryValueLoader {
+
+    /**
+     * Read the values of a lazily loaded entry
+     *
+     * @param entry
+     *            file directory entry
+     * @return values, see {@link FileDirectoryEntry}
+     */
+    Object load(FileDirectoryEntry entry) throws IOException;
+
+}
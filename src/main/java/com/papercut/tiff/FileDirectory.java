@@ -4,8 +4,19 @@ package com.papercut.tiff;
 import com.papercut.tiff.constant.FieldTagType;
 import com.papercut.tiff.constant.FieldType;
 import com.papercut.tiff.constant.TiffConstants;
+import com.papercut.tiff.cache.BlockCache;
+import com.papercut.tiff.cache.BlockKey;
+import com.papercut.tiff.cache.CachedBlock;
+import com.papercut.tiff.cache.OffHeapBlockCache;
+import com.papercut.tiff.cache.SharedBlockCache;
+import com.papercut.tiff.compression.CompressionDecoder;
+import com.papercut.tiff.compression.CompressionDecoders;
+import com.papercut.tiff.compression.Predictor;
+import com.papercut.tiff.compression.RawCompression;
 import com.papercut.tiff.expection.TiffException;
 
+import java.io.IOException;
+import java.nio.ByteOrder;
 import java.util.*;
 
 /**
@@ -44,15 +55,30 @@ public class FileDirectory{
 	private Integer predictor;
 
 	/**
-	 * Compression decoder
+	 * Compression decoder, created when first needed
 	 */
-//	private CompressionDecoder decoder;
+	private volatile CompressionDecoder decoder;
 
 	/**
 	 * Rasters to write to the TIFF file
 	 */
 	private Rasters writeRasters = null;
 
+	/**
+	 * File the directory was read from, null when for writing
+	 */
+	private final RandomTiffFile file;
+
+	/**
+	 * IFD byte offset within the file, -1 when unknown
+	 */
+	private final long offset;
+
+	/**
+	 * Cache of decoded blocks, null when caching is not enabled
+	 */
+	private volatile BlockCache cache;
+
 	/**
 	 * Last block index, index of single block cache
 	 */
@@ -68,7 +94,7 @@ public class FileDirectory{
 	 * Constructor, for writing TIFF files
 	 */
 	public FileDirectory() {
-		this(null);
+		this(new TreeSet<FileDirectoryEntry>());
 	}
 
 
@@ -81,10 +107,51 @@ public class FileDirectory{
 
 	 */
 	public FileDirectory(SortedSet<FileDirectoryEntry> entries) {
+		this(entries, null);
+	}
+
+	/**
+	 * Constructor, for reading TIFF files
+	 * 
+	 * @param entries
+	 *            file directory entries
+	 * @param file
+	 *            file the blocks are read from
+	 */
+	public FileDirectory(SortedSet<FileDirectoryEntry> entries,
+			RandomTiffFile file) {
+		this(entries, file, -1);
+	}
+
+	/**
+	 * Constructor, for reading TIFF files
+	 * 
+	 * @param entries
+	 *            file directory entries
+	 * @param file
+	 *            file the blocks are read from
+	 * @param offset
+	 *            IFD byte offset within the file, -1 when unknown
+	 */
+	public FileDirectory(SortedSet<FileDirectoryEntry> entries,
+			RandomTiffFile file, long offset) {
 		this.entries = entries;
+		this.file = file;
+		this.offset = offset;
 		for (FileDirectoryEntry entry : entries) {
 			fieldTagTypeMapping.put(entry.getFieldTag(), entry);
 		}
+
+		// Determine if tiled
+		tiled = fieldTagTypeMapping.containsKey(FieldTagType.TileOffsets);
+
+		// Determine the planar configuration, chunky when not specified
+		Integer planar = getPlanarConfiguration();
+		planarConfiguration = planar != null ? planar
+				: TiffConstants.PLANAR_CONFIGURATION_CHUNKY;
+
+		// Determine the predictor
+		predictor = getPredictor();
 	}
 
 	/**
@@ -111,14 +178,59 @@ public class FileDirectory{
 		return tiled;
 	}
 
+	/**
+	 * Get the file the directory was read from
+	 * 
+	 * @return file, null when the directory is for writing
+	 */
+	public RandomTiffFile getFile() {
+		return file;
+	}
+
+	/**
+	 * Get the IFD byte offset within the file
+	 * 
+	 * @return byte offset, -1 when unknown
+	 */
+	public long getOffset() {
+		return offset;
+	}
+
+	/**
+	 * Set the cache of decoded blocks, replacing the single block cache used
+	 * when caching is not enabled
+	 * 
+	 * @param maxBytes
+	 *            max bytes of cached blocks, 0 to disable caching
+	 */
+	public void setCache(long maxBytes) {
+		cache = maxBytes > 0 ? new BlockCache(maxBytes) : null;
+	}
+
+	/**
+	 * Get the cache of decoded blocks
+	 * 
+	 * @return block cache, null when caching is not enabled
+	 */
+	public BlockCache getCache() {
+		return cache;
+	}
+
 	/**
 	 * Get the compression decoder
 	 * 
 	 * @return compression decoder
-	 */
-//	public CompressionDecoder getDecoder() {
-//		return decoder;
-//	}
+	 * @throws TiffException
+	 *             if the compression is not supported
+	 */
+	public CompressionDecoder getDecoder() {
+		CompressionDecoder compressionDecoder = decoder;
+		if (compressionDecoder == null) {
+			compressionDecoder = CompressionDecoders.getDecoder(this);
+			decoder = compressionDecoder;
+		}
+		return compressionDecoder;
+	}
 
 	/**
 	 * Get the number of entries
@@ -621,6 +733,52 @@ public class FileDirectory{
 		setColorMap(createSingleIntegerList(colorMap));
 	}
 
+	/**
+	 * Get the new subfile type bit flags
+	 * 
+	 * @return new subfile type, 0 when not set
+	 */
+	public long getNewSubfileType() {
+		Number newSubfileType = getNumberEntryValue(FieldTagType.NewSubfileType);
+		return newSubfileType != null ? newSubfileType.longValue() : 0;
+	}
+
+	/**
+	 * Is the directory a reduced-resolution version of another image, from
+	 * the new subfile type or the deprecated subfile type
+	 * 
+	 * @return true if reduced resolution
+	 */
+	public boolean isReducedResolution() {
+		if ((getNewSubfileType()
+				& TiffConstants.NEW_SUBFILE_TYPE_REDUCED_IMAGE) != 0) {
+			return true;
+		}
+		Number subfileType = getNumberEntryValue(FieldTagType.SubfileType);
+		return subfileType != null
+				&& subfileType.intValue() == TiffConstants.SUBFILE_TYPE_REDUCED;
+	}
+
+	/**
+	 * Is the directory a transparency mask of another image
+	 * 
+	 * @return true if transparency mask
+	 */
+	public boolean isTransparencyMask() {
+		return (getNewSubfileType()
+				& TiffConstants.NEW_SUBFILE_TYPE_TRANSPARENCY_MASK) != 0;
+	}
+
+	/**
+	 * Get the byte offsets of the child directories listed by SubIFDs
+	 * 
+	 * @return sub IFD offsets, empty when none
+	 */
+	public long[] getSubIfdOffsets() {
+		long[] subIfdOffsets = getLongArrayEntryValue(FieldTagType.SubIFDs);
+		return subIfdOffsets != null ? subIfdOffsets : new long[0];
+	}
+
 	/**
 	 * Get the tile width
 	 * 
@@ -657,8 +815,15 @@ public class FileDirectory{
 	 * @return tile height
 	 */
 	public Number getTileHeight() {
-		return tiled ? getNumberEntryValue(FieldTagType.TileLength)
-				: getRowsPerStrip();
+		if (tiled) {
+			return getNumberEntryValue(FieldTagType.TileLength);
+		}
+		// A missing rows per strip defaults to a single strip
+		Number rowsPerStrip = getRowsPerStrip();
+		return rowsPerStrip != null
+				&& rowsPerStrip.longValue() < getImageHeight().longValue()
+						? rowsPerStrip
+						: getImageHeight();
 	}
 
 	/**
@@ -873,74 +1038,350 @@ public class FileDirectory{
 		return fieldType;
 	}
 
+	/**
+	 * Get the number of tiles or strips across the image
+	 *
+	 * @return blocks across
+	 */
+	public int getBlocksAcross() {
+		int imageWidth = getImageWidth().intValue();
+		int tileWidth = getTileWidth().intValue();
+		return (imageWidth + tileWidth - 1) / tileWidth;
+	}
+
+	/**
+	 * Get the number of tiles or strips down the image
+	 *
+	 * @return blocks down
+	 */
+	public int getBlocksDown() {
+		int imageHeight = getImageHeight().intValue();
+		int tileHeight = getTileHeight().intValue();
+		return (imageHeight + tileHeight - 1) / tileHeight;
+	}
+
+	/**
+	 * Get the number of tiles or strips, including all planes when planar
+	 *
+	 * @return block count
+	 */
+	public int getBlockCount() {
+		FileDirectoryEntry offsets = getBlockOffsetsEntry();
+		return offsets != null ? offsets.getValueCount() : 0;
+	}
+
+	/**
+	 * Get the tile or strip index of a block coordinate
+	 *
+	 * @param blockX
+	 *            block column
+	 * @param blockY
+	 *            block row
+	 * @param sample
+	 *            sample index, only used when planar
+	 * @return block index
+	 */
+	public int getBlockIndex(int blockX, int blockY, int sample) {
+		int blocksAcross = getBlocksAcross();
+		int index = blockY * blocksAcross + blockX;
+		if (planarConfiguration == TiffConstants.PLANAR_CONFIGURATION_PLANAR) {
+			index += sample * blocksAcross * getBlocksDown();
+		}
+		return index;
+	}
+
+	/**
+	 * Get the indices of the tiles or strips covering a pixel window, in row
+	 * major order
+	 *
+	 * @param x
+	 *            window x coordinate
+	 * @param y
+	 *            window y coordinate
+	 * @param width
+	 *            window width
+	 * @param height
+	 *            window height
+	 * @param sample
+	 *            sample index, only used when planar
+	 * @return block indices
+	 */
+	public int[] getBlockIndices(int x, int y, int width, int height,
+			int sample) {
+		int tileWidth = getTileWidth().intValue();
+		int tileHeight = getTileHeight().intValue();
+		int firstX = x / tileWidth;
+		int firstY = y / tileHeight;
+		int lastX = Math.min((x + width - 1) / tileWidth, getBlocksAcross() - 1);
+		int lastY = Math.min((y + height - 1) / tileHeight, getBlocksDown() - 1);
+		int[] indices = new int[(lastX - firstX + 1) * (lastY - firstY + 1)];
+		int i = 0;
+		for (int blockY = firstY; blockY <= lastY; blockY++) {
+			for (int blockX = firstX; blockX <= lastX; blockX++) {
+				indices[i++] = getBlockIndex(blockX, blockY, sample);
+			}
+		}
+		return indices;
+	}
+
+	/**
+	 * Get the file offset of a tile or strip
+	 *
+	 * @param index
+	 *            block index
+	 * @return byte offset
+	 */
+	public long getBlockOffset(int index) {
+		return getBlockOffsetsEntry().getLong(index);
+	}
+
+	/**
+	 * Get the compressed byte count of a tile or strip
+	 *
+	 * @param index
+	 *            block index
+	 * @return byte count
+	 */
+	public long getBlockByteCount(int index) {
+		return fieldTagTypeMapping.get(tiled ? FieldTagType.TileByteCounts
+				: FieldTagType.StripByteCounts).getLong(index);
+	}
+
+	/**
+	 * Get the tile or strip offsets entry
+	 *
+	 * @return offsets entry
+	 */
+	private FileDirectoryEntry getBlockOffsetsEntry() {
+		return fieldTagTypeMapping.get(tiled ? FieldTagType.TileOffsets
+				: FieldTagType.StripOffsets);
+	}
+
 	/**
 	 * Get the tile or strip for the sample coordinate
 	 * 
 	 * @param x
-	 *            x coordinate
+	 *            block x coordinate
 	 * @param y
-	 *            y coordinate
+	 *            block y coordinate
 	 * @param sample
 	 *            sample index
-	 * @return bytes
-	 */
-//	private byte[] getTileOrStrip(int x, int y, int sample) {
-//
-//		byte[] tileOrStrip = null;
-//
-//		int imageWidth = getImageWidth().intValue();
-//		int imageHeight = getImageHeight().intValue();
-//		int tileWidth = getTileWidth().intValue();
-//		int tileHeight = getTileHeight().intValue();
-//		int numTilesPerRow = (imageWidth + tileWidth - 1) / tileWidth;
-//		int numTilesPerCol = (imageHeight + tileHeight - 1) / tileHeight;
-//
-//		int index = 0;
-//		if (planarConfiguration == TiffConstants.PLANAR_CONFIGURATION_CHUNKY) {
-//			index = y * numTilesPerRow + x;
-//		} else if (planarConfiguration == TiffConstants.PLANAR_CONFIGURATION_PLANAR) {
-//			index = sample * numTilesPerRow * numTilesPerCol
-//					+ y * numTilesPerRow + x;
-//		}
-//
-//		// Attempt to pull from the cache
-//		 if (lastBlockIndex == index && lastBlock != null) {
-//			tileOrStrip = lastBlock;
-//		} else {
-//
-//			// Read and decode the block
-//
-//			long offset = 0;
-//			int byteCount = 0;
-//			if (tiled) {
-//				offset = getTileOffsets().get(index).longValue();
-//				byteCount = getTileByteCounts().get(index).intValue();
-//			} else {
-//				offset = getStripOffsets().get(index).longValue();
-//				byteCount = getStripByteCounts().get(index).intValue();
-//			}
-//
-//			reader.setNextByte(offset);
-//			byte[] bytes = reader.readBytes(byteCount);
-//			tileOrStrip = decoder.decode(bytes, reader.getByteOrder());
-//
-//			if (predictor != null) {
-//				tileOrStrip = Predictor.decode(tileOrStrip, predictor,
-//						tileWidth, tileHeight, getBitsPerSample(),
-//						planarConfiguration);
-//			}
-//
-//			// Cache the data
-//			if (cache != null) {
-//				cache.put(index, tileOrStrip);
-//			} else {
-//				lastBlockIndex = index;
-//				lastBlock = tileOrStrip;
-//			}
-//		}
-//
-//		return tileOrStrip;
-//	}
+	 * @return decoded bytes, shared with the cache and must not be modified
+	 * @throws IOException
+	 *             upon failure to read
+	 */
+	public byte[] getTileOrStrip(int x, int y, int sample) throws IOException {
+		return getBlock(getBlockIndex(x, y, sample));
+	}
+
+	/**
+	 * Get the decoded tile or strip, from the cache when present
+	 * 
+	 * @param index
+	 *            block index
+	 * @return decoded bytes, shared with the cache and must not be modified
+	 * @throws IOException
+	 *             upon failure to read
+	 */
+	public byte[] getBlock(int index) throws IOException {
+
+		// Attempt to pull from the cache
+		BlockCache blockCache = cache;
+		byte[] tileOrStrip;
+		if (blockCache != null) {
+			tileOrStrip = blockCache.get(index);
+		} else {
+			synchronized (this) {
+				tileOrStrip = lastBlockIndex == index ? lastBlock : null;
+			}
+		}
+		if (tileOrStrip != null) {
+			return tileOrStrip;
+		}
+
+		// Attempt to pull from the cache shared by all files
+		SharedBlockCache sharedCache = file != null && offset >= 0
+				? file.getOptions().getSharedBlockCache()
+				: null;
+		BlockKey key = null;
+		if (sharedCache != null) {
+			key = getBlockKey(index);
+			tileOrStrip = sharedCache.get(key);
+		}
+
+		// Read and decode the block
+		if (tileOrStrip == null) {
+			tileOrStrip = decodeBlock(index);
+			if (sharedCache != null) {
+				sharedCache.put(key, tileOrStrip);
+			}
+		}
+
+		// Cache the data
+		if (blockCache != null) {
+			blockCache.put(index, tileOrStrip);
+		} else {
+			synchronized (this) {
+				lastBlockIndex = index;
+				lastBlock = tileOrStrip;
+			}
+		}
+
+		return tileOrStrip;
+	}
+
+	/**
+	 * Acquire the decoded tile or strip as a read-only view, from the
+	 * off-heap block cache when one is set in the read options. The block
+	 * stays in the cache until the view is closed
+	 * 
+	 * @param index
+	 *            block index
+	 * @return block view, must be closed
+	 * @throws IOException
+	 *             upon failure to read
+	 */
+	public CachedBlock acquireBlock(int index) throws IOException {
+		OffHeapBlockCache offHeapCache = file != null && offset >= 0
+				? file.getOptions().getOffHeapBlockCache()
+				: null;
+		if (offHeapCache == null) {
+			return CachedBlock.wrap(getBlock(index));
+		}
+		BlockKey key = getBlockKey(index);
+		CachedBlock block = offHeapCache.get(key);
+		if (block == null) {
+			byte[] tileOrStrip = decodeBlock(index);
+			if (!offHeapCache.put(key, tileOrStrip)
+					|| (block = offHeapCache.get(key)) == null) {
+				block = CachedBlock.wrap(tileOrStrip);
+			}
+		}
+		return block;
+	}
+
+	/**
+	 * Get the key of a tile or strip in the caches shared by all files
+	 * 
+	 * @param index
+	 *            block index
+	 * @return block key
+	 */
+	private BlockKey getBlockKey(int index) {
+		int sample = planarConfiguration == TiffConstants.PLANAR_CONFIGURATION_PLANAR
+				? index / (getBlocksAcross() * getBlocksDown())
+				: 0;
+		return new BlockKey(file.getFileId(), offset, index, sample);
+	}
+
+	/**
+	 * Read and decode a tile or strip
+	 * 
+	 * @param index
+	 *            block index
+	 * @return decoded bytes
+	 * @throws IOException
+	 *             upon failure to read
+	 */
+	private byte[] decodeBlock(int index) throws IOException {
+		if (file == null) {
+			throw new TiffException(
+					"File directory is not bound to a file to read blocks from");
+		}
+		if (index < 0 || index >= getBlockCount()) {
+			throw new TiffException("Block index " + index
+					+ " is out of range. Block count: " + getBlockCount());
+		}
+		CompressionDecoder compressionDecoder = getDecoder();
+		long byteCount = getBlockByteCount(index);
+		if (byteCount > Integer.MAX_VALUE) {
+			throw new TiffException("Block byte count too large: " + byteCount);
+		}
+		RandomAccessFileAdapter adapter = file.getFile();
+		byte[] bytes = adapter.readBytes(getBlockOffset(index),
+				(int) byteCount);
+		byte[] block;
+		if (compressionDecoder instanceof RawCompression) {
+			block = bytes;
+		} else {
+			// Decode into a block sized from the block dimensions
+			long blockBytes = getDecodedBlockBytes(index);
+			if (blockBytes > Integer.MAX_VALUE) {
+				throw new TiffException(
+						"Decoded block too large: " + blockBytes);
+			}
+			block = new byte[(int) blockBytes];
+			compressionDecoder.decode(bytes, 0, bytes.length, block, 0,
+					block.length, adapter.getByteOrder());
+		}
+		if (predictor != null && predictor != TiffConstants.PREDICTOR_NO) {
+			undoPredictor(index, block, adapter.getByteOrder());
+		}
+		return block;
+	}
+
+	/**
+	 * Undo the predictor of a decoded block in place
+	 * 
+	 * @param index
+	 *            block index
+	 * @param block
+	 *            decoded block
+	 * @param byteOrder
+	 *            file byte order
+	 */
+	private void undoPredictor(int index, byte[] block, ByteOrder byteOrder) {
+		int samples;
+		int bitsPerSample;
+		if (planarConfiguration == TiffConstants.PLANAR_CONFIGURATION_PLANAR) {
+			int sample = index / (getBlocksAcross() * getBlocksDown());
+			samples = 1;
+			bitsPerSample = getSampleByteSize(sample) * 8;
+		} else {
+			samples = getSamplesPerPixel();
+			bitsPerSample = getBytesPerPixel() / samples * 8;
+		}
+		Predictor.decode(predictor, block, 0, block.length,
+				getTileWidth().intValue(), samples, bitsPerSample, byteOrder);
+	}
+
+	/**
+	 * Get the decoded byte size of a tile or strip. Tiles are always full
+	 * size, the last strip only holds the remaining rows
+	 * 
+	 * @param index
+	 *            block index
+	 * @return decoded bytes
+	 */
+	public long getDecodedBlockBytes(int index) {
+		int blocksAcross = getBlocksAcross();
+		int blocksDown = getBlocksDown();
+		int planeBlocks = blocksAcross * blocksDown;
+		long width = getTileWidth().longValue();
+		long rows = getTileHeight().longValue();
+		if (!tiled) {
+			int blockY = (index % planeBlocks) / blocksAcross;
+			rows = Math.min(rows,
+					getImageHeight().longValue() - blockY * rows);
+		}
+		// Bits per sample defaults to bilevel
+		List<Integer> bitsPerSample = getBitsPerSample();
+		if (bitsPerSample == null) {
+			bitsPerSample = Collections.singletonList(1);
+		}
+		int bitsPerPixel = 0;
+		if (planarConfiguration == TiffConstants.PLANAR_CONFIGURATION_PLANAR) {
+			int sample = index / planeBlocks;
+			bitsPerPixel = bitsPerSample
+					.get(sample < bitsPerSample.size() ? sample : 0);
+		} else {
+			for (int i = 0; i < getSamplesPerPixel(); i++) {
+				bitsPerPixel += bitsPerSample
+						.get(i < bitsPerSample.size() ? i : 0);
+			}
+		}
+		return (width * bitsPerPixel + 7) / 8 * rows;
+	}
 
 	/**
 	 * Get the sample byte size
@@ -1167,6 +1608,19 @@ public class FileDirectory{
 		return getEntryValue(fieldTagType);
 	}
 
+	/**
+	 * Get a long array entry value without boxing, see
+	 * {@link FileDirectoryEntry#getLongArray()}
+	 * 
+	 * @param fieldTagType
+	 *            field tag type
+	 * @return long array value
+	 */
+	public long[] getLongArrayEntryValue(FieldTagType fieldTagType) {
+		FileDirectoryEntry entry = fieldTagTypeMapping.get(fieldTagType);
+		return entry != null ? entry.getLongArray() : null;
+	}
+
 	/**
 	 * Set an unsigned long list of values for the field tag type
 	 * 
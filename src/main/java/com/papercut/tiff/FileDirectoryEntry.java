@@ -4,10 +4,28 @@ package com.papercut.tiff;
 import com.papercut.tiff.constant.FieldTagType;
 import com.papercut.tiff.constant.FieldType;
 import com.papercut.tiff.constant.TiffConstants;
+import com.papercut.tiff.expection.TiffException;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * TIFF File Directory Entry
  * 
+ * Parsed numeric values are stored in primitive arrays by field type: BYTE,
+ * SBYTE and UNDEFINED as byte[], SHORT, SSHORT, SLONG and SRATIONAL as int[],
+ * LONG, RATIONAL, IFD and the BigTIFF LONG8, SLONG8 and IFD8 as long[],
+ * FLOAT as float[] and DOUBLE as double[].
+ * Rationals hold a numerator and denominator per value. ASCII values are a
+ * list of strings. {@link #getValues()} presents the stored values as boxed
+ * numbers for compatibility, the typed accessors avoid boxing.
+ * 
+ * Out-of-line values of a lazily parsed directory are read on first access
+ * from the recorded value offset and cached.
+ * 
  * @author osbornb
  */
 public class FileDirectoryEntry implements Comparable<FileDirectoryEntry> {
@@ -28,9 +46,20 @@ public class FileDirectoryEntry implements Comparable<FileDirectoryEntry> {
 	private final long typeCount;
 
 	/**
-	 * Values
+	 * Values, a primitive array, a list of strings or the boxed values the
+	 * entry was created with. Null until loaded when lazy
+	 */
+	private volatile Object values;
+
+	/**
+	 * Byte offset of out-of-line values, -1 when not lazily loaded
+	 */
+	private final long valueOffset;
+
+	/**
+	 * Loader of lazy values, null once loaded or when not lazy
 	 */
-	private final Object values;
+	private volatile EntryValueLoader loader;
 
 	/**
 	 * Constructor
@@ -42,7 +71,8 @@ public class FileDirectoryEntry implements Comparable<FileDirectoryEntry> {
 	 * @param typeCount
 	 *            type count
 	 * @param values
-	 *            values
+	 *            values, a primitive array matching the field type, a list of
+	 *            strings, a number or a list of numbers
 	 */
 	public FileDirectoryEntry(FieldTagType fieldTag, FieldType fieldType,
 			long typeCount, Object values) {
@@ -50,6 +80,46 @@ public class FileDirectoryEntry implements Comparable<FileDirectoryEntry> {
 		this.fieldType = fieldType;
 		this.typeCount = typeCount;
 		this.values = values;
+		this.valueOffset = -1;
+	}
+
+	/**
+	 * Constructor for an entry with lazily loaded out-of-line values
+	 * 
+	 * @param fieldTag
+	 *            field tag type
+	 * @param fieldType
+	 *            field type
+	 * @param typeCount
+	 *            type count
+	 * @param valueOffset
+	 *            byte offset of the values
+	 * @param loader
+	 *            value loader
+	 */
+	FileDirectoryEntry(FieldTagType fieldTag, FieldType fieldType,
+			long typeCount, long valueOffset, EntryValueLoader loader) {
+		this.fieldTag = fieldTag;
+		this.fieldType = fieldType;
+		this.typeCount = typeCount;
+		this.valueOffset = valueOffset;
+		this.loader = loader;
+	}
+
+	/**
+	 * Get the entry with lazy values read by the loader. Loaded and eager
+	 * entries are immutable and returned as is
+	 * 
+	 * @param loader
+	 *            value loader
+	 * @return bound entry
+	 */
+	FileDirectoryEntry bind(EntryValueLoader loader) {
+		if (isLoaded()) {
+			return this;
+		}
+		return new FileDirectoryEntry(fieldTag, fieldType, typeCount,
+				valueOffset, loader);
 	}
 
 	/**
@@ -80,12 +150,252 @@ public class FileDirectoryEntry implements Comparable<FileDirectoryEntry> {
 	}
 
 	/**
-	 * Get the values
+	 * Get the byte offset of lazily loaded out-of-line values
+	 * 
+	 * @return value offset, -1 when the entry is not lazy
+	 */
+	public long getValueOffset() {
+		return valueOffset;
+	}
+
+	/**
+	 * Are the values loaded, always true when the entry is not lazy
+	 * 
+	 * @return true if loaded
+	 */
+	public boolean isLoaded() {
+		return loader == null;
+	}
+
+	/**
+	 * Get the stored values, loading and caching lazy values on first access
+	 * 
+	 * @return stored values
+	 */
+	Object values() {
+		// The loader is cleared only after the values are published, so
+		// values read after seeing no loader are always loaded
+		if (loader != null) {
+			synchronized (this) {
+				EntryValueLoader pending = loader;
+				if (pending != null) {
+					Object loaded;
+					try {
+						loaded = pending.load(this);
+					} catch (IOException e) {
+						throw new TiffException("Failed to load values of "
+								+ fieldTag + " at byte offset " + valueOffset,
+								e);
+					}
+					values = loaded;
+					loader = null;
+				}
+			}
+		}
+		return values;
+	}
+
+	/**
+	 * Get the values, a single number when the entry holds a single
+	 * non-array, non-rational value, otherwise a list. Primitive storage is
+	 * presented as a boxed list view
 	 * 
 	 * @return values
 	 */
 	public Object getValues() {
-		return values;
+		Object values = values();
+		if (!isPrimitive()) {
+			return values;
+		}
+		List<Number> list = new PrimitiveValueList();
+		if (typeCount == 1 && !fieldTag.isArray()
+				&& fieldType != FieldType.RATIONAL
+				&& fieldType != FieldType.SRATIONAL) {
+			return list.get(0);
+		}
+		return list;
+	}
+
+	/**
+	 * Are the values stored in a primitive array
+	 * 
+	 * @return true if primitive
+	 */
+	public boolean isPrimitive() {
+		Object values = values();
+		return values != null && values.getClass().isArray();
+	}
+
+	/**
+	 * Get the number of stored numeric values, two per rational
+	 * 
+	 * @return value count
+	 */
+	public int getValueCount() {
+		Object values = values();
+		if (isPrimitive()) {
+			return Array.getLength(values);
+		}
+		if (values instanceof List) {
+			return ((List<?>) values).size();
+		}
+		return values != null ? 1 : 0;
+	}
+
+	/**
+	 * Get a value as a long
+	 * 
+	 * @param index
+	 *            value index
+	 * @return long value
+	 */
+	public long getLong(int index) {
+		Object values = values();
+		if (values instanceof long[]) {
+			return ((long[]) values)[index];
+		} else if (values instanceof int[]) {
+			return ((int[]) values)[index];
+		} else if (values instanceof byte[]) {
+			byte value = ((byte[]) values)[index];
+			return fieldType == FieldType.SBYTE ? value : value & 0xff;
+		} else if (values instanceof double[]) {
+			return (long) ((double[]) values)[index];
+		} else if (values instanceof float[]) {
+			return (long) ((float[]) values)[index];
+		}
+		return getNumber(index).longValue();
+	}
+
+	/**
+	 * Get a value as an int
+	 * 
+	 * @param index
+	 *            value index
+	 * @return int value
+	 */
+	public int getInt(int index) {
+		Object values = values();
+		if (values instanceof int[]) {
+			return ((int[]) values)[index];
+		}
+		return (int) getLong(index);
+	}
+
+	/**
+	 * Get a value as a double
+	 * 
+	 * @param index
+	 *            value index
+	 * @return double value
+	 */
+	public double getDouble(int index) {
+		Object values = values();
+		if (values instanceof double[]) {
+			return ((double[]) values)[index];
+		} else if (values instanceof float[]) {
+			return ((float[]) values)[index];
+		} else if (isPrimitive()) {
+			return getLong(index);
+		}
+		return getNumber(index).doubleValue();
+	}
+
+	/**
+	 * Get the values as a long array. LONG, RATIONAL and 64-bit storage is
+	 * returned directly and must not be modified, other types are converted
+	 * 
+	 * @return long values
+	 */
+	public long[] getLongArray() {
+		Object values = values();
+		if (values instanceof long[]) {
+			return (long[]) values;
+		}
+		long[] array = new long[getValueCount()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = getLong(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Get the values as an int array. SHORT, SSHORT, SLONG and SRATIONAL
+	 * storage is returned directly and must not be modified, other types are
+	 * converted
+	 * 
+	 * @return int values
+	 */
+	public int[] getIntArray() {
+		Object values = values();
+		if (values instanceof int[]) {
+			return (int[]) values;
+		}
+		int[] array = new int[getValueCount()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = getInt(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Get the values as a double array. DOUBLE storage is returned directly
+	 * and must not be modified, other types are converted
+	 * 
+	 * @return double values
+	 */
+	public double[] getDoubleArray() {
+		Object values = values();
+		if (values instanceof double[]) {
+			return (double[]) values;
+		}
+		double[] array = new double[getValueCount()];
+		for (int i = 0; i < array.length; i++) {
+			array[i] = getDouble(i);
+		}
+		return array;
+	}
+
+	/**
+	 * Get the raw bytes of a BYTE, SBYTE or UNDEFINED entry, returned
+	 * directly and must not be modified
+	 * 
+	 * @return bytes
+	 */
+	public byte[] getRawBytes() {
+		Object values = values();
+		if (values instanceof byte[]) {
+			return (byte[]) values;
+		}
+		if (fieldType != FieldType.BYTE && fieldType != FieldType.SBYTE
+				&& fieldType != FieldType.UNDEFINED) {
+			throw new TiffException("Raw bytes are not available for field type "
+					+ fieldType + " of " + fieldTag);
+		}
+		byte[] bytes = new byte[getValueCount()];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) getLong(i);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Get a boxed value from the values the entry was created with
+	 * 
+	 * @param index
+	 *            value index
+	 * @return number
+	 */
+	private Number getNumber(int index) {
+		Object values = values();
+		Object value = values instanceof List ? ((List<?>) values).get(index)
+				: values;
+		if (index > 0 && !(values instanceof List)) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", Size: 1");
+		}
+		if (!(value instanceof Number)) {
+			throw new TiffException("Value of " + fieldTag + " is not numeric");
+		}
+		return (Number) value;
 	}
 
 	/**
@@ -146,4 +456,48 @@ public class FileDirectoryEntry implements Comparable<FileDirectoryEntry> {
 		return true;
 	}
 
+	/**
+	 * Boxed list view of the primitive values, boxed to the types the values
+	 * have always been read as
+	 */
+	private class PrimitiveValueList extends AbstractList<Number>
+			implements RandomAccess {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public Number get(int index) {
+			Object values = values();
+			switch (fieldType) {
+			case BYTE:
+			case UNDEFINED:
+				return (short) (((byte[]) values)[index] & 0xff);
+			case SBYTE:
+				return ((byte[]) values)[index];
+			case SSHORT:
+				return (short) ((int[]) values)[index];
+			case SHORT:
+			case SLONG:
+			case SRATIONAL:
+				return ((int[]) values)[index];
+			case FLOAT:
+				return ((float[]) values)[index];
+			case DOUBLE:
+				return ((double[]) values)[index];
+			default:
+				return getLong(index);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int size() {
+			return getValueCount();
+		}
+
+	}
+
 }
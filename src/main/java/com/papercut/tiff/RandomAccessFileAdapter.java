@@ -3,32 +3,134 @@ package com.papercut.tiff;
 
 import com.papercut.tiff.expection.TiffException;
 
+import com.papercut.tiff.io.ByteBufferPool;
+import com.papercut.tiff.io.ByteSource;
+import com.papercut.tiff.io.FileChannelSource;
+import com.papercut.tiff.io.MappedFileSource;
+import com.papercut.tiff.io.ReadPageCache;
+
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
 
-public class RandomAccessFileAdapter {
+/**
+ * TIFF数据读取封装，实际读取由{@link ByteSource}完成。
+ * 带offset参数的读取方法均为无状态的位置读取，可被多个线程并发调用；
+ * 不带offset的方法基于共享的pointer，仅用于单线程的顺序解析
+ */
+public class RandomAccessFileAdapter implements Closeable {
 
-    private RandomAccessFile randomAccessFile;
+    /**
+     * 数据来源
+     */
+    private final ByteSource source;
 
     protected long length;
 
     protected long pointer=0;
 
-    protected ByteOrder byteOrder=null;
+    protected volatile ByteOrder byteOrder=null;
 
 
     public RandomAccessFileAdapter(String filePath, String mode) throws IOException {
+        this(filePath, mode, false);
+    }
+
+    /**
+     * 构造方法
+     *
+     * @param filePath
+     *            file path
+     * @param mode
+     *            r: 只读, rw: 读写
+     * @param mapped
+     *            true to memory map the file and serve reads from the mapping
+     */
+    public RandomAccessFileAdapter(String filePath, String mode, boolean mapped) throws IOException {
+        this(mapped ? new MappedFileSource(existingFile(filePath), mode)
+                : new FileChannelSource(existingFile(filePath), mode));
+    }
+
+    /**
+     * 构造方法，使用页缓存读取文件，小范围读取从缓存的对齐页中完成
+     *
+     * @param filePath
+     *            file path
+     * @param mode
+     *            r: 只读, rw: 读写
+     * @param pageSize
+     *            page size in bytes, see {@link ReadPageCache#DEFAULT_PAGE_SIZE}
+     * @param pageCount
+     *            max number of cached pages, see
+     *            {@link ReadPageCache#DEFAULT_PAGE_COUNT}
+     */
+    public RandomAccessFileAdapter(String filePath, String mode, int pageSize, int pageCount) throws IOException {
+        this(new ReadPageCache(new FileChannelSource(existingFile(filePath), mode), pageSize, pageCount));
+    }
+
+    /**
+     * 构造方法，从任意数据来源读取
+     *
+     * @param source
+     *            byte source
+     */
+    public RandomAccessFileAdapter(ByteSource source) {
+        this.source = source;
+        this.length = source.length();
+    }
+
+    /**
+     * Get the file for the path, verifying it exists
+     *
+     * @param filePath
+     *            file path
+     * @return file
+     */
+    private static File existingFile(String filePath) throws IOException {
         File file = new File(filePath);
         if (!file.exists()){
             throw new IOException("文件不存在: "+filePath);
         }
-        this.randomAccessFile= new RandomAccessFile(file, mode);
-        this.length=randomAccessFile.length();
+        return file;
+    }
+
+    /**
+     * Get the byte source
+     *
+     * @return byte source
+     */
+    public ByteSource getSource() {
+        return source;
+    }
+
+    /**
+     * Is the file memory mapped
+     *
+     * @return true if mapped
+     */
+    public boolean isMapped() {
+        return source instanceof MappedFileSource;
+    }
+
+    /**
+     * Get the read page cache
+     *
+     * @return page cache, null when reads are not buffered
+     */
+    public ReadPageCache getPageCache() {
+        return source instanceof ReadPageCache ? (ReadPageCache) source : null;
+    }
+
+    /**
+     * Get the file length
+     *
+     * @return length in bytes
+     */
+    public long length() {
+        return length;
     }
 
 
@@ -60,8 +162,7 @@ public class RandomAccessFileAdapter {
         verifyRemainingBytes(offset, num);
         String value = null;
         byte[] bytes = new byte[num];
-        randomAccessFile.seek(offset);
-        randomAccessFile.read(bytes);
+        readFully(offset, bytes);
         if (num != 1 || bytes[0] != 0) {
             value = new String(bytes, 0, num, StandardCharsets.US_ASCII);
         }
@@ -88,12 +189,7 @@ public class RandomAccessFileAdapter {
      */
     public short readShort(long offset) throws IOException {
         verifyRemainingBytes(offset, 2);
-        byte[] bytes = new byte[2];
-        randomAccessFile.seek(offset);
-        randomAccessFile.read(bytes);
-        short value = ByteBuffer.wrap(bytes, 0, 2).order(byteOrder)
-                .getShort();
-        return value;
+        return source.getShort(offset, byteOrder);
     }
 
     /**
@@ -139,11 +235,7 @@ public class RandomAccessFileAdapter {
      */
     public int readInt(long offset) throws IOException {
         verifyRemainingBytes(offset, 4);
-        byte[] bytes = new byte[4];
-        randomAccessFile.seek(offset);
-        randomAccessFile.read(bytes);
-        int value = ByteBuffer.wrap(bytes, 0, 4).order(byteOrder).getInt();
-        return value;
+        return source.getInt(offset, byteOrder);
     }
 
     /**
@@ -168,6 +260,29 @@ public class RandomAccessFileAdapter {
         return ((long) this.readInt(offset) & 0xffffffffL);
     }
 
+    /**
+     * Read a long
+     *
+     * @return long
+     */
+    public long readLong() throws IOException {
+        long value = readLong(pointer);
+        pointer += 8;
+        return value;
+    }
+
+    /**
+     * Read a long
+     *
+     * @param offset
+     *            byte offset
+     * @return long
+     */
+    public long readLong(long offset) throws IOException {
+        verifyRemainingBytes(offset, 8);
+        return source.getLong(offset, byteOrder);
+    }
+
     /**
      * Read a byte
      *
@@ -188,9 +303,7 @@ public class RandomAccessFileAdapter {
      */
     public byte readByte(long offset) throws IOException {
         verifyRemainingBytes(offset, 1);
-        randomAccessFile.seek(offset);
-        byte value = randomAccessFile.readByte();
-        return value;
+        return source.getByte(offset);
     }
 
     /**
@@ -240,10 +353,48 @@ public class RandomAccessFileAdapter {
     public byte[] readBytes(long offset, int num) throws IOException {
         verifyRemainingBytes(offset, num);
         byte[] bytes = new byte[num];
-        randomAccessFile.seek(offset);
-        randomAccessFile.read(bytes);
-        byte[] readBytes = Arrays.copyOfRange(bytes, 0, num);
-        return readBytes;
+        readFully(offset, bytes);
+        return bytes;
+    }
+
+    /**
+     * Read bytes into the remaining space of a caller provided buffer, direct
+     * buffers are filled without an intermediate heap array where the source
+     * supports it
+     *
+     * @param offset
+     *            byte offset
+     * @param buffer
+     *            destination buffer, position is advanced by the bytes read
+     */
+    public void readBytes(long offset, ByteBuffer buffer) throws IOException {
+        verifyRemainingBytes(offset, buffer.remaining());
+        source.read(offset, buffer);
+    }
+
+    /**
+     * Read a number of bytes into a buffer acquired from the pool. The
+     * returned buffer is flipped for reading and must be released back to the
+     * pool when no longer used
+     *
+     * @param offset
+     *            byte offset
+     * @param num
+     *            number of bytes
+     * @param pool
+     *            buffer pool
+     * @return pooled buffer
+     */
+    public ByteBuffer readBytes(long offset, int num, ByteBufferPool pool) throws IOException {
+        ByteBuffer buffer = pool.acquire(num);
+        try {
+            readBytes(offset, buffer);
+        } catch (IOException | RuntimeException e) {
+            pool.release(buffer);
+            throw e;
+        }
+        buffer.flip();
+        return buffer;
     }
 
     /**
@@ -266,12 +417,7 @@ public class RandomAccessFileAdapter {
      */
     public float readFloat(long offset) throws IOException {
         verifyRemainingBytes(offset, 4);
-        byte[] bytes = new byte[4];
-        randomAccessFile.seek(offset);
-        randomAccessFile.read(bytes);
-        float value = ByteBuffer.wrap(bytes, 0, 4).order(byteOrder)
-                .getFloat();
-        return value;
+        return source.getFloat(offset, byteOrder);
     }
 
     /**
@@ -294,16 +440,251 @@ public class RandomAccessFileAdapter {
      */
     public double readDouble(long offset) throws IOException {
         verifyRemainingBytes(offset, 8);
-        byte[] bytes = new byte[8];
-        randomAccessFile.seek(offset);
-        randomAccessFile.read(bytes);
-        double value = ByteBuffer.wrap(bytes, 0, 8).order(byteOrder)
-                .getDouble();
-        return value;
+        return source.getDouble(offset, byteOrder);
     }
 
 
+    /**
+     * Read an array of shorts
+     *
+     * @param num
+     *            number of values
+     * @return shorts
+     */
+    public short[] readShorts(int num) throws IOException {
+        short[] values = readShorts(pointer, num);
+        pointer += 2L * num;
+        return values;
+    }
+
+    /**
+     * Read an array of shorts with a single read
+     *
+     * @param offset
+     *            byte offset
+     * @param num
+     *            number of values
+     * @return shorts
+     */
+    public short[] readShorts(long offset, int num) throws IOException {
+        short[] values = new short[num];
+        bulkBuffer(offset, num, 2).asShortBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Read an array of unsigned shorts
+     *
+     * @param num
+     *            number of values
+     * @return unsigned shorts as ints
+     */
+    public int[] readUnsignedShorts(int num) throws IOException {
+        int[] values = readUnsignedShorts(pointer, num);
+        pointer += 2L * num;
+        return values;
+    }
 
+    /**
+     * Read an array of unsigned shorts with a single read
+     *
+     * @param offset
+     *            byte offset
+     * @param num
+     *            number of values
+     * @return unsigned shorts as ints
+     */
+    public int[] readUnsignedShorts(long offset, int num) throws IOException {
+        ByteBuffer buffer = bulkBuffer(offset, num, 2);
+        int[] values = new int[num];
+        for (int i = 0; i < num; i++) {
+            values[i] = buffer.getShort(i << 1) & 0xffff;
+        }
+        return values;
+    }
+
+    /**
+     * Read an array of ints
+     *
+     * @param num
+     *            number of values
+     * @return ints
+     */
+    public int[] readInts(int num) throws IOException {
+        int[] values = readInts(pointer, num);
+        pointer += 4L * num;
+        return values;
+    }
+
+    /**
+     * Read an array of ints with a single read
+     *
+     * @param offset
+     *            byte offset
+     * @param num
+     *            number of values
+     * @return ints
+     */
+    public int[] readInts(long offset, int num) throws IOException {
+        int[] values = new int[num];
+        bulkBuffer(offset, num, 4).asIntBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Read an array of unsigned ints
+     *
+     * @param num
+     *            number of values
+     * @return unsigned ints as longs
+     */
+    public long[] readUnsignedInts(int num) throws IOException {
+        long[] values = readUnsignedInts(pointer, num);
+        pointer += 4L * num;
+        return values;
+    }
+
+    /**
+     * Read an array of unsigned ints with a single read
+     *
+     * @param offset
+     *            byte offset
+     * @param num
+     *            number of values
+     * @return unsigned ints as longs
+     */
+    public long[] readUnsignedInts(long offset, int num) throws IOException {
+        ByteBuffer buffer = bulkBuffer(offset, num, 4);
+        long[] values = new long[num];
+        for (int i = 0; i < num; i++) {
+            values[i] = buffer.getInt(i << 2) & 0xffffffffL;
+        }
+        return values;
+    }
+
+    /**
+     * Read an array of longs
+     *
+     * @param num
+     *            number of values
+     * @return longs
+     */
+    public long[] readLongs(int num) throws IOException {
+        long[] values = readLongs(pointer, num);
+        pointer += 8L * num;
+        return values;
+    }
+
+    /**
+     * Read an array of longs with a single read
+     *
+     * @param offset
+     *            byte offset
+     * @param num
+     *            number of values
+     * @return longs
+     */
+    public long[] readLongs(long offset, int num) throws IOException {
+        long[] values = new long[num];
+        bulkBuffer(offset, num, 8).asLongBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Read an array of floats
+     *
+     * @param num
+     *            number of values
+     * @return floats
+     */
+    public float[] readFloats(int num) throws IOException {
+        float[] values = readFloats(pointer, num);
+        pointer += 4L * num;
+        return values;
+    }
+
+    /**
+     * Read an array of floats with a single read
+     *
+     * @param offset
+     *            byte offset
+     * @param num
+     *            number of values
+     * @return floats
+     */
+    public float[] readFloats(long offset, int num) throws IOException {
+        float[] values = new float[num];
+        bulkBuffer(offset, num, 4).asFloatBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Read an array of doubles
+     *
+     * @param num
+     *            number of values
+     * @return doubles
+     */
+    public double[] readDoubles(int num) throws IOException {
+        double[] values = readDoubles(pointer, num);
+        pointer += 8L * num;
+        return values;
+    }
+
+    /**
+     * Read an array of doubles with a single read
+     *
+     * @param offset
+     *            byte offset
+     * @param num
+     *            number of values
+     * @return doubles
+     */
+    public double[] readDoubles(long offset, int num) throws IOException {
+        double[] values = new double[num];
+        bulkBuffer(offset, num, 8).asDoubleBuffer().get(values);
+        return values;
+    }
+
+    /**
+     * Close the byte source
+     */
+    @Override
+    public void close() throws IOException {
+        source.close();
+    }
+
+    /**
+     * Read bytes from the source
+     *
+     * @param offset
+     *            byte offset
+     * @param bytes
+     *            destination bytes, filled completely
+     */
+    private void readFully(long offset, byte[] bytes) throws IOException {
+        source.read(offset, bytes, 0, bytes.length);
+    }
+
+    /**
+     * Read the bytes of a value array with a single read
+     *
+     * @param offset
+     *            byte offset
+     * @param num
+     *            number of values
+     * @param valueBytes
+     *            bytes per value
+     * @return buffer in the file byte order
+     */
+    private ByteBuffer bulkBuffer(long offset, int num, int valueBytes) throws IOException {
+        long size = (long) num * valueBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new TiffException("Value array too large to read. Values: " + num
+                    + ", Bytes per value: " + valueBytes);
+        }
+        return ByteBuffer.wrap(readBytes(offset, (int) size)).order(byteOrder);
+    }
 
     private void verifyRemainingBytes(long offset, int bytesToRead) {
         if (offset + bytesToRead > this.length) {
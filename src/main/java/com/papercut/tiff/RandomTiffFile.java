@@ -5,16 +5,25 @@ import com.papercut.tiff.constant.FieldTagType;
 import com.papercut.tiff.constant.FieldType;
 import com.papercut.tiff.constant.TiffConstants;
 import com.papercut.tiff.expection.TiffException;
+import com.papercut.tiff.io.ByteBufferSource;
+import com.papercut.tiff.io.ByteSource;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
 
 /**
  * 利用RandomAccessFile，将其中的read、readByte、write等操作方法做封装，将对偏离位置的操作转换为对特定行列号的操作
+ * 构造时只读取文件头，页（IFD）在首次访问时按需沿IFD链遍历并解析，
+ * 文件读取均为无状态的位置读取，同一个实例可以在多个线程间共享
  */
-public class RandomTiffFile {
+public class RandomTiffFile implements Closeable {
 
     /**
      * 本RandomTiffFile文件对应的RandomAccessFile
@@ -22,7 +31,51 @@ public class RandomTiffFile {
      */
     private RandomAccessFileAdapter file;
 
-    private Set<FileDirectory> fileDirectories=new HashSet<>();
+    /**
+     * 文件路径，从非文件数据来源构造时为null
+     */
+    private final Path path;
+
+    /**
+     * 文件元数据（页偏移量和已解析的页），可能与同一文件的其他实例共享
+     */
+    private TiffMetadata metadata;
+
+    /**
+     * 元数据缓存，未启用时为null
+     */
+    private TiffMetadataCache metadataCache;
+
+    /**
+     * 元数据缓存键，未启用缓存时为null
+     */
+    private TiffMetadataCache.Key metadataKey;
+
+    /**
+     * 本实例的页，由共享元数据中的页复制并绑定本实例的延迟读取方法，未获取的页为null
+     */
+    private final List<FileDirectory> pages = new ArrayList<>();
+
+    /**
+     * 本实例的子IFD，以IFD偏移量为键
+     */
+    private final Map<Long, FileDirectory> subPages = new HashMap<>();
+
+    /**
+     * 解析选项
+     */
+    private final TiffReadOptions options;
+
+    /**
+     * True if the file is a BigTIFF with 64-bit offsets
+     */
+    private boolean bigTiff;
+
+    /**
+     * 延迟加载字段值的读取方法，使用无状态的位置读取
+     */
+    private final EntryValueLoader valueLoader = entry -> readValues(entry.getValueOffset(),
+            entry.getFieldType(), entry.getTypeCount());
 
 
 
@@ -36,8 +89,109 @@ public class RandomTiffFile {
      * @param mode
      */
     public RandomTiffFile(String filePath,String mode) throws IOException {
-        this.file=new RandomAccessFileAdapter(filePath,mode);
-        readTiff();
+        this(filePath, mode, false);
+    }
+
+    /**
+     * 构造方法，mapped为true时将文件内存映射，所有读取直接从映射内存中完成，
+     * 适用于大文件的频繁随机读取
+     * @param filePath
+     * @param mode
+     * @param mapped
+     */
+    public RandomTiffFile(String filePath,String mode,boolean mapped) throws IOException {
+        this(new RandomAccessFileAdapter(filePath,mode,mapped), new TiffReadOptions(), Paths.get(filePath));
+    }
+
+    /**
+     * 构造方法，通过已打开的RandomAccessFileAdapter构造RandomTiffFile类，
+     * 可使用页缓存等读取方式
+     * @param file
+     */
+    public RandomTiffFile(RandomAccessFileAdapter file) throws IOException {
+        this(file, new TiffReadOptions());
+    }
+
+    /**
+     * 构造方法，通过已打开的RandomAccessFileAdapter和解析选项构造RandomTiffFile类
+     * @param file
+     * @param options
+     */
+    public RandomTiffFile(RandomAccessFileAdapter file, TiffReadOptions options) throws IOException {
+        this(file, options, null);
+    }
+
+    /**
+     * 构造方法，文件路径已知时可使用元数据索引
+     * @param file
+     * @param options
+     * @param path
+     */
+    private RandomTiffFile(RandomAccessFileAdapter file, TiffReadOptions options, Path path) throws IOException {
+        this.file=file;
+        this.options=options;
+        this.path=path;
+        if (path != null && options.getMetadataCache() != null) {
+            metadataCache = options.getMetadataCache();
+            metadataKey = metadataCache.key(path);
+            metadata = metadataCache.get(metadataKey);
+        }
+        if (metadata != null) {
+            // Cached metadata of the same file version, nothing to parse
+            file.setByteOrder(metadata.getByteOrder());
+            bigTiff = metadata.isBigTiff();
+        } else {
+            readTiff();
+            if (path != null && options.isSidecarIndex()) {
+                openSidecarIndex();
+            }
+            if (metadataKey != null) {
+                metadataCache.put(metadataKey, metadata);
+            }
+        }
+    }
+
+    /**
+     * 构造方法，通过文件地址、启动模式和解析选项构造RandomTiffFile类
+     * @param filePath
+     * @param mode
+     * @param options
+     */
+    public RandomTiffFile(String filePath,String mode,TiffReadOptions options) throws IOException {
+        this(new RandomAccessFileAdapter(filePath,mode), options, Paths.get(filePath));
+    }
+
+    /**
+     * 构造方法，从任意数据来源（文件、内存映射、内存、远程范围读取等）构造RandomTiffFile类
+     * @param source
+     */
+    public RandomTiffFile(ByteSource source) throws IOException {
+        this(new RandomAccessFileAdapter(source));
+    }
+
+    /**
+     * 构造方法，从任意数据来源和解析选项构造RandomTiffFile类
+     * @param source
+     * @param options
+     */
+    public RandomTiffFile(ByteSource source, TiffReadOptions options) throws IOException {
+        this(new RandomAccessFileAdapter(source), options);
+    }
+
+    /**
+     * 构造方法，从内存中的TIFF字节构造RandomTiffFile类
+     * @param bytes
+     */
+    public RandomTiffFile(byte[] bytes) throws IOException {
+        this(new ByteBufferSource(bytes));
+    }
+
+    /**
+     * 构造方法，从内存中的TIFF字节构造RandomTiffFile类
+     * @param buffer
+     */
+    public RandomTiffFile(ByteBuffer buffer) throws IOException {
+        this(new ByteBufferSource(buffer));
     }
 
 
@@ -85,208 +239,633 @@ public class RandomTiffFile {
 
         long tiffIdentifier = file.readUnsignedShort();
 
-        if (tiffIdentifier != TiffConstants.FILE_IDENTIFIER) {
+        if (tiffIdentifier == TiffConstants.FILE_IDENTIFIER_BIG_TIFF) {
+            // BigTIFF header: offset byte size, always 8, and a reserved 0
+            int offsetBytes = file.readUnsignedShort();
+            int reserved = file.readUnsignedShort();
+            if (offsetBytes != TiffConstants.BIG_TIFF_OFFSET_BYTES || reserved != 0) {
+                throw new TiffException("Invalid BigTIFF header. Offset bytes: "
+                        + offsetBytes + ", Reserved: " + reserved);
+            }
+            bigTiff = true;
+        } else if (tiffIdentifier != TiffConstants.FILE_IDENTIFIER) {
             throw new TiffException("Invalid file identifier, not a TIFF");
         }
 
-        // Get the offset in bytes of the first image file directory (IFD)
-        long byteOffset = file.readUnsignedInt();
+        // Get the offset in bytes of the first image file directory (IFD),
+        // the pages are walked and parsed on demand
+        long byteOffset = readOffset(file.getPointer());
+        metadata = new TiffMetadata(file.getByteOrder(), bigTiff, byteOffset);
+        pages.clear();
+    }
 
-        // Get the TIFF Image
-        parseTIFFImage(byteOffset);
+    /**
+     * 加载元数据索引，索引不存在或已过期时解析全部页并重建索引
+     */
+    private void openSidecarIndex() throws IOException {
+        TiffSidecarIndex index = TiffSidecarIndex.load(path, file, bigTiff,
+                metadata.getNextPageOffset());
+        if (index != null) {
+            metadata.setSidecarIndex(index);
+        } else {
+            List<FileDirectory> fileDirectories = getFileDirectories();
+            try {
+                TiffSidecarIndex.write(path, file, bigTiff, metadata.getPageOffsets(),
+                        fileDirectories);
+            } catch (IOException e) {
+                // The index is an optimization, unwritable locations are
+                // parsed on every open
+            }
+        }
+    }
 
-//        return tiffImage;
+    /**
+     * 获取页数，只遍历IFD链，跳过各目录项而不解析
+     *
+     * @return number of pages
+     */
+    public int getPageCount() throws IOException {
+        synchronized (metadata) {
+            while (walkNextPage()) {
+                // walk to the end of the chain
+            }
+            return metadata.getWalkedPageCount();
+        }
     }
 
+    /**
+     * 获取第n页（从0开始）的目录，IFD链只遍历到该页为止，解析结果会被缓存
+     *
+     * @param index
+     *            page index
+     * @return file directory
+     */
+    public synchronized FileDirectory getPage(int index) throws IOException {
+        if (index < 0) {
+            throw new IndexOutOfBoundsException("Invalid page index: " + index);
+        }
+        if (index < pages.size() && pages.get(index) != null) {
+            return pages.get(index);
+        }
+
+        FileDirectory sharedPage;
+        boolean parsed = false;
+        synchronized (metadata) {
+            while (metadata.getWalkedPageCount() <= index) {
+                if (!walkNextPage()) {
+                    throw new IndexOutOfBoundsException("Page index: " + index
+                            + ", Page count: " + metadata.getWalkedPageCount());
+                }
+            }
+            sharedPage = metadata.getPage(index);
+            if (sharedPage == null) {
+                TiffSidecarIndex sidecarIndex = metadata.getSidecarIndex();
+                sharedPage = sidecarIndex != null ? sidecarIndex.readPage(index)
+                        : parseFileDirectory(metadata.getPageOffset(index));
+                metadata.setPage(index, sharedPage);
+                parsed = true;
+            }
+        }
+        if (parsed && metadataCache != null) {
+            metadataCache.update(metadataKey, metadata);
+        }
+
+        FileDirectory page = bind(sharedPage, metadata.getPageOffset(index));
+        while (pages.size() <= index) {
+            pages.add(null);
+        }
+        pages.set(index, page);
+        return page;
+    }
 
     /**
-     * 解析IFD
-     * @param byteOffset
-     * @throws IOException
+     * 获取目录的子IFD（SubIFDs标签列出的目录，如金字塔的缩略图层），解析结果会被缓存
+     *
+     * @param directory
+     *            parent directory
+     * @return sub IFDs in the listed order, empty when none
+     */
+    public synchronized List<FileDirectory> getSubDirectories(FileDirectory directory) throws IOException {
+        long[] subIfdOffsets = directory.getSubIfdOffsets();
+        List<FileDirectory> subDirectories = new ArrayList<>(subIfdOffsets.length);
+        boolean parsed = false;
+        for (long subIfdOffset : subIfdOffsets) {
+            FileDirectory subDirectory = subPages.get(subIfdOffset);
+            if (subDirectory == null) {
+                FileDirectory sharedPage;
+                synchronized (metadata) {
+                    sharedPage = metadata.getSubPage(subIfdOffset);
+                    if (sharedPage == null) {
+                        sharedPage = parseFileDirectory(subIfdOffset);
+                        metadata.setSubPage(subIfdOffset, sharedPage);
+                        parsed = true;
+                    }
+                }
+                subDirectory = bind(sharedPage, subIfdOffset);
+                subPages.put(subIfdOffset, subDirectory);
+            }
+            subDirectories.add(subDirectory);
+        }
+        if (parsed && metadataCache != null) {
+            metadataCache.update(metadataKey, metadata);
+        }
+        return subDirectories;
+    }
+
+    /**
+     * 将页划分为全分辨率图像及其缩略图层（金字塔）。缩略图层来自全分辨率页之后
+     * NewSubfileType标记为缩略图的页，以及全分辨率页的子IFD，透明蒙版页被忽略
+     *
+     * @return image pyramids in page order
      */
-    private void parseTIFFImage(long byteOffset) throws IOException {
+    public List<TiffImagePyramid> getImagePyramids() throws IOException {
+        List<TiffImagePyramid> pyramids = new ArrayList<>();
+        FileDirectory fullResolution = null;
+        List<FileDirectory> overviews = new ArrayList<>();
+        int pageCount = getPageCount();
+        for (int i = 0; i < pageCount; i++) {
+            FileDirectory page = getPage(i);
+            if (page.isTransparencyMask()) {
+                continue;
+            }
+            if (page.isReducedResolution() && fullResolution != null) {
+                overviews.add(page);
+                continue;
+            }
+            if (fullResolution != null) {
+                pyramids.add(new TiffImagePyramid(fullResolution, overviews));
+            }
+            fullResolution = page;
+            overviews = new ArrayList<>();
+            for (FileDirectory subDirectory : getSubDirectories(page)) {
+                if (!subDirectory.isTransparencyMask()) {
+                    overviews.add(subDirectory);
+                }
+            }
+        }
+        if (fullResolution != null) {
+            pyramids.add(new TiffImagePyramid(fullResolution, overviews));
+        }
+        return pyramids;
+    }
 
+    /**
+     * 复制共享元数据中的目录，延迟加载的目录项绑定本实例的读取方法
+     *
+     * @param sharedPage
+     *            shared directory
+     * @param byteOffset
+     *            IFD byte offset of the directory
+     * @return directory of this file
+     */
+    private FileDirectory bind(FileDirectory sharedPage, long byteOffset) {
+        SortedSet<FileDirectoryEntry> entries = new TreeSet<>();
+        for (FileDirectoryEntry entry : sharedPage.getEntries()) {
+            entries.add(entry.bind(valueLoader));
+        }
+        FileDirectory directory = new FileDirectory(entries, this, byteOffset);
+        if (options.getBlockCacheBytes() > 0) {
+            directory.setCache(options.getBlockCacheBytes());
+        }
+        return directory;
+    }
 
-        // Continue until the byte offset no longer points to another file
-        // directory
-        while (byteOffset != 0) {
+    /**
+     * 获取第n页目录的偏移量
+     *
+     * @param index
+     *            page index
+     * @return IFD byte offset
+     */
+    public long getPageOffset(int index) throws IOException {
+        synchronized (metadata) {
+            while (metadata.getWalkedPageCount() <= index && walkNextPage()) {
+                // walk to the page
+            }
+            if (index < 0 || index >= metadata.getWalkedPageCount()) {
+                throw new IndexOutOfBoundsException("Page index: " + index
+                        + ", Page count: " + metadata.getWalkedPageCount());
+            }
+            return metadata.getPageOffset(index);
+        }
+    }
 
-            // Set the next byte to read from
-            file.setPointer(byteOffset);
+    /**
+     * 沿IFD链前进一页，记录该页的偏移量，并通过目录项数量跳过各目录项读取下一个IFD偏移量，
+     * 调用时需在metadata上同步
+     *
+     * @return true if a page was walked, false if the chain has ended
+     */
+    private boolean walkNextPage() throws IOException {
+        long byteOffset = metadata.getNextPageOffset();
+        if (byteOffset == 0) {
+            return false;
+        }
+        int offsetBytes;
+        long blockBytes;
+        if (bigTiff) {
+            offsetBytes = TiffConstants.BIG_TIFF_OFFSET_BYTES;
+            blockBytes = getDirectoryBytes(file.readLong(byteOffset),
+                    TiffConstants.BIG_TIFF_IFD_HEADER_BYTES, TiffConstants.BIG_TIFF_IFD_ENTRY_BYTES,
+                    offsetBytes);
+        } else {
+            offsetBytes = TiffConstants.IFD_OFFSET_BYTES;
+            blockBytes = getDirectoryBytes(file.readUnsignedShort(byteOffset),
+                    TiffConstants.IFD_HEADER_BYTES, TiffConstants.IFD_ENTRY_BYTES, offsetBytes);
+        }
+        metadata.addPage(byteOffset, readOffset(byteOffset + blockBytes - offsetBytes));
+        return true;
+    }
 
-            // Create the new directory
-            SortedSet<FileDirectoryEntry> entries = new TreeSet<>();
+    /**
+     * Get the byte size of a directory block, from the entry count through
+     * the next IFD offset
+     *
+     * @param numDirectoryEntries
+     *            number of directory entries
+     * @param headerBytes
+     *            entry count bytes
+     * @param entryBytes
+     *            bytes per entry
+     * @param offsetBytes
+     *            next IFD offset bytes
+     * @return directory bytes, at most Integer.MAX_VALUE
+     */
+    private static long getDirectoryBytes(long numDirectoryEntries, int headerBytes,
+            int entryBytes, int offsetBytes) {
+        // Bound the count before multiplying, huge BigTIFF counts overflow
+        if (numDirectoryEntries < 0 || numDirectoryEntries
+                > (Integer.MAX_VALUE - headerBytes - offsetBytes) / entryBytes) {
+            throw new TiffException("Invalid number of directory entries: " + numDirectoryEntries);
+        }
+        return headerBytes + numDirectoryEntries * entryBytes + offsetBytes;
+    }
 
-            // Read the number of directory entries
+    /**
+     * 解析IFD，目录项数量之后的全部目录项和下一个IFD偏移量通过一次读取获得，
+     * 内联值直接从该块中解码，只有不能内联的值才会再次读取文件
+     * @param byteOffset
+     * @return file directory
+     * @throws IOException
+     */
+    private FileDirectory parseFileDirectory(long byteOffset) throws IOException {
+
+        // Read the number of directory entries
+        int headerBytes;
+        int entryBytes;
+        int offsetBytes;
+        long numDirectoryEntries;
+        if (bigTiff) {
+            headerBytes = TiffConstants.BIG_TIFF_IFD_HEADER_BYTES;
+            entryBytes = TiffConstants.BIG_TIFF_IFD_ENTRY_BYTES;
+            offsetBytes = TiffConstants.BIG_TIFF_OFFSET_BYTES;
+            numDirectoryEntries = file.readLong(byteOffset);
+        } else {
+            headerBytes = TiffConstants.IFD_HEADER_BYTES;
+            entryBytes = TiffConstants.IFD_ENTRY_BYTES;
+            offsetBytes = TiffConstants.IFD_OFFSET_BYTES;
+            numDirectoryEntries = file.readUnsignedShort(byteOffset);
+        }
+        long blockBytes = getDirectoryBytes(numDirectoryEntries, headerBytes, entryBytes, offsetBytes);
 
-            int numDirectoryEntries = file.readUnsignedShort();
+        // Read the whole directory block at once
+        ByteBuffer block = ByteBuffer.wrap(file.readBytes(byteOffset, (int) blockBytes))
+                .order(file.getByteOrder());
 
-            // Read each entry and the values
-            for (short entryCount = 0; entryCount < numDirectoryEntries; entryCount++) {
+        // Create the new directory
+        SortedSet<FileDirectoryEntry> entries = new TreeSet<>();
 
-                // Read the field tag, field type, and type count
-                int fieldTagValue = file.readUnsignedShort();
-                FieldTagType fieldTag = FieldTagType.getById(fieldTagValue);
+        // Read each entry and the values
+        for (int entryCount = 0; entryCount < numDirectoryEntries; entryCount++) {
+            int entryPosition = headerBytes + entryCount * entryBytes;
 
-                int fieldTypeValue = file.readUnsignedShort();
-                FieldType fieldType = FieldType.getFieldType(fieldTypeValue);
-                if (fieldType == null) {
-                    throw new TiffException(
-                            "Unknown field type value " + fieldTypeValue);
-                }
+            // Read the field tag, field type, and type count
+            int fieldTagValue = block.getShort(entryPosition) & 0xffff;
+            FieldTagType fieldTag = FieldTagType.getById(fieldTagValue);
 
-                long typeCount = file.readUnsignedInt();
+            int fieldTypeValue = block.getShort(entryPosition + 2) & 0xffff;
+            FieldType fieldType = FieldType.getFieldType(fieldTypeValue);
+            if (fieldType == null) {
+                throw new TiffException(
+                        "Unknown field type value " + fieldTypeValue);
+            }
 
-                // Save off the next byte to read location
-                long nextByte = file.getPointer();
+            long typeCount;
+            int valuePosition;
+            if (bigTiff) {
+                typeCount = block.getLong(entryPosition + 4);
+                valuePosition = entryPosition + 12;
+            } else {
+                typeCount = block.getInt(entryPosition + 4) & 0xffffffffL;
+                valuePosition = entryPosition + 8;
+            }
 
-                // Read the field values
-                Object values = readFieldValues(fieldTag, fieldType,
-                        typeCount);
+            // Create and add a file directory if the tag is recognized.
+            if (fieldTag == null) {
+                continue;
+            }
 
-                // Create and add a file directory if the tag is recognized.
-                if (fieldTag != null) {
-                    FileDirectoryEntry entry = new FileDirectoryEntry(fieldTag,
-                            fieldType, typeCount, values);
-                    entries.add(entry);
+            // Values larger than the offset size are not stored inline,
+            // the entry then holds the offset of the values. Check the count
+            // first, the byte size of huge BigTIFF counts overflows
+            checkTypeCount(fieldType, typeCount);
+            boolean inline = fieldType.getBytes() * typeCount <= offsetBytes;
+            FileDirectoryEntry entry;
+            if (inline) {
+                entry = new FileDirectoryEntry(fieldTag, fieldType, typeCount,
+                        decodeValues(block, valuePosition, fieldType, (int) typeCount));
+            } else {
+                long valueOffset = bigTiff ? block.getLong(valuePosition)
+                        : block.getInt(valuePosition) & 0xffffffffL;
+                if (options.isLazyValues()) {
+                    // Bound to a file when the page is copied from the
+                    // shared metadata
+                    entry = new FileDirectoryEntry(fieldTag, fieldType,
+                            typeCount, valueOffset, TiffMetadata.UNBOUND_LOADER);
+                } else {
+                    entry = new FileDirectoryEntry(fieldTag, fieldType,
+                            typeCount, readValues(valueOffset, fieldType, typeCount));
                 }
-
-                // Restore the next byte to read location
-                file.setPointer(nextByte + 4);
             }
+            entries.add(entry);
+        }
 
-            // Add the file directory
-            FileDirectory fileDirectory = new FileDirectory(entries);
-            fileDirectories.add(fileDirectory);
-            // Read the next byte offset location
-            byteOffset = file.readUnsignedInt();
+        return new FileDirectory(entries);
+    }
+
+    /**
+     * 读取偏移量，BigTIFF为8字节，TIFF为4字节
+     *
+     * @param offset
+     *            byte offset of the offset value
+     * @return byte offset
+     */
+    private long readOffset(long offset) throws IOException {
+        long value = bigTiff ? file.readLong(offset) : file.readUnsignedInt(offset);
+        if (value < 0) {
+            throw new TiffException("Invalid byte offset: " + value);
         }
+        return value;
     }
 
     /**
-     * 读取字段属性值
+     * 从IFD块中解码内联的目录值
      *
-     * @param fieldTag
-     *            field tag type
+     * @param block
+     *            directory block
+     * @param position
+     *            position of the values within the block
      * @param fieldType
      *            field type
-     * @param typeCount
+     * @param count
      *            type count
-     * @return values
+     * @return values, see {@link FileDirectoryEntry}
      */
-    private Object readFieldValues(FieldTagType fieldTag, FieldType fieldType, long typeCount) throws IOException {
-
-        // If the value is larger and not stored inline, determine the offset
-        if (fieldType.getBytes() * typeCount > 4) {
-            long valueOffset = file.readUnsignedInt();
-            file.setPointer(valueOffset);
+    private static Object decodeValues(ByteBuffer block, int position, FieldType fieldType, int count)
+            throws TiffException {
+        switch (fieldType) {
+            case ASCII:
+            case BYTE:
+            case UNDEFINED:
+            case SBYTE:
+                byte[] bytes = new byte[count];
+                for (int i = 0; i < count; i++) {
+                    bytes[i] = block.get(position + i);
+                }
+                return fieldType == FieldType.ASCII ? toStrings(bytes) : bytes;
+            case SHORT:
+            case SSHORT:
+                int[] shorts = new int[count];
+                for (int i = 0; i < count; i++) {
+                    short value = block.getShort(position + 2 * i);
+                    shorts[i] = fieldType == FieldType.SHORT ? value & 0xffff : value;
+                }
+                return shorts;
+            case LONG:
+            case IFD:
+                long[] longs = new long[count];
+                for (int i = 0; i < count; i++) {
+                    longs[i] = block.getInt(position + 4 * i) & 0xffffffffL;
+                }
+                return longs;
+            case SLONG:
+                int[] ints = new int[count];
+                for (int i = 0; i < count; i++) {
+                    ints[i] = block.getInt(position + 4 * i);
+                }
+                return ints;
+            case RATIONAL:
+                long[] rationals = new long[count * 2];
+                for (int i = 0; i < rationals.length; i++) {
+                    rationals[i] = block.getInt(position + 4 * i) & 0xffffffffL;
+                }
+                return rationals;
+            case SRATIONAL:
+                int[] signedRationals = new int[count * 2];
+                for (int i = 0; i < signedRationals.length; i++) {
+                    signedRationals[i] = block.getInt(position + 4 * i);
+                }
+                return signedRationals;
+            case FLOAT:
+                float[] floats = new float[count];
+                for (int i = 0; i < count; i++) {
+                    floats[i] = block.getFloat(position + 4 * i);
+                }
+                return floats;
+            case DOUBLE:
+                double[] doubles = new double[count];
+                for (int i = 0; i < count; i++) {
+                    doubles[i] = block.getDouble(position + 8 * i);
+                }
+                return doubles;
+            case LONG8:
+            case SLONG8:
+            case IFD8:
+                long[] longs8 = new long[count];
+                for (int i = 0; i < count; i++) {
+                    longs8[i] = block.getLong(position + 8 * i);
+                }
+                return longs8;
+            default:
+                throw new TiffException("Invalid field type: " + fieldType);
         }
+    }
 
-        // Read the directory entry values
-        List<Object> valuesList = getValues( fieldType, typeCount);
-
-        // Get the single or array values
-        Object values = null;
-        if (typeCount == 1 && fieldTag != null && !fieldTag.isArray()
-                && !(fieldType == FieldType.RATIONAL
-                || fieldType == FieldType.SRATIONAL)) {
-            values = valuesList.get(0);
-        } else {
-            values = valuesList;
+    /**
+     * 将ASCII字符按NUL分隔为字符串
+     *
+     * @param characters
+     *            ASCII characters
+     * @return strings
+     */
+    private static List<String> toStrings(byte[] characters) {
+        List<String> stringValues = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < characters.length; i++) {
+            if (characters[i] == 0) {
+                if (i > start) {
+                    stringValues.add(new String(characters, start, i - start,
+                            StandardCharsets.US_ASCII));
+                }
+                start = i + 1;
+            }
         }
-
-        return values;
+        return stringValues;
     }
 
     /**
-     * 获取TIFF目录值
+     * Check that the values of a type count fit in an array
      *
      * @param fieldType
      *            field type
      * @param typeCount
      *            type count
-     * @return values
+     * @return type count
      */
-    private List<Object> getValues(FieldType fieldType, long typeCount) throws IOException {
-
-        List<Object> values = new ArrayList<Object>();
-
-        for (int i = 0; i < typeCount; i++) {
-
-            switch (fieldType) {
-                case ASCII:
-                    try {
-                        values.add(file.readString(1));
-                    } catch (UnsupportedEncodingException e) {
-                        throw new TiffException("Failed to read ASCII character",
-                                e);
-                    }
-                    break;
-                case BYTE:
-                case UNDEFINED:
-                    values.add(file.readUnsignedByte());
-                    break;
-                case SBYTE:
-                    values.add(file.readByte());
-                    break;
-                case SHORT:
-                    values.add(file.readUnsignedShort());
-                    break;
-                case SSHORT:
-                    values.add(file.readShort());
-                    break;
-                case LONG:
-                    values.add(file.readUnsignedInt());
-                    break;
-                case SLONG:
-                    values.add(file.readInt());
-                    break;
-                case RATIONAL:
-                    values.add(file.readUnsignedInt());
-                    values.add(file.readUnsignedInt());
-                    break;
-                case SRATIONAL:
-                    values.add(file.readInt());
-                    values.add(file.readInt());
-                    break;
-                case FLOAT:
-                    values.add(file.readFloat());
-                    break;
-                case DOUBLE:
-                    values.add(file.readDouble());
-                    break;
-                default:
-                    throw new TiffException("Invalid field type: " + fieldType);
-            }
-
+    private static int checkTypeCount(FieldType fieldType, long typeCount) {
+        // BigTIFF counts are unsigned 64-bit, a set high bit reads as negative
+        boolean rational = fieldType == FieldType.RATIONAL || fieldType == FieldType.SRATIONAL;
+        if (typeCount < 0 || typeCount > (rational ? Integer.MAX_VALUE / 2 : Integer.MAX_VALUE)) {
+            throw new TiffException("Invalid type count: " + typeCount);
         }
+        return (int) typeCount;
+    }
 
-        // If ASCII characters, combine the strings
-        if (fieldType == FieldType.ASCII) {
-            List<Object> stringValues = new ArrayList<Object>();
-            StringBuilder stringValue = new StringBuilder();
-            for (Object value : values) {
-                if (value == null) {
-                    if (stringValue.length() > 0) {
-                        stringValues.add(stringValue.toString());
-                        stringValue = new StringBuilder();
-                    }
-                } else {
-                    stringValue.append(value.toString());
+    /**
+     * 获取TIFF目录值，数值类型以基本类型数组保存，ASCII以字符串列表保存
+     *
+     * @param offset
+     *            byte offset of the values
+     * @param fieldType
+     *            field type
+     * @param typeCount
+     *            type count
+     * @return values, see {@link FileDirectoryEntry}
+     */
+    private Object readValues(long offset, FieldType fieldType, long typeCount) throws IOException {
+        int count = checkTypeCount(fieldType, typeCount);
+
+        // Read each value array with a single read
+        Object values;
+        switch (fieldType) {
+            case ASCII:
+                // Combine the characters into strings, split on NUL
+                values = toStrings(file.readBytes(offset, count));
+                break;
+            case BYTE:
+            case UNDEFINED:
+            case SBYTE:
+                values = file.readBytes(offset, count);
+                break;
+            case SHORT:
+                values = file.readUnsignedShorts(offset, count);
+                break;
+            case SSHORT:
+                short[] shorts = file.readShorts(offset, count);
+                int[] signedShorts = new int[count];
+                for (int i = 0; i < count; i++) {
+                    signedShorts[i] = shorts[i];
                 }
-            }
-            values = stringValues;
+                values = signedShorts;
+                break;
+            case LONG:
+                values = file.readUnsignedInts(offset, count);
+                break;
+            case SLONG:
+                values = file.readInts(offset, count);
+                break;
+            case RATIONAL:
+                values = file.readUnsignedInts(offset, count * 2);
+                break;
+            case SRATIONAL:
+                values = file.readInts(offset, count * 2);
+                break;
+            case FLOAT:
+                values = file.readFloats(offset, count);
+                break;
+            case DOUBLE:
+                values = file.readDoubles(offset, count);
+                break;
+            case IFD:
+                values = file.readUnsignedInts(offset, count);
+                break;
+            case LONG8:
+            case SLONG8:
+            case IFD8:
+                values = file.readLongs(offset, count);
+                break;
+            default:
+                throw new TiffException("Invalid field type: " + fieldType);
         }
 
         return values;
     }
 
 
+    /**
+     * Is the file a BigTIFF with 64-bit offsets
+     *
+     * @return true if BigTIFF
+     */
+    public boolean isBigTiff() {
+        return bigTiff;
+    }
+
+    /**
+     * Get the file path
+     *
+     * @return file path, null when not read from a file path
+     */
+    public Path getPath() {
+        return path;
+    }
+
     public RandomAccessFileAdapter getFile() {
         return file;
     }
 
-    public Set<FileDirectory> getFileDirectories() {
-        return fileDirectories;
+    /**
+     * Get the metadata cache used by the file
+     *
+     * @return metadata cache, null if not cached
+     */
+    public TiffMetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * 获取文件标识，同一文件版本的多次打开共享缓存的元数据时标识相同
+     *
+     * @return file identity
+     */
+    long getFileId() {
+        return metadata.getFileId();
+    }
+
+    public TiffReadOptions getOptions() {
+        return options;
+    }
+
+    /**
+     * 获取全部页的目录，按页顺序排列，会遍历并解析整个IFD链
+     *
+     * @return file directories
+     */
+    public List<FileDirectory> getFileDirectories() throws IOException {
+        int pageCount = getPageCount();
+        List<FileDirectory> fileDirectories = new ArrayList<>(pageCount);
+        for (int i = 0; i < pageCount; i++) {
+            fileDirectories.add(getPage(i));
+        }
+        return Collections.unmodifiableList(fileDirectories);
+    }
+
+    /**
+     * 关闭文件
+     * @throws IOException
+     */
+    @Override
+    public void close() throws IOException {
+        file.close();
     }
 }
@@ -1,6 +1,20 @@
 package com.papercut.tiff;
 
+import com.papercut.tiff.constant.TiffConstants;
+import com.papercut.tiff.io.ByteBufferPool;
+import com.papercut.tiff.io.ByteSource;
+import com.papercut.tiff.io.ReadPlanner;
+
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class RandomTiffReader {
     /**
@@ -8,23 +22,291 @@ public class RandomTiffReader {
      */
     private RandomTiffFile randomTiffFile;
 
+    /**
+     * 读取多个tile/strip时使用的读取计划，合并相邻的读取
+     */
+    private ReadPlanner readPlanner = new ReadPlanner();
+
+    /**
+     * 异步读取使用的I/O线程池，默认为所有reader共享的有界线程池
+     */
+    private Executor ioExecutor = DefaultIoExecutor.INSTANCE;
+
 
     /**
      * 构造函数
      * @param filePath
      */
     public RandomTiffReader(String filePath){
+        this(filePath, false);
+    }
+
+    /**
+     * 构造函数
+     * @param filePath
+     * @param mapped 是否使用内存映射读取
+     */
+    public RandomTiffReader(String filePath, boolean mapped){
+        try {
+            randomTiffFile = new RandomTiffFile(filePath, "r", mapped);
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * 构造函数
+     * @param source 数据来源
+     */
+    public RandomTiffReader(ByteSource source){
         try {
-            randomTiffFile = new RandomTiffFile(filePath, "r");
+            randomTiffFile = new RandomTiffFile(source);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * 构造函数
+     * @param randomTiffFile 已打开的randomTiffFile
+     */
+    public RandomTiffReader(RandomTiffFile randomTiffFile){
+        this.randomTiffFile = randomTiffFile;
+    }
+
+    /**
+     * 获取内置的randomTiffFile
+     * @return randomTiffFile
+     */
+    public RandomTiffFile getRandomTiffFile() {
+        return randomTiffFile;
+    }
+
+    public ReadPlanner getReadPlanner() {
+        return readPlanner;
+    }
 
+    /**
+     * 设置读取计划，调整合并读取的最大间隔和最大读取大小
+     * @param readPlanner
+     */
+    public void setReadPlanner(ReadPlanner readPlanner) {
+        this.readPlanner = readPlanner;
+    }
 
+    /**
+     * 读取一个tile/strip的原始（未解压）字节到调用方提供的缓冲区
+     * @param directory 文件目录
+     * @param blockIndex tile/strip索引
+     * @param buffer 目标缓冲区，剩余空间需不小于块大小，读取后position前移块大小
+     */
+    public void readBlock(FileDirectory directory, int blockIndex, ByteBuffer buffer) throws IOException {
+        long offset = directory.getBlockOffset(blockIndex);
+        int byteCount = (int) directory.getBlockByteCount(blockIndex);
+        ByteBuffer block = buffer.duplicate();
+        block.limit(block.position() + byteCount);
+        randomTiffFile.getFile().readBytes(offset, block);
+        buffer.position(block.position());
+    }
 
+    /**
+     * 读取一个tile/strip的原始字节到缓冲池中的缓冲区，使用完毕后需调用pool.release归还
+     * @param directory 文件目录
+     * @param blockIndex tile/strip索引
+     * @param pool 缓冲池，如{@link ByteBufferPool#direct()}
+     * @return 可读的块字节
+     */
+    public ByteBuffer readBlock(FileDirectory directory, int blockIndex, ByteBufferPool pool) throws IOException {
+        long offset = directory.getBlockOffset(blockIndex);
+        int byteCount = (int) directory.getBlockByteCount(blockIndex);
+        return randomTiffFile.getFile().readBytes(offset, byteCount, pool);
+    }
 
+    /**
+     * 读取多个tile/strip的原始（未解压）字节，相邻的块合并为一次读取
+     * @param directory 文件目录
+     * @param blockIndices tile/strip索引
+     * @return 各块的字节，顺序与blockIndices一致
+     */
+    public ByteBuffer[] readBlocks(FileDirectory directory, int... blockIndices) throws IOException {
+        long[] offsets = new long[blockIndices.length];
+        long[] lengths = new long[blockIndices.length];
+        for (int i = 0; i < blockIndices.length; i++) {
+            offsets[i] = directory.getBlockOffset(blockIndices[i]);
+            lengths[i] = directory.getBlockByteCount(blockIndices[i]);
+        }
+        return readPlanner.read(randomTiffFile.getFile().getSource(), offsets, lengths);
+    }
 
+    /**
+     * 读取覆盖像素窗口的所有tile/strip的原始字节，平面存储时读取所有样本平面
+     * @param directory 文件目录
+     * @param x 窗口起始列
+     * @param y 窗口起始行
+     * @param width 窗口宽度
+     * @param height 窗口高度
+     * @return 各块的字节，按样本平面、行、列排列
+     */
+    public ByteBuffer[] readWindowBlocks(FileDirectory directory, int x, int y, int width, int height)
+            throws IOException {
+        return readBlocks(directory, getWindowBlockIndices(directory, x, y, width, height));
+    }
+
+    /**
+     * 获取覆盖像素窗口的所有tile/strip索引，平面存储时包括所有样本平面
+     * @param directory 文件目录
+     * @param x 窗口起始列
+     * @param y 窗口起始行
+     * @param width 窗口宽度
+     * @param height 窗口高度
+     * @return 块索引
+     */
+    public int[] getWindowBlockIndices(FileDirectory directory, int x, int y, int width, int height) {
+        Integer planar = directory.getPlanarConfiguration();
+        int planes = planar != null && planar == TiffConstants.PLANAR_CONFIGURATION_PLANAR
+                ? directory.getSamplesPerPixel() : 1;
+        int[] planeIndices = directory.getBlockIndices(x, y, width, height, 0);
+        int[] indices = new int[planeIndices.length * planes];
+        for (int sample = 0; sample < planes; sample++) {
+            int[] sampleIndices = sample == 0 ? planeIndices
+                    : directory.getBlockIndices(x, y, width, height, sample);
+            System.arraycopy(sampleIndices, 0, indices, sample * planeIndices.length, sampleIndices.length);
+        }
+        return indices;
+    }
+
+    /**
+     * 获取文件中的全分辨率图像及其缩略图层
+     * @return 图像金字塔，按页顺序排列
+     */
+    public List<TiffImagePyramid> getImagePyramids() throws IOException {
+        return randomTiffFile.getImagePyramids();
+    }
+
+    /**
+     * 为第一幅图像选择满足目标输出尺寸的最小缩略图层
+     * @param targetWidth 整幅图像的目标输出宽度
+     * @param targetHeight 整幅图像的目标输出高度
+     * @return 选中层级的文件目录，无满足的缩略图层时为全分辨率图像
+     */
+    public FileDirectory selectOverview(long targetWidth, long targetHeight) throws IOException {
+        return selectOverview(0, targetWidth, targetHeight);
+    }
+
+    /**
+     * 为指定图像选择满足目标输出尺寸的最小缩略图层
+     * @param image 图像序号，见{@link #getImagePyramids()}
+     * @param targetWidth 整幅图像的目标输出宽度
+     * @param targetHeight 整幅图像的目标输出高度
+     * @return 选中层级的文件目录，无满足的缩略图层时为全分辨率图像
+     */
+    public FileDirectory selectOverview(int image, long targetWidth, long targetHeight) throws IOException {
+        TiffImagePyramid pyramid = getImagePyramids().get(image);
+        return pyramid.getLevel(pyramid.selectLevel(targetWidth, targetHeight));
+    }
+
+    public Executor getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * 设置异步读取使用的I/O线程池
+     * @param ioExecutor
+     */
+    public void setIoExecutor(Executor ioExecutor) {
+        this.ioExecutor = ioExecutor;
+    }
+
+    /**
+     * 异步读取一个tile/strip的原始（未解压）字节，读取在I/O线程池中完成
+     * @param directory 文件目录
+     * @param blockIndex tile/strip索引
+     * @return 块字节
+     */
+    public CompletableFuture<ByteBuffer> readBlockAsync(FileDirectory directory, int blockIndex) {
+        return readBlocksAsync(directory, blockIndex).thenApply(buffers -> buffers[0]);
+    }
+
+    /**
+     * 异步读取多个tile/strip的原始字节，合并后的每次读取作为一个独立任务并发执行。
+     * 延迟加载的偏移量和字节数可能需要读取文件，因此也在I/O线程池中获取
+     * @param directory 文件目录
+     * @param blockIndices tile/strip索引
+     * @return 各块的字节，顺序与blockIndices一致
+     */
+    public CompletableFuture<ByteBuffer[]> readBlocksAsync(FileDirectory directory, int... blockIndices) {
+        int[] indices = blockIndices.clone();
+        ByteSource source = randomTiffFile.getFile().getSource();
+        ReadPlanner planner = readPlanner;
+        Executor executor = ioExecutor;
+        return CompletableFuture.supplyAsync(() -> {
+            long[][] blocks = new long[2][indices.length];
+            for (int i = 0; i < indices.length; i++) {
+                blocks[0][i] = directory.getBlockOffset(indices[i]);
+                blocks[1][i] = directory.getBlockByteCount(indices[i]);
+            }
+            return blocks;
+        }, executor).thenCompose(blocks -> readBlocksAsync(source, planner, executor, blocks[0], blocks[1]));
+    }
+
+    /**
+     * 按读取计划并发读取各块
+     * @param source 数据来源
+     * @param planner 读取计划
+     * @param executor I/O线程池
+     * @param offsets 各块偏移量
+     * @param lengths 各块字节数
+     * @return 各块的字节
+     */
+    private static CompletableFuture<ByteBuffer[]> readBlocksAsync(ByteSource source, ReadPlanner planner,
+            Executor executor, long[] offsets, long[] lengths) {
+        ByteBuffer[] buffers = new ByteBuffer[offsets.length];
+        List<ReadPlanner.Read> reads = planner.plan(offsets, lengths);
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[reads.size()];
+        for (int i = 0; i < futures.length; i++) {
+            ReadPlanner.Read read = reads.get(i);
+            futures[i] = CompletableFuture.runAsync(() -> {
+                try {
+                    planner.read(source, read, offsets, lengths, buffers);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor);
+        }
+        return CompletableFuture.allOf(futures).thenApply(v -> buffers);
+    }
+
+    /**
+     * 异步读取覆盖像素窗口的所有tile/strip的原始字节
+     * @param directory 文件目录
+     * @param x 窗口起始列
+     * @param y 窗口起始行
+     * @param width 窗口宽度
+     * @param height 窗口高度
+     * @return 各块的字节，按样本平面、行、列排列
+     */
+    public CompletableFuture<ByteBuffer[]> readWindowAsync(FileDirectory directory, int x, int y, int width,
+            int height) {
+        return readBlocksAsync(directory, getWindowBlockIndices(directory, x, y, width, height));
+    }
+
+    /**
+     * 默认的I/O线程池，固定数量的守护线程，延迟创建
+     */
+    private static class DefaultIoExecutor {
+
+        private static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+                Math.max(4, Runtime.getRuntime().availableProcessors() * 2), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "tiff-io-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+
+    }
 
 }
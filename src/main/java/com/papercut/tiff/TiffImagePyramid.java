@@ -0,0 +1,134 @@
+package com.papercut.tiff;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 一幅全分辨率图像及其缩略图层（reduced-resolution overview），层级按分辨率从高到低排列，
+ * 第0层为全分辨率图像。可根据目标输出分辨率选择满足要求的最小层级，避免缩小显示时读取全分辨率数据
+ */
+public class TiffImagePyramid {
+
+    /**
+     * Levels by decreasing resolution, the full resolution image first
+     */
+    private final List<FileDirectory> levels;
+
+    /**
+     * Constructor. Overviews not smaller than the full resolution image are
+     * ignored
+     *
+     * @param fullResolution
+     *            full resolution image
+     * @param overviews
+     *            reduced-resolution overviews, any order
+     */
+    public TiffImagePyramid(FileDirectory fullResolution, List<FileDirectory> overviews) {
+        long fullWidth = fullResolution.getImageWidth().longValue();
+        long fullHeight = fullResolution.getImageHeight().longValue();
+        List<FileDirectory> sorted = new ArrayList<>();
+        for (FileDirectory overview : overviews) {
+            long width = overview.getImageWidth().longValue();
+            long height = overview.getImageHeight().longValue();
+            if (width <= fullWidth && height <= fullHeight
+                    && (width < fullWidth || height < fullHeight)) {
+                sorted.add(overview);
+            }
+        }
+        Collections.sort(sorted, new Comparator<FileDirectory>() {
+            @Override
+            public int compare(FileDirectory a, FileDirectory b) {
+                return Long.compare(b.getImageWidth().longValue() * b.getImageHeight().longValue(),
+                        a.getImageWidth().longValue() * a.getImageHeight().longValue());
+            }
+        });
+        sorted.add(0, fullResolution);
+        this.levels = Collections.unmodifiableList(sorted);
+    }
+
+    /**
+     * Get the full resolution image
+     *
+     * @return full resolution directory
+     */
+    public FileDirectory getFullResolution() {
+        return levels.get(0);
+    }
+
+    /**
+     * Get the overviews by decreasing resolution
+     *
+     * @return overview directories
+     */
+    public List<FileDirectory> getOverviews() {
+        return levels.subList(1, levels.size());
+    }
+
+    /**
+     * Get all levels by decreasing resolution, the full resolution image first
+     *
+     * @return level directories
+     */
+    public List<FileDirectory> getLevels() {
+        return levels;
+    }
+
+    public int getLevelCount() {
+        return levels.size();
+    }
+
+    public FileDirectory getLevel(int level) {
+        return levels.get(level);
+    }
+
+    /**
+     * 选择宽高均不小于目标尺寸的最小层级，目标大于全分辨率图像时返回全分辨率图像
+     *
+     * @param targetWidth
+     *            target output width of the whole image
+     * @param targetHeight
+     *            target output height of the whole image
+     * @return level index
+     */
+    public int selectLevel(long targetWidth, long targetHeight) {
+        for (int level = levels.size() - 1; level > 0; level--) {
+            FileDirectory directory = levels.get(level);
+            if (directory.getImageWidth().longValue() >= targetWidth
+                    && directory.getImageHeight().longValue() >= targetHeight) {
+                return level;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 按相对全分辨率的输出比例选择层级，例如读取全分辨率窗口并缩放输出时，比例为输出尺寸与窗口尺寸之比
+     *
+     * @param scale
+     *            output scale relative to the full resolution, 1 or more
+     *            selects the full resolution
+     * @return level index
+     */
+    public int selectLevel(double scale) {
+        FileDirectory fullResolution = getFullResolution();
+        // Overview sizes are rounded either way, allow the fraction
+        return selectLevel(
+                (long) Math.floor(fullResolution.getImageWidth().longValue() * scale),
+                (long) Math.floor(fullResolution.getImageHeight().longValue() * scale));
+    }
+
+    /**
+     * Get the scale of a level relative to the full resolution width
+     *
+     * @param level
+     *            level index
+     * @return scale, 1 for the full resolution
+     */
+    public double getScale(int level) {
+        return levels.get(level).getImageWidth().doubleValue()
+                / getFullResolution().getImageWidth().doubleValue();
+    }
+
+}
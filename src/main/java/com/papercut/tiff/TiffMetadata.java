@@ -0,0 +1,274 @@
+package com.papercut.tiff;
+
+import com.papercut.tiff.expection.TiffException;
+
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TIFF文件解析后的元数据：文件头信息、页（IFD）偏移量和已解析的页。
+ * 元数据与打开的文件无关，可以在同一文件的多个RandomTiffFile之间通过{@link TiffMetadataCache}共享，
+ * 延迟加载的目录项不绑定读取方法，各RandomTiffFile使用自己的目录副本。
+ * 复合操作需在本对象上同步
+ */
+final class TiffMetadata {
+
+    /**
+     * Loader of lazy entries held by the shared metadata, the entries are
+     * bound to a file before their values are read
+     */
+    static final EntryValueLoader UNBOUND_LOADER = entry -> {
+        throw new TiffException("Entry values are not bound to a file: " + entry.getFieldTag());
+    };
+
+    /**
+     * Estimated bytes of an entry excluding its values
+     */
+    private static final int ENTRY_BYTES = 64;
+
+    /**
+     * Estimated bytes of a page excluding its entries
+     */
+    private static final int PAGE_BYTES = 128;
+
+    /**
+     * Source of file identities
+     */
+    private static final AtomicLong FILE_IDS = new AtomicLong();
+
+    /**
+     * File identity, shared by every open of the file through this metadata
+     */
+    private final long fileId = FILE_IDS.incrementAndGet();
+
+    private final ByteOrder byteOrder;
+
+    private final boolean bigTiff;
+
+    /**
+     * 已知页（IFD）的偏移量，按文件中IFD链的顺序排列
+     */
+    private final List<Long> pageOffsets = new ArrayList<>();
+
+    /**
+     * 已解析的页，与pageOffsets一一对应，未解析的页为null
+     */
+    private final List<FileDirectory> pages = new ArrayList<>();
+
+    /**
+     * 已遍历的IFD偏移量，用于检测IFD链中的循环
+     */
+    private final Set<Long> walkedPageOffsets = new HashSet<>();
+
+    /**
+     * IFD链中下一个尚未遍历的IFD偏移量，为0时链已遍历完
+     */
+    private long nextPageOffset;
+
+    /**
+     * 已解析的子IFD（SubIFDs），以IFD偏移量为键
+     */
+    private final Map<Long, FileDirectory> subPages = new HashMap<>();
+
+    /**
+     * 已加载的元数据索引，未启用或不可用时为null
+     */
+    private TiffSidecarIndex sidecarIndex;
+
+    /**
+     * Estimated retained bytes
+     */
+    private volatile long bytes = PAGE_BYTES;
+
+    /**
+     * Constructor
+     *
+     * @param byteOrder
+     *            byte order
+     * @param bigTiff
+     *            true if BigTIFF
+     * @param firstPageOffset
+     *            byte offset of the first IFD
+     */
+    TiffMetadata(ByteOrder byteOrder, boolean bigTiff, long firstPageOffset) {
+        this.byteOrder = byteOrder;
+        this.bigTiff = bigTiff;
+        this.nextPageOffset = firstPageOffset;
+    }
+
+    public long getFileId() {
+        return fileId;
+    }
+
+    public ByteOrder getByteOrder() {
+        return byteOrder;
+    }
+
+    public boolean isBigTiff() {
+        return bigTiff;
+    }
+
+    /**
+     * Get the byte offset of the next IFD not yet walked
+     *
+     * @return byte offset, 0 when the chain has been walked
+     */
+    public long getNextPageOffset() {
+        return nextPageOffset;
+    }
+
+    /**
+     * Get the number of pages walked so far
+     *
+     * @return walked page count
+     */
+    public int getWalkedPageCount() {
+        return pageOffsets.size();
+    }
+
+    public long getPageOffset(int index) {
+        return pageOffsets.get(index);
+    }
+
+    public List<Long> getPageOffsets() {
+        return pageOffsets;
+    }
+
+    /**
+     * 记录遍历到的一页
+     *
+     * @param byteOffset
+     *            IFD byte offset of the page
+     * @param next
+     *            byte offset of the following IFD, 0 at the end of the chain
+     */
+    public void addPage(long byteOffset, long next) {
+        if (!walkedPageOffsets.add(byteOffset)) {
+            throw new TiffException("IFD chain loops back to byte offset: " + byteOffset);
+        }
+        pageOffsets.add(byteOffset);
+        pages.add(null);
+        nextPageOffset = next;
+        bytes += PAGE_BYTES;
+    }
+
+    /**
+     * Get a parsed page
+     *
+     * @param index
+     *            page index
+     * @return page, null if not parsed
+     */
+    public FileDirectory getPage(int index) {
+        return pages.get(index);
+    }
+
+    /**
+     * Set a parsed page
+     *
+     * @param index
+     *            page index
+     * @param page
+     *            parsed page with unbound lazy entries
+     */
+    public void setPage(int index, FileDirectory page) {
+        pages.set(index, page);
+        bytes += estimateBytes(page);
+    }
+
+    /**
+     * Get a parsed sub IFD
+     *
+     * @param byteOffset
+     *            IFD byte offset
+     * @return sub IFD, null if not parsed
+     */
+    public FileDirectory getSubPage(long byteOffset) {
+        return subPages.get(byteOffset);
+    }
+
+    /**
+     * Set a parsed sub IFD
+     *
+     * @param byteOffset
+     *            IFD byte offset
+     * @param page
+     *            parsed sub IFD with unbound lazy entries
+     */
+    public void setSubPage(long byteOffset, FileDirectory page) {
+        subPages.put(byteOffset, page);
+        bytes += estimateBytes(page);
+    }
+
+    public TiffSidecarIndex getSidecarIndex() {
+        return sidecarIndex;
+    }
+
+    /**
+     * 使用元数据索引中的页偏移量，全部页改为从索引中解码
+     *
+     * @param sidecarIndex
+     *            loaded index
+     */
+    public void setSidecarIndex(TiffSidecarIndex sidecarIndex) {
+        this.sidecarIndex = sidecarIndex;
+        pageOffsets.clear();
+        pages.clear();
+        walkedPageOffsets.clear();
+        for (int i = 0; i < sidecarIndex.getPageCount(); i++) {
+            pageOffsets.add(sidecarIndex.getPageOffset(i));
+            pages.add(null);
+        }
+        nextPageOffset = 0;
+        bytes = PAGE_BYTES * (1L + pageOffsets.size());
+    }
+
+    /**
+     * Get the estimated retained bytes of the metadata
+     *
+     * @return estimated bytes
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Estimate the retained bytes of a parsed page
+     *
+     * @param page
+     *            page
+     * @return estimated bytes
+     */
+    private static long estimateBytes(FileDirectory page) {
+        long estimate = PAGE_BYTES;
+        for (FileDirectoryEntry entry : page.getEntries()) {
+            estimate += ENTRY_BYTES;
+            if (entry.isLoaded()) {
+                Object values = entry.values();
+                if (values instanceof byte[]) {
+                    estimate += ((byte[]) values).length;
+                } else if (values instanceof int[]) {
+                    estimate += 4L * ((int[]) values).length;
+                } else if (values instanceof float[]) {
+                    estimate += 4L * ((float[]) values).length;
+                } else if (values instanceof long[]) {
+                    estimate += 8L * ((long[]) values).length;
+                } else if (values instanceof double[]) {
+                    estimate += 8L * ((double[]) values).length;
+                } else if (values instanceof List) {
+                    for (Object value : (List<?>) values) {
+                        estimate += ENTRY_BYTES + 2L * String.valueOf(value).length();
+                    }
+                }
+            }
+        }
+        return estimate;
+    }
+
+}
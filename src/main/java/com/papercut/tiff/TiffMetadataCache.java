@@ -0,0 +1,261 @@
+package com.papercut.tiff;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * 进程内共享的TIFF元数据缓存，以规范化文件路径、文件大小和修改时间为键，
+ * 同一文件再次打开时直接复用已遍历的IFD链和已解析的页，无需重新解析。
+ * 按条目数和估算字节数限制容量，超出时淘汰最近最少使用的条目
+ */
+public class TiffMetadataCache {
+
+    /**
+     * Default max number of cached files
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 256;
+
+    /**
+     * Default max estimated bytes of cached metadata
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Shared default cache
+     */
+    private static final TiffMetadataCache DEFAULT = new TiffMetadataCache(DEFAULT_MAX_ENTRIES,
+            DEFAULT_MAX_BYTES);
+
+    private final int maxEntries;
+
+    private final long maxBytes;
+
+    /**
+     * Cached metadata in access order, least recently used first
+     */
+    private final LinkedHashMap<Key, Cached> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Running total of the estimated bytes accounted to the cached metadata
+     */
+    private long bytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * Get the shared default cache
+     *
+     * @return default cache
+     */
+    public static TiffMetadataCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxEntries
+     *            max number of cached files
+     * @param maxBytes
+     *            max estimated bytes of cached metadata
+     */
+    public TiffMetadataCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid metadata cache limits. Max entries: "
+                    + maxEntries + ", Max bytes: " + maxBytes);
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 获取文件当前状态对应的缓存键
+     *
+     * @param path
+     *            file path
+     * @return cache key
+     */
+    Key key(Path path) throws IOException {
+        Path realPath = path.toRealPath();
+        BasicFileAttributes attributes = Files.readAttributes(realPath, BasicFileAttributes.class);
+        return new Key(realPath.toString(), attributes.size(),
+                attributes.lastModifiedTime().toMillis());
+    }
+
+    /**
+     * Get cached metadata
+     *
+     * @param key
+     *            cache key
+     * @return metadata, null if not cached
+     */
+    synchronized TiffMetadata get(Key key) {
+        Cached cached = entries.get(key);
+        if (cached != null) {
+            hits++;
+            return cached.metadata;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Cache metadata
+     *
+     * @param key
+     *            cache key
+     * @param metadata
+     *            metadata
+     */
+    synchronized void put(Key key, TiffMetadata metadata) {
+        Cached cached = new Cached(metadata);
+        Cached replaced = entries.put(key, cached);
+        if (replaced != null) {
+            bytes -= replaced.bytes;
+        }
+        bytes += cached.bytes;
+        trim();
+    }
+
+    /**
+     * 已缓存的元数据在解析新页后会增长，解析后调用以计入增长的字节数，
+     * 只调整该条目的字节数，不遍历其他条目
+     *
+     * @param key
+     *            cache key
+     * @param metadata
+     *            grown metadata
+     */
+    synchronized void update(Key key, TiffMetadata metadata) {
+        Cached cached = entries.get(key);
+        if (cached != null && cached.metadata == metadata) {
+            long current = metadata.getBytes();
+            bytes += current - cached.bytes;
+            cached.bytes = current;
+            trim();
+        }
+    }
+
+    /**
+     * 淘汰最近最少使用的条目，直到条目数和估算字节数均不超出限制
+     */
+    private void trim() {
+        Iterator<Cached> iterator = entries.values().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && iterator.hasNext()) {
+            bytes -= iterator.next().bytes;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Remove all cached metadata
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+
+    /**
+     * Get the number of cached files
+     *
+     * @return cached file count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Get the estimated bytes of the cached metadata
+     *
+     * @return estimated bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Cached metadata and the bytes accounted to it
+     */
+    private static final class Cached {
+
+        private final TiffMetadata metadata;
+
+        private long bytes;
+
+        private Cached(TiffMetadata metadata) {
+            this.metadata = metadata;
+            this.bytes = metadata.getBytes();
+        }
+
+    }
+
+    /**
+     * Cache key of a file version
+     */
+    static final class Key {
+
+        private final String path;
+
+        private final long size;
+
+        private final long lastModified;
+
+        Key(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return size == other.size && lastModified == other.lastModified
+                    && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + Long.hashCode(size);
+            result = 31 * result + Long.hashCode(lastModified);
+            return result;
+        }
+
+    }
+
+}
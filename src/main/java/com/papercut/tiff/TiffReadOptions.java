@@ -0,0 +1,178 @@
+package com.papercut.tiff;
+
+import com.papercut.tiff.cache.OffHeapBlockCache;
+import com.papercut.tiff.cache.SharedBlockCache;
+
+/**
+ * RandomTiffFile的解析选项
+ */
+public class TiffReadOptions {
+
+    /**
+     * 延迟读取不在IFD条目内的字段值（偏移表、ICC、XMP等），首次访问时才读取并缓存
+     */
+    private boolean lazyValues = false;
+
+    /**
+     * 使用TIFF文件旁的二进制索引文件（.tidx）保存和加载解析后的目录，索引过期时重建
+     */
+    private boolean sidecarIndex = false;
+
+    /**
+     * 按文件路径打开时使用的元数据缓存，为null时不缓存
+     */
+    private TiffMetadataCache metadataCache = TiffMetadataCache.getDefault();
+
+    /**
+     * 各目录已解码块缓存的最大字节数，为0时只缓存最近一个块
+     */
+    private long blockCacheBytes = 0;
+
+    /**
+     * 所有文件共享的已解码块缓存，为null时不使用
+     */
+    private SharedBlockCache sharedBlockCache = null;
+
+    /**
+     * 堆外已解码块缓存，由FileDirectory#acquireBlock使用，为null时不使用
+     */
+    private OffHeapBlockCache offHeapBlockCache = null;
+
+    /**
+     * Is lazy loading of out-of-line entry values enabled
+     *
+     * @return true if lazy
+     */
+    public boolean isLazyValues() {
+        return lazyValues;
+    }
+
+    /**
+     * Set lazy loading of out-of-line entry values. Only the value offset and
+     * count are recorded while parsing, the values are read on first access
+     *
+     * @param lazyValues
+     *            true to load values lazily
+     * @return this options
+     */
+    public TiffReadOptions setLazyValues(boolean lazyValues) {
+        this.lazyValues = lazyValues;
+        return this;
+    }
+
+    /**
+     * Is the sidecar metadata index enabled
+     *
+     * @return true if enabled
+     */
+    public boolean isSidecarIndex() {
+        return sidecarIndex;
+    }
+
+    /**
+     * Set use of a sidecar metadata index. When enabled for a TIFF opened by
+     * path, the parsed directories are loaded from an index file
+     * next to the TIFF instead of being parsed, and the index is written or
+     * rebuilt when missing or stale
+     *
+     * @param sidecarIndex
+     *            true to use the sidecar index
+     * @return this options
+     */
+    public TiffReadOptions setSidecarIndex(boolean sidecarIndex) {
+        this.sidecarIndex = sidecarIndex;
+        return this;
+    }
+
+    /**
+     * Get the metadata cache used for files opened by path
+     *
+     * @return metadata cache, null if disabled
+     */
+    public TiffMetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    /**
+     * Set the metadata cache used for files opened by path. Files reopened
+     * with the same canonical path, size and modification time reuse the
+     * walked IFD chain and parsed pages. Defaults to the shared
+     * {@link TiffMetadataCache#getDefault()} cache
+     *
+     * @param metadataCache
+     *            metadata cache, null to disable
+     * @return this options
+     */
+    public TiffReadOptions setMetadataCache(TiffMetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+        return this;
+    }
+
+    /**
+     * Get the max bytes of the decoded block cache of each directory
+     *
+     * @return max bytes, 0 when only the last block is cached
+     */
+    public long getBlockCacheBytes() {
+        return blockCacheBytes;
+    }
+
+    /**
+     * Set the max bytes of the decoded block cache created for each
+     * directory, see {@link FileDirectory#setCache(long)}
+     *
+     * @param blockCacheBytes
+     *            max bytes, 0 to only cache the last block
+     * @return this options
+     */
+    public TiffReadOptions setBlockCacheBytes(long blockCacheBytes) {
+        this.blockCacheBytes = blockCacheBytes;
+        return this;
+    }
+
+    /**
+     * Get the decoded block cache shared by all files
+     *
+     * @return shared block cache, null if not used
+     */
+    public SharedBlockCache getSharedBlockCache() {
+        return sharedBlockCache;
+    }
+
+    /**
+     * Set the decoded block cache shared by all files, consulted after the
+     * cache of each directory, e.g. {@link SharedBlockCache#getDefault()}
+     *
+     * @param sharedBlockCache
+     *            shared block cache, null to not use one
+     * @return this options
+     */
+    public TiffReadOptions setSharedBlockCache(SharedBlockCache sharedBlockCache) {
+        this.sharedBlockCache = sharedBlockCache;
+        return this;
+    }
+
+    /**
+     * Get the off-heap decoded block cache
+     *
+     * @return off-heap block cache, null if not used
+     */
+    public OffHeapBlockCache getOffHeapBlockCache() {
+        return offHeapBlockCache;
+    }
+
+    /**
+     * Set the off-heap decoded block cache used by
+     * {@link FileDirectory#acquireBlock(int)}, typically one instance
+     * shared by all files
+     *
+     * @param offHeapBlockCache
+     *            off-heap block cache, null to not use one
+     * @return this options
+     */
+    public TiffReadOptions setOffHeapBlockCache(OffHeapBlockCache offHeapBlockCache) {
+        this.offHeapBlockCache = offHeapBlockCache;
+        return this;
+    }
+
+}
@@ -0,0 +1,443 @@
+package com.papercut.tiff;
+
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.FieldType;
+import com.papercut.tiff.expection.TiffException;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.zip.CRC32;
+
+/**
+ * TIFF元数据的二进制索引文件（sidecar），保存在TIFF文件旁，文件名追加{@link #EXTENSION}。
+ * 索引保存页（IFD）偏移量和各页全部目录项的解析结果，数值以基本类型数组保存，
+ * 打开时一次读入内存并关闭索引文件，不保留内存映射（映射会锁定文件，Windows上将无法替换过期的索引），
+ * 按页解码，重新打开大文件时无需重新解析IFD。
+ * 索引以TIFF文件大小、修改时间和文件头哈希为键，任一不一致时视为过期并重建；
+ * 页数据带有CRC校验，损坏的索引同样重建
+ */
+final class TiffSidecarIndex {
+
+    /**
+     * Sidecar file name extension
+     */
+    public static final String EXTENSION = ".tidx";
+
+    /**
+     * Sidecar magic number, "TIDX"
+     */
+    private static final int MAGIC = 0x54494458;
+
+    /**
+     * Sidecar format version
+     */
+    private static final int VERSION = 2;
+
+    /**
+     * Leading TIFF bytes included in the header hash
+     */
+    private static final int HEADER_HASH_BYTES = 4096;
+
+    /**
+     * Sidecar header bytes: magic, version, size, mtime, hash, byte order,
+     * BigTIFF flag, page count and page CRC
+     */
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 8 + 1 + 1 + 4 + 8;
+
+    /**
+     * Page table bytes per page: IFD offset and page position
+     */
+    private static final int PAGE_TABLE_ENTRY_BYTES = 16;
+
+    // Stored value kinds
+    private static final byte BYTES = 0;
+    private static final byte INTS = 1;
+    private static final byte LONGS = 2;
+    private static final byte FLOATS = 3;
+    private static final byte DOUBLES = 4;
+    private static final byte STRINGS = 5;
+
+    /**
+     * Sidecar bytes
+     */
+    private final ByteBuffer buffer;
+
+    /**
+     * IFD byte offsets by page
+     */
+    private final long[] pageOffsets;
+
+    /**
+     * Sidecar positions of the pages
+     */
+    private final long[] pagePositions;
+
+    private TiffSidecarIndex(ByteBuffer buffer, long[] pageOffsets, long[] pagePositions) {
+        this.buffer = buffer;
+        this.pageOffsets = pageOffsets;
+        this.pagePositions = pagePositions;
+    }
+
+    /**
+     * 获取TIFF文件对应的索引文件路径
+     *
+     * @param path
+     *            TIFF file path
+     * @return sidecar path
+     */
+    public static Path getSidecarPath(Path path) {
+        return path.resolveSibling(path.getFileName() + EXTENSION);
+    }
+
+    /**
+     * 加载TIFF文件的索引，索引不存在、已损坏或已过期时返回null
+     *
+     * @param path
+     *            TIFF file path
+     * @param file
+     *            opened TIFF file
+     * @param bigTiff
+     *            true if the TIFF is a BigTIFF
+     * @param firstPageOffset
+     *            byte offset of the first IFD read from the TIFF header
+     * @return index or null
+     */
+    public static TiffSidecarIndex load(Path path, RandomAccessFileAdapter file, boolean bigTiff,
+            long firstPageOffset) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(getSidecarPath(path), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            buffer = ByteBuffer.allocate((int) size);
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) {
+                    return null;
+                }
+            }
+            buffer.flip();
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != Files.size(path)
+                    || buffer.getLong() != Files.getLastModifiedTime(path).toMillis()
+                    || buffer.getLong() != headerHash(file)
+                    || buffer.get() != byteOrderValue(file.getByteOrder())
+                    || buffer.get() != (bigTiff ? 1 : 0)) {
+                return null;
+            }
+            int pageCount = buffer.getInt();
+            long pagesCrc = buffer.getLong();
+            if (pageCount < 0 || pageCount > (buffer.remaining() / PAGE_TABLE_ENTRY_BYTES)) {
+                return null;
+            }
+            long[] pageOffsets = new long[pageCount];
+            long[] pagePositions = new long[pageCount];
+            for (int i = 0; i < pageCount; i++) {
+                pageOffsets[i] = buffer.getLong();
+                pagePositions[i] = buffer.getLong();
+                if (pagePositions[i] < buffer.position() || pagePositions[i] >= buffer.limit()) {
+                    return null;
+                }
+            }
+            long expectedFirst = pageCount > 0 ? pageOffsets[0] : 0;
+            if (expectedFirst != firstPageOffset) {
+                return null;
+            }
+
+            // Check the pages so a corrupt page is rebuilt instead of failing
+            // every read
+            CRC32 crc = new CRC32();
+            crc.update(buffer.array(), buffer.position(), buffer.remaining());
+            if (crc.getValue() != pagesCrc) {
+                return null;
+            }
+            return new TiffSidecarIndex(buffer, pageOffsets, pagePositions);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 写入TIFF文件的索引，先写入临时文件再替换，避免读取到写入一半的索引
+     *
+     * @param path
+     *            TIFF file path
+     * @param file
+     *            opened TIFF file
+     * @param bigTiff
+     *            true if the TIFF is a BigTIFF
+     * @param pageOffsets
+     *            IFD byte offsets of all pages
+     * @param pages
+     *            all parsed pages
+     */
+    public static void write(Path path, RandomAccessFileAdapter file, boolean bigTiff,
+            List<Long> pageOffsets, List<FileDirectory> pages) throws IOException {
+
+        // Encode the pages first to learn their positions
+        ByteArrayOutputStream pageBytes = new ByteArrayOutputStream();
+        DataOutputStream pageOut = new DataOutputStream(pageBytes);
+        long[] pagePositions = new long[pages.size()];
+        long pagesStart = HEADER_BYTES + (long) PAGE_TABLE_ENTRY_BYTES * pages.size();
+        for (int i = 0; i < pages.size(); i++) {
+            pagePositions[i] = pagesStart + pageOut.size();
+            writePage(pageOut, pages.get(i));
+        }
+        pageOut.flush();
+        byte[] encodedPages = pageBytes.toByteArray();
+        CRC32 pagesCrc = new CRC32();
+        pagesCrc.update(encodedPages);
+
+        Path sidecarPath = getSidecarPath(path);
+        Path tempPath = Files.createTempFile(sidecarPath.toAbsolutePath().getParent(),
+                sidecarPath.getFileName().toString(), ".tmp");
+        try {
+            try (OutputStream stream = Files.newOutputStream(tempPath);
+                    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(Files.size(path));
+                out.writeLong(Files.getLastModifiedTime(path).toMillis());
+                out.writeLong(headerHash(file));
+                out.writeByte(byteOrderValue(file.getByteOrder()));
+                out.writeByte(bigTiff ? 1 : 0);
+                out.writeInt(pages.size());
+                out.writeLong(pagesCrc.getValue());
+                for (int i = 0; i < pages.size(); i++) {
+                    out.writeLong(pageOffsets.get(i));
+                    out.writeLong(pagePositions[i]);
+                }
+                out.write(encodedPages);
+            }
+            Files.move(tempPath, sidecarPath, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+
+    /**
+     * Get the number of pages
+     *
+     * @return page count
+     */
+    public int getPageCount() {
+        return pageOffsets.length;
+    }
+
+    /**
+     * Get the IFD byte offset of a page
+     *
+     * @param index
+     *            page index
+     * @return IFD byte offset
+     */
+    public long getPageOffset(int index) {
+        return pageOffsets[index];
+    }
+
+    /**
+     * 从索引中解码一页的目录
+     *
+     * @param index
+     *            page index
+     * @return file directory
+     */
+    public FileDirectory readPage(int index) {
+        ByteBuffer page = buffer.duplicate();
+        page.position((int) pagePositions[index]);
+        try {
+            SortedSet<FileDirectoryEntry> entries = new TreeSet<>();
+            int entryCount = page.getInt();
+            for (int i = 0; i < entryCount; i++) {
+                int tagValue = page.getShort() & 0xffff;
+                int typeValue = page.getShort() & 0xffff;
+                long typeCount = page.getLong();
+                FieldTagType fieldTag = FieldTagType.getById(tagValue);
+                FieldType fieldType = FieldType.getFieldType(typeValue);
+                if (fieldTag == null || fieldType == null) {
+                    throw new TiffException("Invalid sidecar entry. Tag: " + tagValue
+                            + ", Type: " + typeValue);
+                }
+                entries.add(new FileDirectoryEntry(fieldTag, fieldType, typeCount, readValues(page)));
+            }
+            return new FileDirectory(entries);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new TiffException("Corrupt sidecar index page: " + index, e);
+        }
+    }
+
+    /**
+     * Write a page
+     *
+     * @param out
+     *            output
+     * @param page
+     *            file directory
+     */
+    private static void writePage(DataOutputStream out, FileDirectory page) throws IOException {
+        out.writeInt(page.getEntries().size());
+        for (FileDirectoryEntry entry : page.getEntries()) {
+            out.writeShort(entry.getFieldTag().getId());
+            out.writeShort(entry.getFieldType().getValue());
+            out.writeLong(entry.getTypeCount());
+            writeValues(out, entry.values());
+        }
+    }
+
+    /**
+     * Write stored entry values, prefixed by their kind and length
+     *
+     * @param out
+     *            output
+     * @param values
+     *            stored values
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeValues(DataOutputStream out, Object values) throws IOException {
+        if (values instanceof byte[]) {
+            byte[] array = (byte[]) values;
+            out.writeByte(BYTES);
+            out.writeInt(array.length);
+            out.write(array);
+        } else if (values instanceof int[]) {
+            int[] array = (int[]) values;
+            out.writeByte(INTS);
+            out.writeInt(array.length);
+            for (int value : array) {
+                out.writeInt(value);
+            }
+        } else if (values instanceof long[]) {
+            long[] array = (long[]) values;
+            out.writeByte(LONGS);
+            out.writeInt(array.length);
+            for (long value : array) {
+                out.writeLong(value);
+            }
+        } else if (values instanceof float[]) {
+            float[] array = (float[]) values;
+            out.writeByte(FLOATS);
+            out.writeInt(array.length);
+            for (float value : array) {
+                out.writeFloat(value);
+            }
+        } else if (values instanceof double[]) {
+            double[] array = (double[]) values;
+            out.writeByte(DOUBLES);
+            out.writeInt(array.length);
+            for (double value : array) {
+                out.writeDouble(value);
+            }
+        } else if (values instanceof List) {
+            List<String> strings = (List<String>) values;
+            out.writeByte(STRINGS);
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                byte[] bytes = string.getBytes(StandardCharsets.US_ASCII);
+                out.writeInt(bytes.length);
+                out.write(bytes);
+            }
+        } else {
+            throw new TiffException("Unsupported sidecar values: "
+                    + (values == null ? null : values.getClass().getName()));
+        }
+    }
+
+    /**
+     * Read stored entry values, bulk copying primitive arrays from the
+     * sidecar bytes
+     *
+     * @param page
+     *            page bytes positioned at the values
+     * @return stored values
+     */
+    private static Object readValues(ByteBuffer page) {
+        byte kind = page.get();
+        int length = page.getInt();
+        if (length < 0 || length > page.remaining()) {
+            throw new TiffException("Invalid sidecar value count: " + length);
+        }
+        switch (kind) {
+            case BYTES:
+                byte[] bytes = new byte[length];
+                page.get(bytes);
+                return bytes;
+            case INTS:
+                int[] ints = new int[length];
+                page.asIntBuffer().get(ints);
+                page.position(page.position() + 4 * length);
+                return ints;
+            case LONGS:
+                long[] longs = new long[length];
+                page.asLongBuffer().get(longs);
+                page.position(page.position() + 8 * length);
+                return longs;
+            case FLOATS:
+                float[] floats = new float[length];
+                page.asFloatBuffer().get(floats);
+                page.position(page.position() + 4 * length);
+                return floats;
+            case DOUBLES:
+                double[] doubles = new double[length];
+                page.asDoubleBuffer().get(doubles);
+                page.position(page.position() + 8 * length);
+                return doubles;
+            case STRINGS:
+                List<String> strings = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    int characterCount = page.getInt();
+                    if (characterCount < 0 || characterCount > page.remaining()) {
+                        throw new TiffException("Invalid sidecar string length: " + characterCount);
+                    }
+                    byte[] characters = new byte[characterCount];
+                    page.get(characters);
+                    strings.add(new String(characters, StandardCharsets.US_ASCII));
+                }
+                return strings;
+            default:
+                throw new TiffException("Invalid sidecar value kind: " + kind);
+        }
+    }
+
+    /**
+     * Hash the leading bytes of the TIFF, covering the header and usually the
+     * first IFD
+     *
+     * @param file
+     *            opened TIFF file
+     * @return header hash
+     */
+    private static long headerHash(RandomAccessFileAdapter file) throws IOException {
+        int length = (int) Math.min(file.length(), HEADER_HASH_BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(file.readBytes(0, length));
+        return crc.getValue();
+    }
+
+    private static byte byteOrderValue(ByteOrder byteOrder) {
+        return (byte) (byteOrder == ByteOrder.BIG_ENDIAN ? 0 : 1);
+    }
+
+}
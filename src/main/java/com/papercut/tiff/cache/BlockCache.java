@@ -0,0 +1,129 @@
+package com.papercut.tiff.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 单个目录的已解码块（tile/strip）缓存，按块索引存取，以字节数限制容量，
+ * 超出时淘汰最近最少使用的块。缓存的字节数组在多个读取者之间共享，不能修改
+ */
+public class BlockCache {
+
+    /**
+     * Max bytes of cached blocks
+     */
+    private final long maxBytes;
+
+    /**
+     * Cached blocks in access order, least recently used first
+     */
+    private final LinkedHashMap<Integer, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes
+     *            max bytes of cached blocks
+     */
+    public BlockCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid block cache max bytes: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get a cached block
+     *
+     * @param index
+     *            block index
+     * @return block bytes, null if not cached
+     */
+    public synchronized byte[] get(int index) {
+        byte[] block = blocks.get(index);
+        if (block != null) {
+            hits++;
+        } else {
+            misses++;
+        }
+        return block;
+    }
+
+    /**
+     * Cache a block, evicting least recently used blocks beyond the max bytes.
+     * Blocks larger than the max bytes are not cached
+     *
+     * @param index
+     *            block index
+     * @param block
+     *            block bytes
+     */
+    public synchronized void put(int index, byte[] block) {
+        if (block.length > maxBytes) {
+            return;
+        }
+        byte[] previous = blocks.put(index, block);
+        if (previous != null) {
+            bytes -= previous.length;
+        }
+        bytes += block.length;
+        Iterator<Map.Entry<Integer, byte[]>> iterator = blocks.entrySet().iterator();
+        while (bytes > maxBytes && iterator.hasNext()) {
+            bytes -= iterator.next().getValue().length;
+            iterator.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Remove all cached blocks
+     */
+    public synchronized void clear() {
+        blocks.clear();
+        bytes = 0;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the bytes of the cached blocks
+     *
+     * @return cached bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the number of cached blocks
+     *
+     * @return cached block count
+     */
+    public synchronized int size() {
+        return blocks.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+}
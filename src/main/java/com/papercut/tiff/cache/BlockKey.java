@@ -0,0 +1,85 @@
+package com.papercut.tiff.cache;
+
+/**
+ * 共享块缓存的键：文件标识、IFD、块索引和样本
+ */
+public final class BlockKey {
+
+    /**
+     * File identity, the same for every open of the same file version
+     */
+    private final long fileId;
+
+    /**
+     * IFD byte offset, identifying pages and sub IFDs within the file
+     */
+    private final long ifdOffset;
+
+    private final int blockIndex;
+
+    private final int sample;
+
+    /**
+     * Constructor
+     *
+     * @param fileId
+     *            file identity
+     * @param ifdOffset
+     *            IFD byte offset
+     * @param blockIndex
+     *            block index
+     * @param sample
+     *            sample plane, 0 when chunky
+     */
+    public BlockKey(long fileId, long ifdOffset, int blockIndex, int sample) {
+        this.fileId = fileId;
+        this.ifdOffset = ifdOffset;
+        this.blockIndex = blockIndex;
+        this.sample = sample;
+    }
+
+    public long getFileId() {
+        return fileId;
+    }
+
+    public long getIfdOffset() {
+        return ifdOffset;
+    }
+
+    public int getBlockIndex() {
+        return blockIndex;
+    }
+
+    public int getSample() {
+        return sample;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof BlockKey)) {
+            return false;
+        }
+        BlockKey other = (BlockKey) obj;
+        return fileId == other.fileId && ifdOffset == other.ifdOffset
+                && blockIndex == other.blockIndex && sample == other.sample;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Long.hashCode(fileId);
+        result = 31 * result + Long.hashCode(ifdOffset);
+        result = 31 * result + blockIndex;
+        result = 31 * result + sample;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockKey [fileId=" + fileId + ", ifdOffset=" + ifdOffset
+                + ", blockIndex=" + blockIndex + ", sample=" + sample + "]";
+    }
+
+}
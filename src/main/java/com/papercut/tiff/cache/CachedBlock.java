@@ -0,0 +1,78 @@
+package com.papercut.tiff.cache;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+
+/**
+ * 已解码块的只读视图。来自{@link OffHeapBlockCache}的块持有引用计数，
+ * 关闭前不会被淘汰释放，关闭后不能再使用视图
+ */
+public final class CachedBlock implements Closeable {
+
+    /**
+     * Cache holding the block, null when not cached
+     */
+    private final OffHeapBlockCache cache;
+
+    /**
+     * Cache entry, null when not cached
+     */
+    private final OffHeapBlockCache.Entry entry;
+
+    private final ByteBuffer buffer;
+
+    private boolean closed;
+
+    CachedBlock(OffHeapBlockCache cache, OffHeapBlockCache.Entry entry, ByteBuffer buffer) {
+        this.cache = cache;
+        this.entry = entry;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Wrap block bytes that are not held by a cache
+     *
+     * @param block
+     *            block bytes
+     * @return block view
+     */
+    public static CachedBlock wrap(byte[] block) {
+        return new CachedBlock(null, null, ByteBuffer.wrap(block).asReadOnlyBuffer());
+    }
+
+    /**
+     * Get the read-only block bytes, position 0 and limit the block length.
+     * Only valid until the block is closed
+     *
+     * @return block buffer
+     */
+    public ByteBuffer getBuffer() {
+        if (closed) {
+            throw new IllegalStateException("Cached block is closed");
+        }
+        return buffer;
+    }
+
+    /**
+     * Get the block length
+     *
+     * @return bytes
+     */
+    public int length() {
+        return buffer.limit();
+    }
+
+    /**
+     * Release the reference to the block
+     */
+    @Override
+    public void close() {
+        if (!closed) {
+            closed = true;
+            if (cache != null) {
+                cache.release(entry);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.papercut.tiff.cache;
+
+/**
+ * 近似访问频率统计（count-min sketch），每行一个4位饱和计数器，每字节存放两个计数器，
+ * 累计增加次数达到采样数后所有计数减半，使历史访问频率逐渐衰减
+ */
+final class FrequencySketch {
+
+    private static final int ROWS = 4;
+
+    private static final int MAX_COUNT = 15;
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    /**
+     * Counters, row major, two 4-bit counters per byte with the even counter
+     * in the low bits
+     */
+    private final byte[] table;
+
+    private final int mask;
+
+    private final int sampleSize;
+
+    private int additions;
+
+    /**
+     * Constructor
+     *
+     * @param expectedEntries
+     *            expected number of cached entries
+     */
+    FrequencySketch(long expectedEntries) {
+        // At least four counters per expected entry in each row keep
+        // collisions rare
+        int entries = (int) Math.max(16, Math.min(1 << 22, expectedEntries));
+        int width = Integer.highestOneBit(4 * entries - 1) << 1;
+        this.table = new byte[ROWS * width / 2];
+        this.mask = width - 1;
+        this.sampleSize = 10 * entries;
+    }
+
+    /**
+     * Record an access
+     *
+     * @param hashCode
+     *            key hash code
+     */
+    void increment(int hashCode) {
+        int hash = spread(hashCode);
+        boolean added = false;
+        for (int row = 0; row < ROWS; row++) {
+            int index = index(hash, row);
+            int shift = (index & 1) << 2;
+            int count = (table[index >>> 1] >>> shift) & MAX_COUNT;
+            if (count < MAX_COUNT) {
+                table[index >>> 1] += (byte) (1 << shift);
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Get the estimated access frequency
+     *
+     * @param hashCode
+     *            key hash code
+     * @return estimated frequency
+     */
+    int frequency(int hashCode) {
+        int hash = spread(hashCode);
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < ROWS; row++) {
+            int index = index(hash, row);
+            frequency = Math.min(frequency, (table[index >>> 1] >>> ((index & 1) << 2)) & MAX_COUNT);
+        }
+        return frequency;
+    }
+
+    /**
+     * Halve all counters, both counters of a byte at once
+     */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (byte) ((table[i] & 0xff) >>> 1 & 0x77);
+        }
+        additions /= 2;
+    }
+
+    /**
+     * Get the counter index of a row. Each row hashes with its own 64-bit
+     * seed so keys colliding in one row rarely collide in the others
+     */
+    private int index(int hash, int row) {
+        long rowHash = (hash + SEEDS[row]) * SEEDS[row];
+        rowHash += rowHash >>> 32;
+        return row * (mask + 1) + ((int) rowHash & mask);
+    }
+
+    /**
+     * Mix all bits of a hash code, key hash codes are often sequential
+     */
+    private static int spread(int hashCode) {
+        int hash = ((hashCode >>> 16) ^ hashCode) * 0x45d9f3b;
+        hash = ((hash >>> 16) ^ hash) * 0x45d9f3b;
+        return (hash >>> 16) ^ hash;
+    }
+
+}
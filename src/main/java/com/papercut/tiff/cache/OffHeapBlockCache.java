@@ -0,0 +1,507 @@
+package com.papercut.tiff.cache;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 堆外（direct memory）已解码块缓存，块数据不占用Java堆，不增加GC停顿。
+ * 内存按固定大小的slab分配，每个slab划分为同一2的幂大小级别的chunk，
+ * 空间不足时淘汰同一大小级别中最近最少使用的块，必要时将空闲的slab改配给其他大小级别。
+ * 读取通过{@link CachedBlock}只读视图完成，视图持有引用计数，被引用的块不会被淘汰
+ */
+public class OffHeapBlockCache {
+
+    /**
+     * Default slab bytes
+     */
+    public static final int DEFAULT_SLAB_BYTES = 16 * 1024 * 1024;
+
+    /**
+     * Smallest chunk size class, as a power of two
+     */
+    private static final int MIN_SIZE_CLASS = 12;
+
+    private final long maxBytes;
+
+    private final int slabBytes;
+
+    /**
+     * Largest chunk size class, one chunk per slab
+     */
+    private final int maxSizeClass;
+
+    private final long maxSlabs;
+
+    /**
+     * Cached entries by key
+     */
+    private final Map<BlockKey, Entry> entries = new HashMap<>();
+
+    /**
+     * Cached entries by size class in access order, least recently used
+     * first
+     */
+    private final LinkedHashMap<BlockKey, Entry>[] classEntries;
+
+    /**
+     * Free chunks by size class
+     */
+    private final ArrayDeque<Chunk>[] freeChunks;
+
+    /**
+     * Slabs by size class
+     */
+    private final List<Slab>[] classSlabs;
+
+    private long slabCount;
+
+    private long bytes;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long rejections;
+
+    /**
+     * Constructor with the default slab size
+     *
+     * @param maxBytes
+     *            max bytes of direct memory
+     */
+    public OffHeapBlockCache(long maxBytes) {
+        this(maxBytes, (int) Math.min(DEFAULT_SLAB_BYTES, Long.highestOneBit(maxBytes)));
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes
+     *            max bytes of direct memory
+     * @param slabBytes
+     *            slab bytes, a power of two, also the largest cacheable block
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public OffHeapBlockCache(long maxBytes, int slabBytes) {
+        if (Integer.bitCount(slabBytes) != 1 || slabBytes < (1 << MIN_SIZE_CLASS)
+                || maxBytes < slabBytes) {
+            throw new IllegalArgumentException("Invalid off-heap cache sizes. Max bytes: "
+                    + maxBytes + ", Slab bytes: " + slabBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.slabBytes = slabBytes;
+        this.maxSizeClass = Integer.numberOfTrailingZeros(slabBytes);
+        this.maxSlabs = maxBytes / slabBytes;
+        this.classEntries = new LinkedHashMap[maxSizeClass + 1];
+        this.freeChunks = new ArrayDeque[maxSizeClass + 1];
+        this.classSlabs = new List[maxSizeClass + 1];
+        for (int i = MIN_SIZE_CLASS; i <= maxSizeClass; i++) {
+            classEntries[i] = new LinkedHashMap<>(16, 0.75f, true);
+            freeChunks[i] = new ArrayDeque<>();
+            classSlabs[i] = new ArrayList<>();
+        }
+    }
+
+    /**
+     * Get a cached block, the returned view must be closed when no longer
+     * read
+     *
+     * @param key
+     *            block key
+     * @return block view, null if not cached
+     */
+    public synchronized CachedBlock get(BlockKey key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        classEntries[entry.chunk.slab.sizeClass].get(key);
+        if (entry.references++ == 0) {
+            entry.chunk.slab.referenced++;
+        }
+        return new CachedBlock(this, entry, entry.chunk.view(entry.length).asReadOnlyBuffer());
+    }
+
+    /**
+     * Copy a block into the cache. Least recently used unreferenced blocks
+     * are evicted to make room
+     *
+     * @param key
+     *            block key
+     * @param block
+     *            block bytes from the position to the limit
+     * @return true if cached
+     */
+    public synchronized boolean put(BlockKey key, ByteBuffer block) {
+        if (entries.containsKey(key)) {
+            return true;
+        }
+        int length = block.remaining();
+        if (length > slabBytes) {
+            rejections++;
+            return false;
+        }
+        int sizeClass = sizeClass(length);
+        Chunk chunk = allocate(sizeClass);
+        if (chunk == null) {
+            rejections++;
+            return false;
+        }
+        chunk.view(length).put(block.duplicate());
+        Entry entry = new Entry(key, chunk, length);
+        entries.put(key, entry);
+        classEntries[sizeClass].put(key, entry);
+        bytes += length;
+        return true;
+    }
+
+    /**
+     * Copy a block into the cache
+     *
+     * @param key
+     *            block key
+     * @param block
+     *            block bytes
+     * @return true if cached
+     */
+    public boolean put(BlockKey key, byte[] block) {
+        return put(key, ByteBuffer.wrap(block));
+    }
+
+    /**
+     * Remove all cached blocks. Referenced blocks are freed when released
+     */
+    public synchronized void clear() {
+        for (Entry entry : entries.values()) {
+            remove(entry);
+        }
+        entries.clear();
+        for (int i = MIN_SIZE_CLASS; i <= maxSizeClass; i++) {
+            classEntries[i].clear();
+        }
+    }
+
+    /**
+     * Release a block reference
+     *
+     * @param entry
+     *            cache entry
+     */
+    synchronized void release(Entry entry) {
+        if (--entry.references == 0) {
+            entry.chunk.slab.referenced--;
+            if (entry.removed) {
+                free(entry.chunk);
+            }
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public int getSlabBytes() {
+        return slabBytes;
+    }
+
+    /**
+     * Get the bytes of the cached blocks
+     *
+     * @return cached bytes
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Get the direct memory allocated to slabs
+     *
+     * @return allocated bytes
+     */
+    public synchronized long getAllocatedBytes() {
+        return slabCount * slabBytes;
+    }
+
+    /**
+     * Get the number of cached blocks
+     *
+     * @return cached block count
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the ratio of lookups served from the cache
+     *
+     * @return hit ratio, 0 before any lookup
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Get the number of blocks not cached, too large or without room after
+     * evicting unreferenced blocks
+     *
+     * @return rejection count
+     */
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * Allocate a chunk of the size class
+     *
+     * @param sizeClass
+     *            size class
+     * @return chunk, null if no room
+     */
+    private Chunk allocate(int sizeClass) {
+        if (freeChunks[sizeClass].isEmpty()) {
+            if (slabCount < maxSlabs) {
+                addSlab(new Slab(ByteBuffer.allocateDirect(slabBytes)), sizeClass);
+                slabCount++;
+            } else if (!moveUnusedSlab(sizeClass) && !evict(sizeClass, null)
+                    && !reclaimSlab(sizeClass)) {
+                return null;
+            }
+        }
+        Chunk chunk = freeChunks[sizeClass].pollFirst();
+        chunk.slab.used++;
+        return chunk;
+    }
+
+    /**
+     * Evict the least recently used unreferenced block of a size class
+     *
+     * @param sizeClass
+     *            size class
+     * @param slab
+     *            only evict from this slab, null for any
+     * @return true if evicted
+     */
+    private boolean evict(int sizeClass, Slab slab) {
+        Iterator<Entry> iterator = classEntries[sizeClass].values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.references == 0 && (slab == null || entry.chunk.slab == slab)) {
+                iterator.remove();
+                entries.remove(entry.key);
+                remove(entry);
+                evictions++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Move an unused slab of another size class to the size class
+     *
+     * @param sizeClass
+     *            size class in need of a chunk
+     * @return true if a slab was moved
+     */
+    private boolean moveUnusedSlab(int sizeClass) {
+        for (int i = MIN_SIZE_CLASS; i <= maxSizeClass; i++) {
+            if (i == sizeClass) {
+                continue;
+            }
+            for (Slab slab : classSlabs[i]) {
+                if (slab.used == 0) {
+                    moveSlab(slab, sizeClass);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Evict the blocks of the least used unreferenced slab of the size class
+     * holding the most slabs and move the slab to the size class
+     *
+     * @param sizeClass
+     *            size class in need of a chunk
+     * @return true if a slab was moved
+     */
+    private boolean reclaimSlab(int sizeClass) {
+        int candidateClass = -1;
+        for (int i = MIN_SIZE_CLASS; i <= maxSizeClass; i++) {
+            if (i != sizeClass && !classSlabs[i].isEmpty() && (candidateClass == -1
+                    || classSlabs[i].size() > classSlabs[candidateClass].size())) {
+                candidateClass = i;
+            }
+        }
+        if (candidateClass == -1) {
+            return false;
+        }
+        Slab candidate = null;
+        for (Slab slab : classSlabs[candidateClass]) {
+            if (slab.referenced == 0 && (candidate == null || slab.used < candidate.used)) {
+                candidate = slab;
+            }
+        }
+        if (candidate == null) {
+            return false;
+        }
+        while (candidate.used > 0 && evict(candidateClass, candidate)) {
+            // evict the blocks of the slab
+        }
+        moveSlab(candidate, sizeClass);
+        return true;
+    }
+
+    /**
+     * Move an unused slab to another size class
+     */
+    private void moveSlab(final Slab slab, int sizeClass) {
+        classSlabs[slab.sizeClass].remove(slab);
+        Iterator<Chunk> iterator = freeChunks[slab.sizeClass].iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().slab == slab) {
+                iterator.remove();
+            }
+        }
+        addSlab(slab, sizeClass);
+    }
+
+    /**
+     * Divide a slab into free chunks of the size class
+     */
+    private void addSlab(Slab slab, int sizeClass) {
+        slab.sizeClass = sizeClass;
+        slab.used = 0;
+        classSlabs[sizeClass].add(slab);
+        int chunkBytes = 1 << sizeClass;
+        for (int offset = 0; offset < slabBytes; offset += chunkBytes) {
+            freeChunks[sizeClass].addLast(new Chunk(slab, offset));
+        }
+    }
+
+    /**
+     * Remove an entry, freeing its chunk unless referenced
+     */
+    private void remove(Entry entry) {
+        entry.removed = true;
+        bytes -= entry.length;
+        if (entry.references == 0) {
+            free(entry.chunk);
+        }
+    }
+
+    private void free(Chunk chunk) {
+        chunk.slab.used--;
+        freeChunks[chunk.slab.sizeClass].addFirst(chunk);
+    }
+
+    private static int sizeClass(int size) {
+        if (size <= 1 << MIN_SIZE_CLASS) {
+            return MIN_SIZE_CLASS;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    /**
+     * Direct memory slab divided into chunks of one size class
+     */
+    private static final class Slab {
+
+        private final ByteBuffer memory;
+
+        private int sizeClass;
+
+        /**
+         * Number of chunks in use
+         */
+        private int used;
+
+        /**
+         * Number of chunks with referenced blocks
+         */
+        private int referenced;
+
+        private Slab(ByteBuffer memory) {
+            this.memory = memory;
+        }
+
+    }
+
+    /**
+     * Chunk of a slab
+     */
+    private static final class Chunk {
+
+        private final Slab slab;
+
+        private final int offset;
+
+        private Chunk(Slab slab, int offset) {
+            this.slab = slab;
+            this.offset = offset;
+        }
+
+        /**
+         * Get a view of the chunk bytes
+         */
+        private ByteBuffer view(int length) {
+            ByteBuffer view = slab.memory.duplicate();
+            view.limit(offset + length);
+            view.position(offset);
+            return view.slice();
+        }
+
+    }
+
+    /**
+     * Cached block entry
+     */
+    static final class Entry {
+
+        private final BlockKey key;
+
+        private final Chunk chunk;
+
+        private final int length;
+
+        private int references;
+
+        /**
+         * True once evicted or cleared, the chunk is freed when the last
+         * reference is released
+         */
+        private boolean removed;
+
+        private Entry(BlockKey key, Chunk chunk, int length) {
+            this.key = key;
+            this.chunk = chunk;
+            this.length = length;
+        }
+
+    }
+
+}
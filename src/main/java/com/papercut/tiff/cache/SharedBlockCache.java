@@ -0,0 +1,352 @@
+package com.papercut.tiff.cache;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * JVM内所有RandomTiffFile共享的已解码块缓存，使用统一的内存预算，采用W-TinyLFU策略：
+ * 新块先进入约占1%容量的LRU窗口，移出窗口时与主区（分段LRU：试用段和保护段）中
+ * 最近最少使用的块比较近似访问频率，频率更高者保留。
+ * 一次性的大范围顺序读取因访问频率低无法挤出交互访问的热点块。
+ * 缓存的字节数组在多个读取者之间共享，不能修改
+ */
+public class SharedBlockCache {
+
+    /**
+     * Default max bytes of cached blocks
+     */
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+
+    /**
+     * Percent of the max bytes used by the admission window
+     */
+    private static final int WINDOW_PERCENT = 1;
+
+    /**
+     * Percent of the main space used by the protected segment
+     */
+    private static final int PROTECTED_PERCENT = 80;
+
+    /**
+     * Typical decoded block bytes, used to size the frequency sketch
+     */
+    private static final int TYPICAL_BLOCK_BYTES = 16 * 1024;
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+
+    /**
+     * Shared default cache
+     */
+    private static final SharedBlockCache DEFAULT = new SharedBlockCache(DEFAULT_MAX_BYTES);
+
+    private final long maxBytes;
+
+    private final long windowMaxBytes;
+
+    private final long mainMaxBytes;
+
+    private final long protectedMaxBytes;
+
+    private final Map<BlockKey, Node> nodes = new HashMap<>();
+
+    /**
+     * Queue sentinels, next is least recently used and previous most
+     * recently used
+     */
+    private final Node[] queues = new Node[3];
+
+    private final long[] queueBytes = new long[3];
+
+    private final FrequencySketch sketch;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    private long rejections;
+
+    /**
+     * Get the shared default cache
+     *
+     * @return default cache
+     */
+    public static SharedBlockCache getDefault() {
+        return DEFAULT;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxBytes
+     *            max bytes of cached blocks
+     */
+    public SharedBlockCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("Invalid block cache max bytes: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.windowMaxBytes = Math.max(1, maxBytes * WINDOW_PERCENT / 100);
+        this.mainMaxBytes = maxBytes - windowMaxBytes;
+        this.protectedMaxBytes = mainMaxBytes * PROTECTED_PERCENT / 100;
+        for (int i = 0; i < queues.length; i++) {
+            Node sentinel = new Node(null, null);
+            sentinel.previous = sentinel;
+            sentinel.next = sentinel;
+            queues[i] = sentinel;
+        }
+        this.sketch = new FrequencySketch(maxBytes / TYPICAL_BLOCK_BYTES);
+    }
+
+    /**
+     * Get a cached block, recording the access
+     *
+     * @param key
+     *            block key
+     * @return block bytes, null if not cached
+     */
+    public synchronized byte[] get(BlockKey key) {
+        sketch.increment(key.hashCode());
+        Node node = nodes.get(key);
+        if (node == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        touch(node);
+        return node.block;
+    }
+
+    /**
+     * Cache a block. The block enters the admission window and is only kept
+     * in the main space when accessed more often than the blocks it would
+     * evict. Blocks larger than the main space are not cached
+     *
+     * @param key
+     *            block key
+     * @param block
+     *            block bytes
+     */
+    public synchronized void put(BlockKey key, byte[] block) {
+        if (block.length > mainMaxBytes) {
+            rejections++;
+            return;
+        }
+        Node node = nodes.get(key);
+        if (node != null) {
+            queueBytes[node.queue] += block.length - node.block.length;
+            node.block = block;
+            touch(node);
+        } else {
+            node = new Node(key, block);
+            nodes.put(key, node);
+            link(WINDOW, node);
+        }
+
+        // Move blocks out of the window into the main space
+        while (queueBytes[WINDOW] > windowMaxBytes) {
+            admit(unlink(queues[WINDOW].next));
+        }
+        demoteProtected();
+    }
+
+    /**
+     * Remove all cached blocks
+     */
+    public synchronized void clear() {
+        nodes.clear();
+        for (int i = 0; i < queues.length; i++) {
+            queues[i].previous = queues[i];
+            queues[i].next = queues[i];
+            queueBytes[i] = 0;
+        }
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Get the bytes of the cached blocks
+     *
+     * @return cached bytes
+     */
+    public synchronized long getBytes() {
+        return queueBytes[WINDOW] + queueBytes[PROBATION] + queueBytes[PROTECTED];
+    }
+
+    /**
+     * Get the number of cached blocks
+     *
+     * @return cached block count
+     */
+    public synchronized int size() {
+        return nodes.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the ratio of lookups served from the cache
+     *
+     * @return hit ratio, 0 before any lookup
+     */
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return lookups > 0 ? (double) hits / lookups : 0;
+    }
+
+    /**
+     * Get the number of cached blocks evicted from the main space
+     *
+     * @return eviction count
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Get the number of blocks leaving the window that were not admitted to
+     * the main space, or were too large to cache
+     *
+     * @return rejection count
+     */
+    public synchronized long getRejections() {
+        return rejections;
+    }
+
+    /**
+     * Admit a block leaving the window to the main space if it is accessed
+     * more often than each of the least recently used main blocks it would
+     * evict. No block is evicted unless the candidate is admitted
+     *
+     * @param candidate
+     *            block leaving the window
+     */
+    private void admit(Node candidate) {
+        int length = candidate.block.length;
+        if (length > mainMaxBytes) {
+            reject(candidate);
+            return;
+        }
+
+        // Find the victims, probation before protected, without evicting
+        long excess = queueBytes[PROBATION] + queueBytes[PROTECTED] + length - mainMaxBytes;
+        int candidateFrequency = sketch.frequency(candidate.key.hashCode());
+        int queue = PROBATION;
+        Node last = queues[PROBATION];
+        for (long freed = 0; freed < excess; ) {
+            Node victim = last.next;
+            if (victim == queues[queue]) {
+                queue++;
+                last = queues[queue];
+                continue;
+            }
+            if (candidateFrequency <= sketch.frequency(victim.key.hashCode())) {
+                reject(candidate);
+                return;
+            }
+            freed += victim.block.length;
+            last = victim;
+        }
+
+        // Evict the victims, up to and including the last
+        if (excess > 0) {
+            Node victim;
+            do {
+                victim = queues[PROBATION].next != queues[PROBATION]
+                        ? queues[PROBATION].next : queues[PROTECTED].next;
+                nodes.remove(unlink(victim).key);
+                evictions++;
+            } while (victim != last);
+        }
+        link(PROBATION, candidate);
+    }
+
+    /**
+     * Drop a block leaving the window that is not admitted
+     */
+    private void reject(Node candidate) {
+        nodes.remove(candidate.key);
+        rejections++;
+    }
+
+    /**
+     * Record a hit, promoting probation blocks to the protected segment
+     *
+     * @param node
+     *            accessed node
+     */
+    private void touch(Node node) {
+        int queue = node.queue == PROBATION ? PROTECTED : node.queue;
+        link(queue, unlink(node));
+        demoteProtected();
+    }
+
+    /**
+     * Demote least recently used protected blocks to probation while the
+     * protected segment is over its share
+     */
+    private void demoteProtected() {
+        while (queueBytes[PROTECTED] > protectedMaxBytes) {
+            link(PROBATION, unlink(queues[PROTECTED].next));
+        }
+    }
+
+    /**
+     * Link a node as the most recently used of a queue
+     */
+    private void link(int queue, Node node) {
+        Node sentinel = queues[queue];
+        node.queue = queue;
+        node.next = sentinel;
+        node.previous = sentinel.previous;
+        sentinel.previous.next = node;
+        sentinel.previous = node;
+        queueBytes[queue] += node.block.length;
+    }
+
+    /**
+     * Unlink a node from its queue
+     */
+    private Node unlink(Node node) {
+        node.previous.next = node.next;
+        node.next.previous = node.previous;
+        node.previous = null;
+        node.next = null;
+        queueBytes[node.queue] -= node.block.length;
+        return node;
+    }
+
+    /**
+     * Cached block queue node
+     */
+    private static final class Node {
+
+        private final BlockKey key;
+
+        private byte[] block;
+
+        private int queue;
+
+        private Node previous;
+
+        private Node next;
+
+        private Node(BlockKey key, byte[] block) {
+            this.key = key;
+            this.block = block;
+        }
+
+    }
+
+}
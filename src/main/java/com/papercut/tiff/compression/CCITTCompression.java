@@ -0,0 +1,546 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.FileDirectory;
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.TiffConstants;
+import com.papercut.tiff.expection.TiffException;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * CCITT传真解码，Compression为2（Modified Huffman）、3（T.4，Group 3一维或二维）和4（T.6，Group 4）。
+ * 游程码和二维模式码通过预先生成的查找表一次取出，位流使用64位缓冲读取，
+ * 每行以颜色变化位置数组表示，作为下一行二维解码的参考行。
+ * 解码结果为每像素1位、按字节对齐的行，PhotometricInterpretation为WhiteIsZero时1表示黑色。
+ * 需要每像素1字节时可使用{@link #expand(byte[], int, int, int, byte[], int, byte, byte)}展开
+ */
+public class CCITTCompression implements CompressionDecoder {
+
+    /**
+     * Bits looked up at once for white, black and mode codes
+     */
+    private static final int WHITE_BITS = 12;
+    private static final int BLACK_BITS = 13;
+    private static final int MODE_BITS = 7;
+
+    private static final String[] WHITE_TERMINATING = {
+            "00110101", "000111", "0111", "1000", "1011", "1100", "1110", "1111",
+            "10011", "10100", "00111", "01000", "001000", "000011", "110100", "110101",
+            "101010", "101011", "0100111", "0001100", "0001000", "0010111", "0000011", "0000100",
+            "0101000", "0101011", "0010011", "0100100", "0011000", "00000010", "00000011", "00011010",
+            "00011011", "00010010", "00010011", "00010100", "00010101", "00010110", "00010111", "00101000",
+            "00101001", "00101010", "00101011", "00101100", "00101101", "00000100", "00000101", "00001010",
+            "00001011", "01010010", "01010011", "01010100", "01010101", "00100100", "00100101", "01011000",
+            "01011001", "01011010", "01011011", "01001010", "01001011", "00110010", "00110011", "00110100"};
+
+    private static final String[] WHITE_MAKEUP = {
+            "11011", "10010", "010111", "0110111", "00110110", "00110111", "01100100", "01100101",
+            "01101000", "01100111", "011001100", "011001101", "011010010", "011010011", "011010100", "011010101",
+            "011010110", "011010111", "011011000", "011011001", "011011010", "011011011", "010011000", "010011001",
+            "010011010", "011000", "010011011"};
+
+    private static final String[] BLACK_TERMINATING = {
+            "0000110111", "010", "11", "10", "011", "0011", "0010", "00011",
+            "000101", "000100", "0000100", "0000101", "0000111", "00000100", "00000111", "000011000",
+            "0000010111", "0000011000", "0000001000", "00001100111", "00001101000", "00001101100", "00000110111", "00000101000",
+            "00000010111", "00000011000", "000011001010", "000011001011", "000011001100", "000011001101", "000001101000", "000001101001",
+            "000001101010", "000001101011", "000011010010", "000011010011", "000011010100", "000011010101", "000011010110", "000011010111",
+            "000001101100", "000001101101", "000011011010", "000011011011", "000001010100", "000001010101", "000001010110", "000001010111",
+            "000001100100", "000001100101", "000001010010", "000001010011", "000000100100", "000000110111", "000000111000", "000000100111",
+            "000000101000", "000001011000", "000001011001", "000000101011", "000000101100", "000001011010", "000001100110", "000001100111"};
+
+    private static final String[] BLACK_MAKEUP = {
+            "0000001111", "000011001000", "000011001001", "000001011011", "000000110011", "000000110100", "000000110101", "0000001101100",
+            "0000001101101", "0000001001010", "0000001001011", "0000001001100", "0000001001101", "0000001110010", "0000001110011", "0000001110100",
+            "0000001110101", "0000001110110", "0000001110111", "0000001010010", "0000001010011", "0000001010100", "0000001010101", "0000001011010",
+            "0000001011011", "0000001100100", "0000001100101"};
+
+    /**
+     * Makeup codes of 1792 to 2560, shared by white and black
+     */
+    private static final String[] EXTENDED_MAKEUP = {
+            "00000001000", "00000001100", "00000001101", "000000010010", "000000010011", "000000010100", "000000010101",
+            "000000010110", "000000010111", "000000011100", "000000011101", "000000011110", "000000011111"};
+
+    private static final int MODE_PASS = 1;
+    private static final int MODE_HORIZONTAL = 2;
+    private static final int MODE_EXTENSION = 3;
+
+    /**
+     * Vertical mode of offset k is MODE_VERTICAL + k
+     */
+    private static final int MODE_VERTICAL = 10;
+
+    /**
+     * Lookup tables of (code length &lt;&lt; 16 | run length), 0 when invalid
+     */
+    private static final int[] WHITE_TABLE = new int[1 << WHITE_BITS];
+    private static final int[] BLACK_TABLE = new int[1 << BLACK_BITS];
+
+    /**
+     * Lookup table of (code length &lt;&lt; 8 | mode), 0 when invalid
+     */
+    private static final int[] MODE_TABLE = new int[1 << MODE_BITS];
+
+    /**
+     * Bytes with reversed bit order, for fill order 2
+     */
+    private static final byte[] REVERSED = new byte[256];
+
+    static {
+        addRuns(WHITE_TABLE, WHITE_BITS, WHITE_TERMINATING, 0, 1);
+        addRuns(WHITE_TABLE, WHITE_BITS, WHITE_MAKEUP, 64, 64);
+        addRuns(WHITE_TABLE, WHITE_BITS, EXTENDED_MAKEUP, 1792, 64);
+        addRuns(BLACK_TABLE, BLACK_BITS, BLACK_TERMINATING, 0, 1);
+        addRuns(BLACK_TABLE, BLACK_BITS, BLACK_MAKEUP, 64, 64);
+        addRuns(BLACK_TABLE, BLACK_BITS, EXTENDED_MAKEUP, 1792, 64);
+        addMode("0001", MODE_PASS);
+        addMode("001", MODE_HORIZONTAL);
+        addMode("0000001", MODE_EXTENSION);
+        addMode("1", MODE_VERTICAL);
+        addMode("011", MODE_VERTICAL + 1);
+        addMode("000011", MODE_VERTICAL + 2);
+        addMode("0000011", MODE_VERTICAL + 3);
+        addMode("010", MODE_VERTICAL - 1);
+        addMode("000010", MODE_VERTICAL - 2);
+        addMode("0000010", MODE_VERTICAL - 3);
+        for (int i = 0; i < 256; i++) {
+            REVERSED[i] = (byte) (Integer.reverse(i) >>> 24);
+        }
+    }
+
+    /**
+     * Compression, 2, 3 or 4
+     */
+    private final int compression;
+
+    /**
+     * Pixels per row
+     */
+    private final int width;
+
+    /**
+     * True when the fill order is least significant bit first
+     */
+    private final boolean reverseBits;
+
+    /**
+     * True when T.4 rows may be 2D coded
+     */
+    private final boolean twoDimensional;
+
+    /**
+     * True when 0 is black
+     */
+    private final boolean blackIsZero;
+
+    /**
+     * Constructor
+     *
+     * @param compression
+     *            compression, 2, 3 or 4
+     * @param width
+     *            pixels per row
+     * @param fillOrder
+     *            fill order
+     * @param t4Options
+     *            T4Options, only used for compression 3
+     * @param photometricInterpretation
+     *            photometric interpretation
+     */
+    public CCITTCompression(int compression, int width, int fillOrder, long t4Options,
+            int photometricInterpretation) {
+        this.compression = compression;
+        this.width = width;
+        this.reverseBits = fillOrder == TiffConstants.FILL_ORDER_LOWER_COLUMN_LOWER_ORDER;
+        this.twoDimensional = compression == TiffConstants.COMPRESSION_T4
+                && (t4Options & TiffConstants.T4_OPTIONS_2D) != 0;
+        this.blackIsZero = photometricInterpretation == TiffConstants.PHOTOMETRIC_INTERPRETATION_BLACK_IS_ZERO;
+    }
+
+    /**
+     * Create the decoder for a directory from its compression, tile width,
+     * FillOrder, T4Options and PhotometricInterpretation
+     *
+     * @param directory
+     *            file directory
+     * @return decoder
+     */
+    public static CCITTCompression forDirectory(FileDirectory directory) {
+        Number fillOrder = directory.getNumberEntryValue(FieldTagType.FillOrder);
+        Number t4Options = directory.getNumberEntryValue(FieldTagType.T4Options);
+        Integer photometric = directory.getPhotometricInterpretation();
+        return new CCITTCompression(directory.getCompression(),
+                directory.getTileWidth().intValue(),
+                fillOrder != null ? fillOrder.intValue() : TiffConstants.FILL_ORDER_LOWER_COLUMN_HIGHER_ORDER,
+                t4Options != null ? t4Options.longValue() : 0,
+                photometric != null ? photometric : TiffConstants.PHOTOMETRIC_INTERPRETATION_WHITE_IS_ZERO);
+    }
+
+    @Override
+    public int decode(byte[] input, int inputOffset, int inputLength, byte[] output,
+            int outputOffset, int outputLength, ByteOrder byteOrder) {
+        int rowBytes = (width + 7) >>> 3;
+        int rows = outputLength / rowBytes;
+        BitReader reader = new BitReader(input, inputOffset, inputLength, reverseBits);
+
+        // Changing element positions of the reference and current rows,
+        // followed by sentinels at the row width. The first reference row is
+        // all white
+        int[] reference = new int[2 * width + 4];
+        int[] current = new int[2 * width + 4];
+        sentinels(reference, 0);
+
+        for (int row = 0; row < rows; row++) {
+            int count;
+            switch (compression) {
+            case TiffConstants.COMPRESSION_CCITT_HUFFMAN:
+                count = decode1D(reader, current);
+                reader.align();
+                break;
+            case TiffConstants.COMPRESSION_T4:
+                skipEol(reader);
+                boolean oneDimensional = true;
+                if (twoDimensional) {
+                    oneDimensional = reader.peek(1) == 1;
+                    reader.skip(1);
+                }
+                count = oneDimensional ? decode1D(reader, current)
+                        : decode2D(reader, reference, current);
+                break;
+            case TiffConstants.COMPRESSION_T6:
+                count = decode2D(reader, reference, current);
+                break;
+            default:
+                throw new TiffException("Unsupported CCITT compression: " + compression);
+            }
+            sentinels(current, count);
+            writeRow(current, count, output, outputOffset + row * rowBytes, rowBytes);
+
+            int[] swap = reference;
+            reference = current;
+            current = swap;
+        }
+        Arrays.fill(output, outputOffset + rows * rowBytes, outputOffset + outputLength, (byte) 0);
+        return outputLength;
+    }
+
+    /**
+     * Expand packed 1-bit rows to one byte per pixel
+     *
+     * @param packed
+     *            packed rows, each starting on a byte boundary
+     * @param packedOffset
+     *            offset of the packed rows
+     * @param width
+     *            pixels per row
+     * @param rows
+     *            number of rows
+     * @param output
+     *            output of width * rows bytes
+     * @param outputOffset
+     *            offset to write to
+     * @param zero
+     *            byte value of 0 bits
+     * @param one
+     *            byte value of 1 bits
+     */
+    public static void expand(byte[] packed, int packedOffset, int width, int rows,
+            byte[] output, int outputOffset, byte zero, byte one) {
+        int rowBytes = (width + 7) >>> 3;
+        int out = outputOffset;
+        for (int row = 0; row < rows; row++) {
+            int in = packedOffset + row * rowBytes;
+            int x = 0;
+            while (x < width) {
+                int bits = packed[in++];
+                int end = Math.min(x + 8, width);
+                for (int bit = 7; x < end; bit--, x++) {
+                    output[out++] = ((bits >>> bit) & 1) != 0 ? one : zero;
+                }
+            }
+        }
+    }
+
+    /**
+     * Decode a 1D coded row of alternating white and black runs
+     *
+     * @return number of changing elements
+     */
+    private int decode1D(BitReader reader, int[] current) {
+        int count = 0;
+        int position = 0;
+        boolean black = false;
+        while (position < width) {
+            position += readRun(reader, black);
+            if (position < width) {
+                count = record(current, count, position);
+            }
+            black = !black;
+        }
+        return count;
+    }
+
+    /**
+     * Decode a 2D coded row relative to the reference row
+     *
+     * @return number of changing elements
+     */
+    private int decode2D(BitReader reader, int[] reference, int[] current) {
+        int count = 0;
+        int a0 = -1;
+        boolean black = false;
+        int referenceIndex = 0;
+        while (a0 < width) {
+
+            // b1 is the first changing element on the reference row after a0
+            // of the opposite color, b2 the next changing element. Even
+            // changing elements start black runs, odd ones white runs
+            int i = referenceIndex;
+            while (reference[i] <= a0 || ((i & 1) == 0) == black) {
+                i++;
+            }
+            int b1 = reference[i];
+            int b2 = reference[i + 1];
+            referenceIndex = i > 0 ? i - 1 : 0;
+
+            int entry = MODE_TABLE[reader.peek(MODE_BITS)];
+            if (entry == 0) {
+                throw new TiffException("Invalid CCITT mode code");
+            }
+            reader.skip(entry >>> 8);
+            int mode = entry & 0xFF;
+            switch (mode) {
+            case MODE_PASS:
+                a0 = b2;
+                break;
+            case MODE_HORIZONTAL:
+                int a1 = Math.max(a0, 0) + readRun(reader, black);
+                int a2 = a1 + readRun(reader, !black);
+                if (a1 < width) {
+                    count = record(current, count, a1);
+                    if (a2 < width) {
+                        count = record(current, count, a2);
+                    }
+                }
+                a0 = a2;
+                break;
+            case MODE_EXTENSION:
+                throw new TiffException("CCITT uncompressed mode is not supported");
+            default:
+                a1 = b1 + mode - MODE_VERTICAL;
+                if (a1 < a0 || a1 < 0) {
+                    throw new TiffException("Invalid CCITT vertical mode position: " + a1);
+                }
+                if (a1 < width) {
+                    count = record(current, count, a1);
+                }
+                a0 = a1;
+                black = !black;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Read a white or black run, summing makeup codes
+     */
+    private static int readRun(BitReader reader, boolean black) {
+        int total = 0;
+        while (true) {
+            int entry = black ? BLACK_TABLE[reader.peek(BLACK_BITS)]
+                    : WHITE_TABLE[reader.peek(WHITE_BITS)];
+            if (entry == 0) {
+                throw new TiffException("Invalid CCITT " + (black ? "black" : "white") + " run code");
+            }
+            reader.skip(entry >>> 16);
+            int run = entry & 0xFFFF;
+            total += run;
+            if (run < 64) {
+                return total;
+            }
+        }
+    }
+
+    /**
+     * Skip an EOL code and any fill bits before it
+     */
+    private static void skipEol(BitReader reader) {
+        // No run or mode code starts with 11 zero bits
+        if (reader.peek(11) != 0) {
+            return;
+        }
+        while (reader.peek(1) == 0) {
+            reader.skip(1);
+        }
+        reader.skip(1);
+    }
+
+    /**
+     * Record a changing element
+     *
+     * @return new count
+     */
+    private static int record(int[] changes, int count, int position) {
+        if (count >= changes.length - 3) {
+            throw new TiffException("Invalid CCITT row, too many changing elements");
+        }
+        changes[count] = position;
+        return count + 1;
+    }
+
+    /**
+     * Set the row width sentinels after the changing elements
+     */
+    private void sentinels(int[] changes, int count) {
+        changes[count] = width;
+        changes[count + 1] = width;
+        changes[count + 2] = width;
+    }
+
+    /**
+     * Write a row of black spans between changing elements
+     */
+    private void writeRow(int[] changes, int count, byte[] output, int offset, int rowBytes) {
+        Arrays.fill(output, offset, offset + rowBytes, (byte) 0);
+        for (int i = 0; i < count; i += 2) {
+            setBits(output, offset, changes[i], changes[i + 1]);
+        }
+        if (blackIsZero) {
+            for (int i = offset; i < offset + rowBytes; i++) {
+                output[i] = (byte) ~output[i];
+            }
+            int padding = rowBytes * 8 - width;
+            if (padding > 0) {
+                output[offset + rowBytes - 1] &= (byte) (0xFF << padding);
+            }
+        }
+    }
+
+    /**
+     * Set the bits from start inclusive to end exclusive
+     */
+    private static void setBits(byte[] output, int offset, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        int startByte = offset + (start >>> 3);
+        int endByte = offset + ((end - 1) >>> 3);
+        int startMask = 0xFF >>> (start & 7);
+        int endMask = 0xFF << (7 - ((end - 1) & 7));
+        if (startByte == endByte) {
+            output[startByte] |= (byte) (startMask & endMask);
+        } else {
+            output[startByte] |= (byte) startMask;
+            Arrays.fill(output, startByte + 1, endByte, (byte) 0xFF);
+            output[endByte] |= (byte) endMask;
+        }
+    }
+
+    /**
+     * Add run codes to a lookup table
+     */
+    private static void addRuns(int[] table, int bits, String[] codes, int firstRun, int runStep) {
+        for (int i = 0; i < codes.length; i++) {
+            addCode(table, bits, codes[i], (codes[i].length() << 16) | (firstRun + i * runStep));
+        }
+    }
+
+    /**
+     * Add a 2D mode code to the mode lookup table
+     */
+    private static void addMode(String code, int mode) {
+        addCode(MODE_TABLE, MODE_BITS, code, (code.length() << 8) | mode);
+    }
+
+    /**
+     * Add a code to every lookup table index it prefixes
+     */
+    private static void addCode(int[] table, int bits, String code, int value) {
+        int length = code.length();
+        int first = Integer.parseInt(code, 2) << (bits - length);
+        for (int i = first; i < first + (1 << (bits - length)); i++) {
+            if (table[i] != 0) {
+                throw new IllegalStateException("Conflicting CCITT code: " + code);
+            }
+            table[i] = value;
+        }
+    }
+
+    /**
+     * Most significant bit first reader over a 64 bit buffer, reading zeros
+     * past the end of the input
+     */
+    private static final class BitReader {
+
+        /**
+         * Max bytes read past the end of the input before the data is
+         * considered truncated
+         */
+        private static final int MAX_PADDING = 16;
+
+        private final byte[] input;
+
+        private final int end;
+
+        private final boolean reverseBits;
+
+        private int position;
+
+        private long buffer;
+
+        /**
+         * Number of unread bits at the low end of the buffer
+         */
+        private int bits;
+
+        private int padding;
+
+        private BitReader(byte[] input, int offset, int length, boolean reverseBits) {
+            this.input = input;
+            this.position = offset;
+            this.end = offset + length;
+            this.reverseBits = reverseBits;
+        }
+
+        private int peek(int count) {
+            if (bits < count) {
+                fill();
+            }
+            return (int) (buffer >>> (bits - count)) & ((1 << count) - 1);
+        }
+
+        private void skip(int count) {
+            bits -= count;
+        }
+
+        /**
+         * Skip to the next byte boundary
+         */
+        private void align() {
+            bits -= bits & 7;
+        }
+
+        private void fill() {
+            while (bits <= 56) {
+                int value;
+                if (position < end) {
+                    value = input[position++] & 0xFF;
+                    if (reverseBits) {
+                        value = REVERSED[value] & 0xFF;
+                    }
+                } else {
+                    if (++padding > MAX_PADDING) {
+                        throw new TiffException("CCITT data is truncated");
+                    }
+                    value = 0;
+                }
+                buffer = (buffer << 8) | value;
+                bits += 8;
+            }
+        }
+
+    }
+
+}
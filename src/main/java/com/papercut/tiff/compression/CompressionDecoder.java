@@ -0,0 +1,36 @@
+package com.papercut.tiff.compression;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ * 压缩tile/strip的解码器，按Compression标签通过{@link CompressionDecoders}选择。
+ * 解码结果直接写入调用方提供的输出缓冲区，实现需线程安全
+ */
+public interface CompressionDecoder {
+
+    /**
+     * Decode a compressed tile or strip into the output buffer
+     *
+     * @param input
+     *            compressed bytes
+     * @param inputOffset
+     *            offset of the compressed bytes
+     * @param inputLength
+     *            number of compressed bytes
+     * @param output
+     *            output buffer
+     * @param outputOffset
+     *            offset to write the decoded bytes to
+     * @param outputLength
+     *            decoded bytes expected, from the block dimensions
+     * @param byteOrder
+     *            file byte order
+     * @return number of decoded bytes written
+     * @throws IOException
+     *             upon failure to decode
+     */
+    int decode(byte[] input, int inputOffset, int inputLength, byte[] output,
+            int outputOffset, int outputLength, ByteOrder byteOrder) throws IOException;
+
+}
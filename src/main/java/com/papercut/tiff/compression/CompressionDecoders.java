@@ -0,0 +1,90 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.FileDirectory;
+import com.papercut.tiff.constant.TiffConstants;
+import com.papercut.tiff.expection.TiffException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * 按Compression标签值注册和选择{@link CompressionDecoder}，
+ * 可注册自定义实现以支持更多压缩方式或替换内置实现
+ */
+public final class CompressionDecoders {
+
+    /**
+     * Decoder factories by compression, given the directory being decoded
+     */
+    private static final Map<Integer, Function<FileDirectory, CompressionDecoder>> FACTORIES = new ConcurrentHashMap<>();
+
+    static {
+        register(TiffConstants.COMPRESSION_NO, directory -> RawCompression.INSTANCE);
+        register(TiffConstants.COMPRESSION_CCITT_HUFFMAN, CCITTCompression::forDirectory);
+        register(TiffConstants.COMPRESSION_T4, CCITTCompression::forDirectory);
+        register(TiffConstants.COMPRESSION_T6, CCITTCompression::forDirectory);
+        register(TiffConstants.COMPRESSION_LZW, directory -> LZWCompression.INSTANCE);
+        register(TiffConstants.COMPRESSION_PACKBITS, directory -> PackBitsCompression.INSTANCE);
+        register(TiffConstants.COMPRESSION_JPEG_NEW, JPEGCompression::forDirectory);
+        register(TiffConstants.COMPRESSION_DEFLATE, directory -> DeflateCompression.INSTANCE);
+        registerPkzipDeflate();
+    }
+
+    private CompressionDecoders() {
+    }
+
+    /**
+     * Register Deflate for the obsolete PKZIP-style compression value, still
+     * written by some encoders
+     */
+    @SuppressWarnings("deprecation")
+    private static void registerPkzipDeflate() {
+        register(TiffConstants.COMPRESSION_PKZIP_DEFLATE, directory -> DeflateCompression.INSTANCE);
+    }
+
+    /**
+     * Register a decoder factory, replacing any registered for the
+     * compression
+     *
+     * @param compression
+     *            compression tag value
+     * @param factory
+     *            decoder factory, given the directory being decoded
+     */
+    public static void register(int compression, Function<FileDirectory, CompressionDecoder> factory) {
+        FACTORIES.put(compression, factory);
+    }
+
+    /**
+     * Is a decoder registered for the compression
+     *
+     * @param compression
+     *            compression tag value
+     * @return true if supported
+     */
+    public static boolean isSupported(int compression) {
+        return FACTORIES.containsKey(compression);
+    }
+
+    /**
+     * Get the decoder for the compression of a directory, uncompressed when
+     * the compression is not specified
+     *
+     * @param directory
+     *            file directory
+     * @return compression decoder
+     */
+    public static CompressionDecoder getDecoder(FileDirectory directory) {
+        Integer compression = directory.getCompression();
+        if (compression == null) {
+            compression = TiffConstants.COMPRESSION_NO;
+        }
+        Function<FileDirectory, CompressionDecoder> factory = FACTORIES.get(compression);
+        if (factory == null) {
+            throw new TiffException("Unsupported compression: " + compression);
+        }
+        return factory.apply(directory);
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.papercut.tiff.compression;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+
+/**
+ * tile/strip的压缩编码器，结果直接写入调用方提供的输出缓冲区，实现需线程安全
+ */
+public interface CompressionEncoder {
+
+    /**
+     * Must each row be encoded separately
+     *
+     * @return true if row encoding
+     */
+    boolean rowEncoding();
+
+    /**
+     * Get the max encoded bytes of the input, to size the output buffer
+     *
+     * @param inputLength
+     *            number of bytes to encode
+     * @return max encoded bytes
+     */
+    int maxEncodedLength(int inputLength);
+
+    /**
+     * Encode bytes into the output buffer
+     *
+     * @param input
+     *            bytes to encode
+     * @param inputOffset
+     *            offset of the bytes
+     * @param inputLength
+     *            number of bytes, a single row when row encoding
+     * @param output
+     *            output buffer, with room for {@link #maxEncodedLength(int)}
+     *            bytes
+     * @param outputOffset
+     *            offset to write the encoded bytes to
+     * @param byteOrder
+     *            file byte order
+     * @return number of encoded bytes written
+     * @throws IOException
+     *             upon failure to encode
+     */
+    int encode(byte[] input, int inputOffset, int inputLength, byte[] output,
+            int outputOffset, ByteOrder byteOrder) throws IOException;
+
+}
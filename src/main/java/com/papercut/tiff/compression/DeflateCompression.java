@@ -0,0 +1,96 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.expection.TiffException;
+
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Deflate（zlib）解码，Compression为8或32946。
+ * Inflater实例放入池中复用，避免每个块创建Inflater及其本地zlib内存，
+ * 解压结果直接写入输出缓冲区，不经过中间流和临时数组
+ */
+public class DeflateCompression implements CompressionDecoder {
+
+    /**
+     * Shared instance
+     */
+    public static final DeflateCompression INSTANCE = new DeflateCompression();
+
+    /**
+     * Max pooled inflaters, inflaters released beyond are ended
+     */
+    private static final int MAX_POOLED = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+
+    /**
+     * Free inflaters
+     */
+    private static final ConcurrentLinkedDeque<Inflater> POOL = new ConcurrentLinkedDeque<>();
+
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    @Override
+    public int decode(byte[] input, int inputOffset, int inputLength, byte[] output,
+            int outputOffset, int outputLength, ByteOrder byteOrder) {
+        Inflater inflater = acquire();
+        try {
+            inflater.setInput(input, inputOffset, inputLength);
+            int written = 0;
+            while (written < outputLength) {
+                int inflated = inflater.inflate(output, outputOffset + written, outputLength - written);
+                if (inflated == 0) {
+                    if (inflater.needsDictionary()) {
+                        throw new TiffException("Deflate preset dictionary is not supported");
+                    }
+                    if (inflater.finished() || inflater.needsInput()) {
+                        break;
+                    }
+                }
+                written += inflated;
+            }
+            if (written < outputLength) {
+                throw new TiffException("Deflate data is truncated. Expected: "
+                        + outputLength + ", Decoded: " + written);
+            }
+            return written;
+        } catch (DataFormatException e) {
+            throw new TiffException("Invalid Deflate data", e);
+        } finally {
+            release(inflater);
+        }
+    }
+
+    /**
+     * Acquire a pooled inflater
+     *
+     * @return inflater
+     */
+    private static Inflater acquire() {
+        Inflater inflater = POOL.pollFirst();
+        if (inflater == null) {
+            return new Inflater();
+        }
+        POOLED.decrementAndGet();
+        return inflater;
+    }
+
+    /**
+     * Return an inflater to the pool, ending it when the pool is full
+     *
+     * @param inflater
+     *            inflater
+     */
+    private static void release(Inflater inflater) {
+        if (POOLED.incrementAndGet() > MAX_POOLED) {
+            POOLED.decrementAndGet();
+            inflater.end();
+            return;
+        }
+        inflater.reset();
+        POOL.offerFirst(inflater);
+    }
+
+}
@@ -0,0 +1,350 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.FileDirectory;
+import com.papercut.tiff.FileDirectoryEntry;
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.TiffConstants;
+import com.papercut.tiff.expection.TiffException;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.awt.image.DataBufferByte;
+import java.awt.image.PixelInterleavedSampleModel;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * JPEG解码（TIFF技术说明2的新式JPEG），Compression为7，使用JDK内置的ImageIO JPEG解码器。
+ * 目录的JPEGTables只解析一次，解码时与每个tile的简略JPEG流拼接为一个只读视图流，不复制数据。
+ * ImageReader按线程复用。读取原始分量不做颜色转换，PhotometricInterpretation为YCbCr时
+ * 按YCbCrCoefficients转换为RGB；色度子采样由JPEG帧头的采样因子（与YCbCrSubSampling一致）在解码器中上采样
+ */
+public class JPEGCompression implements CompressionDecoder {
+
+    private static final int SCALE_BITS = 16;
+
+    private static final int HALF = 1 << (SCALE_BITS - 1);
+
+    /**
+     * Default YCbCr coefficients, CCIR Recommendation 601-1
+     */
+    private static final double DEFAULT_LUMA_RED = 0.299;
+    private static final double DEFAULT_LUMA_GREEN = 0.587;
+    private static final double DEFAULT_LUMA_BLUE = 0.114;
+
+    /**
+     * JPEG readers of each thread
+     */
+    private static final ThreadLocal<ImageReader> READERS = ThreadLocal.withInitial(() -> {
+        Iterator<ImageReader> readers = ImageIO.getImageReadersByFormatName("jpeg");
+        if (!readers.hasNext()) {
+            throw new TiffException("No ImageIO JPEG reader is available");
+        }
+        return readers.next();
+    });
+
+    /**
+     * JPEGTables without the trailing EOI marker, null when each block is a
+     * complete stream
+     */
+    private final byte[] tables;
+
+    private final int tablesLength;
+
+    /**
+     * Pixels per block row
+     */
+    private final int width;
+
+    /**
+     * Samples per pixel in a block
+     */
+    private final int samples;
+
+    /**
+     * YCbCr to RGB lookup tables, null when not converting
+     */
+    private final int[] crToRed;
+    private final int[] crToGreen;
+    private final int[] cbToGreen;
+    private final int[] cbToBlue;
+
+    /**
+     * Constructor
+     *
+     * @param jpegTables
+     *            JPEGTables tables-only stream, null if none
+     * @param width
+     *            pixels per block row
+     * @param samples
+     *            samples per pixel in a block
+     * @param ycbcrCoefficients
+     *            luma red, green and blue coefficients to convert YCbCr to
+     *            RGB, null to not convert
+     */
+    public JPEGCompression(byte[] jpegTables, int width, int samples, double[] ycbcrCoefficients) {
+        this.width = width;
+        this.samples = samples;
+
+        // Parse the tables stream once, dropping the EOI so blocks can follow
+        if (jpegTables != null && jpegTables.length >= 4) {
+            if ((jpegTables[0] & 0xFF) != 0xFF || (jpegTables[1] & 0xFF) != 0xD8) {
+                throw new TiffException("Invalid JPEGTables, missing SOI marker");
+            }
+            int length = jpegTables.length;
+            if ((jpegTables[length - 2] & 0xFF) == 0xFF && (jpegTables[length - 1] & 0xFF) == 0xD9) {
+                length -= 2;
+            }
+            this.tables = jpegTables;
+            this.tablesLength = length;
+        } else {
+            this.tables = null;
+            this.tablesLength = 0;
+        }
+
+        if (ycbcrCoefficients != null && samples == 3) {
+            double lumaRed = ycbcrCoefficients[0];
+            double lumaGreen = ycbcrCoefficients[1];
+            double lumaBlue = ycbcrCoefficients[2];
+            crToRed = new int[256];
+            crToGreen = new int[256];
+            cbToGreen = new int[256];
+            cbToBlue = new int[256];
+            double scale = 1 << SCALE_BITS;
+            for (int i = 0; i < 256; i++) {
+                int chroma = i - 128;
+                double red = (2 - 2 * lumaRed) * chroma;
+                double blue = (2 - 2 * lumaBlue) * chroma;
+                crToRed[i] = (int) Math.round(red);
+                cbToBlue[i] = (int) Math.round(blue);
+                crToGreen[i] = (int) Math.round(-lumaRed * red / lumaGreen * scale);
+                cbToGreen[i] = (int) Math.round(-lumaBlue * blue / lumaGreen * scale) + HALF;
+            }
+        } else {
+            crToRed = null;
+            crToGreen = null;
+            cbToGreen = null;
+            cbToBlue = null;
+        }
+    }
+
+    /**
+     * Create the decoder for a directory from its JPEGTables, tile width,
+     * samples and YCbCr photometric interpretation
+     *
+     * @param directory
+     *            file directory
+     * @return decoder
+     */
+    public static JPEGCompression forDirectory(FileDirectory directory) {
+        FileDirectoryEntry tablesEntry = directory.get(FieldTagType.JPEGTables);
+        byte[] tables = tablesEntry != null ? tablesEntry.getRawBytes() : null;
+        int samples = directory.getPlanarConfiguration() != null
+                && directory.getPlanarConfiguration() == TiffConstants.PLANAR_CONFIGURATION_PLANAR
+                ? 1 : directory.getSamplesPerPixel();
+        double[] coefficients = null;
+        Integer photometric = directory.getPhotometricInterpretation();
+        if (photometric != null && photometric == TiffConstants.PHOTOMETRIC_INTERPRETATION_YCBCR) {
+            coefficients = new double[]{DEFAULT_LUMA_RED, DEFAULT_LUMA_GREEN, DEFAULT_LUMA_BLUE};
+            FileDirectoryEntry coefficientsEntry = directory.get(FieldTagType.YCbCrCoefficients);
+            if (coefficientsEntry != null) {
+                long[] rationals = coefficientsEntry.getLongArray();
+                for (int i = 0; i < coefficients.length && 2 * i + 1 < rationals.length; i++) {
+                    if (rationals[2 * i + 1] != 0) {
+                        coefficients[i] = (double) rationals[2 * i] / rationals[2 * i + 1];
+                    }
+                }
+            }
+        }
+        return new JPEGCompression(tables, directory.getTileWidth().intValue(), samples, coefficients);
+    }
+
+    @Override
+    public int decode(byte[] input, int inputOffset, int inputLength, byte[] output,
+            int outputOffset, int outputLength, ByteOrder byteOrder) throws IOException {
+
+        // Follow the tables with the block stream after its SOI marker
+        ImageInputStream stream;
+        if (tables != null && inputLength >= 2 && (input[inputOffset] & 0xFF) == 0xFF
+                && (input[inputOffset + 1] & 0xFF) == 0xD8) {
+            stream = new SplicedInputStream(tables, 0, tablesLength,
+                    input, inputOffset + 2, inputLength - 2);
+        } else {
+            stream = new SplicedInputStream(input, inputOffset, inputLength, input, 0, 0);
+        }
+
+        Raster raster;
+        ImageReader reader = READERS.get();
+        try {
+            reader.setInput(stream, true, true);
+            raster = reader.readRaster(0, null);
+        } finally {
+            reader.setInput(null);
+            stream.close();
+        }
+        if (raster.getNumBands() != samples) {
+            throw new TiffException("JPEG components " + raster.getNumBands()
+                    + " do not match the samples per pixel " + samples);
+        }
+
+        int rowBytes = width * samples;
+        int rows = Math.min(raster.getHeight(), outputLength / rowBytes);
+        int copyWidth = Math.min(raster.getWidth(), width);
+        copyRows(raster, rows, copyWidth, output, outputOffset, rowBytes);
+        Arrays.fill(output, outputOffset + rows * rowBytes, outputOffset + outputLength, (byte) 0);
+
+        if (crToRed != null) {
+            toRgb(output, outputOffset, rows * rowBytes);
+        }
+        return outputLength;
+    }
+
+    /**
+     * Copy the raster rows into the output
+     */
+    private void copyRows(Raster raster, int rows, int copyWidth, byte[] output,
+            int outputOffset, int rowBytes) {
+        SampleModel sampleModel = raster.getSampleModel();
+        int copyBytes = copyWidth * samples;
+        if (raster.getDataBuffer() instanceof DataBufferByte
+                && sampleModel instanceof PixelInterleavedSampleModel
+                && ((PixelInterleavedSampleModel) sampleModel).getPixelStride() == samples
+                && isSequential(((PixelInterleavedSampleModel) sampleModel).getBandOffsets())) {
+            PixelInterleavedSampleModel interleaved = (PixelInterleavedSampleModel) sampleModel;
+            DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+            byte[] data = dataBuffer.getData();
+            int stride = interleaved.getScanlineStride();
+            int start = dataBuffer.getOffset()
+                    + (raster.getMinY() - raster.getSampleModelTranslateY()) * stride
+                    + (raster.getMinX() - raster.getSampleModelTranslateX()) * samples;
+            for (int y = 0; y < rows; y++) {
+                System.arraycopy(data, start + y * stride, output, outputOffset + y * rowBytes, copyBytes);
+            }
+        } else {
+            int[] pixels = new int[copyBytes];
+            for (int y = 0; y < rows; y++) {
+                raster.getPixels(raster.getMinX(), raster.getMinY() + y, copyWidth, 1, pixels);
+                int out = outputOffset + y * rowBytes;
+                for (int i = 0; i < copyBytes; i++) {
+                    output[out + i] = (byte) pixels[i];
+                }
+            }
+        }
+        if (copyBytes < rowBytes) {
+            for (int y = 0; y < rows; y++) {
+                int out = outputOffset + y * rowBytes;
+                Arrays.fill(output, out + copyBytes, out + rowBytes, (byte) 0);
+            }
+        }
+    }
+
+    private static boolean isSequential(int[] bandOffsets) {
+        for (int i = 0; i < bandOffsets.length; i++) {
+            if (bandOffsets[i] != i) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Convert interleaved YCbCr samples to RGB in place
+     */
+    private void toRgb(byte[] output, int offset, int length) {
+        for (int i = offset; i < offset + length; i += 3) {
+            int y = output[i] & 0xFF;
+            int cb = output[i + 1] & 0xFF;
+            int cr = output[i + 2] & 0xFF;
+            output[i] = clamp(y + crToRed[cr]);
+            output[i + 1] = clamp(y + ((cbToGreen[cb] + crToGreen[cr]) >> SCALE_BITS));
+            output[i + 2] = clamp(y + cbToBlue[cb]);
+        }
+    }
+
+    private static byte clamp(int value) {
+        return (byte) (value < 0 ? 0 : value > 255 ? 255 : value);
+    }
+
+    /**
+     * Read-only stream over two byte ranges, the JPEG tables followed by a
+     * block stream, without copying either
+     */
+    private static final class SplicedInputStream extends ImageInputStreamImpl {
+
+        private final byte[] first;
+
+        private final int firstOffset;
+
+        private final int firstLength;
+
+        private final byte[] second;
+
+        private final int secondOffset;
+
+        private final int secondLength;
+
+        private SplicedInputStream(byte[] first, int firstOffset, int firstLength,
+                byte[] second, int secondOffset, int secondLength) {
+            this.first = first;
+            this.firstOffset = firstOffset;
+            this.firstLength = firstLength;
+            this.second = second;
+            this.secondOffset = secondOffset;
+            this.secondLength = secondLength;
+        }
+
+        @Override
+        public int read() {
+            bitOffset = 0;
+            if (streamPos < firstLength) {
+                return first[firstOffset + (int) streamPos++] & 0xFF;
+            }
+            long position = streamPos - firstLength;
+            if (position < secondLength) {
+                streamPos++;
+                return second[secondOffset + (int) position] & 0xFF;
+            }
+            return -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            bitOffset = 0;
+            if (len == 0) {
+                return 0;
+            }
+            long total = (long) firstLength + secondLength;
+            if (streamPos >= total) {
+                return -1;
+            }
+            int read = 0;
+            if (streamPos < firstLength) {
+                int count = (int) Math.min(len, firstLength - streamPos);
+                System.arraycopy(first, firstOffset + (int) streamPos, b, off, count);
+                streamPos += count;
+                read += count;
+            }
+            if (read < len && streamPos < total) {
+                int position = (int) (streamPos - firstLength);
+                int count = Math.min(len - read, secondLength - position);
+                System.arraycopy(second, secondOffset + position, b, off + read, count);
+                streamPos += count;
+                read += count;
+            }
+            return read;
+        }
+
+        @Override
+        public long length() {
+            return (long) firstLength + secondLength;
+        }
+
+    }
+
+}
@@ -0,0 +1,169 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.expection.TiffException;
+
+import java.nio.ByteOrder;
+
+/**
+ * LZW解码，Compression为5。字符串表不保存每个编码的字节数组，
+ * 而是记录该字符串在已解码输出中的位置和长度（新字符串总是前一字符串加上紧随其后的一个字节，在输出中连续），
+ * 解码时直接从输出中复制。字符串表为每线程复用的扁平数组，清除码只需重置下一编码，解码过程不分配内存。
+ * 同时支持旧版libtiff写入的低位在前、无提前换码宽度的LZW数据
+ */
+public class LZWCompression implements CompressionDecoder {
+
+    /**
+     * Shared instance
+     */
+    public static final LZWCompression INSTANCE = new LZWCompression();
+
+    private static final int CLEAR_CODE = 256;
+
+    private static final int EOI_CODE = 257;
+
+    private static final int FIRST_CODE = 258;
+
+    private static final int MIN_BITS = 9;
+
+    private static final int MAX_BITS = 12;
+
+    private static final int TABLE_SIZE = 1 << MAX_BITS;
+
+    /**
+     * String tables of each thread
+     */
+    private static final ThreadLocal<Table> TABLES = ThreadLocal.withInitial(Table::new);
+
+    @Override
+    public int decode(byte[] input, int inputOffset, int inputLength, byte[] output,
+            int outputOffset, int outputLength, ByteOrder byteOrder) {
+        Table table = TABLES.get();
+        int[] offsets = table.offsets;
+        int[] lengths = table.lengths;
+
+        int in = inputOffset;
+        int inEnd = inputOffset + inputLength;
+        int out = outputOffset;
+        int outEnd = outputOffset + outputLength;
+
+        // Old libtiff data is written least significant bit first, without
+        // the early code width change
+        boolean compat = inputLength >= 2 && input[in] == 0 && (input[in + 1] & 1) != 0;
+        int earlyChange = compat ? 0 : 1;
+
+        long bitBuffer = 0;
+        int bitCount = 0;
+        int bits = MIN_BITS;
+        int mask = (1 << bits) - 1;
+        int next = FIRST_CODE;
+        int previous = -1;
+        int previousLength = 0;
+
+        while (out < outEnd) {
+
+            // Read the next code, refilling the bit buffer a byte at a time
+            // up to 7 bytes
+            if (bitCount < bits) {
+                while (bitCount <= 56 && in < inEnd) {
+                    if (compat) {
+                        bitBuffer |= (long) (input[in++] & 0xff) << bitCount;
+                    } else {
+                        bitBuffer = (bitBuffer << 8) | (input[in++] & 0xff);
+                    }
+                    bitCount += 8;
+                }
+                if (bitCount < bits) {
+                    break;
+                }
+            }
+            int code;
+            if (compat) {
+                code = (int) bitBuffer & mask;
+                bitBuffer >>>= bits;
+            } else {
+                code = (int) (bitBuffer >>> (bitCount - bits)) & mask;
+            }
+            bitCount -= bits;
+
+            if (code == CLEAR_CODE) {
+                bits = MIN_BITS;
+                mask = (1 << bits) - 1;
+                next = FIRST_CODE;
+                previous = -1;
+                continue;
+            }
+            if (code == EOI_CODE) {
+                break;
+            }
+
+            // Write the string of the code
+            int length;
+            if (code < CLEAR_CODE) {
+                length = 1;
+                output[out] = (byte) code;
+            } else if (previous < 0) {
+                throw new TiffException("Invalid LZW code after clear code: " + code);
+            } else if (code < next) {
+                length = lengths[code];
+                copy(output, offsets[code], out, Math.min(length, outEnd - out));
+            } else if (code == next) {
+                length = previousLength + 1;
+                int copied = Math.min(previousLength, outEnd - out);
+                copy(output, previous, out, copied);
+                if (copied < length && out + copied < outEnd) {
+                    output[out + copied] = output[previous];
+                }
+            } else {
+                throw new TiffException("Invalid LZW code: " + code + ", Next code: " + next);
+            }
+
+            // Add the previous string followed by the first byte of this one,
+            // which are contiguous in the output
+            if (previous >= 0 && next < TABLE_SIZE) {
+                offsets[next] = previous;
+                lengths[next] = previousLength + 1;
+                next++;
+                if (next + earlyChange > mask && bits < MAX_BITS) {
+                    bits++;
+                    mask = (1 << bits) - 1;
+                }
+            }
+
+            previous = out;
+            previousLength = length;
+            out = Math.min(out + length, outEnd);
+        }
+
+        int written = out - outputOffset;
+        if (written < outputLength) {
+            throw new TiffException("LZW data is truncated. Expected: "
+                    + outputLength + ", Decoded: " + written);
+        }
+        return written;
+    }
+
+    /**
+     * Copy a previously decoded string, short strings byte by byte
+     */
+    private static void copy(byte[] output, int from, int to, int length) {
+        if (length < 16) {
+            for (int i = 0; i < length; i++) {
+                output[to + i] = output[from + i];
+            }
+        } else {
+            System.arraycopy(output, from, output, to, length);
+        }
+    }
+
+    /**
+     * String table, the output offset and length of each code
+     */
+    private static final class Table {
+
+        private final int[] offsets = new int[TABLE_SIZE];
+
+        private final int[] lengths = new int[TABLE_SIZE];
+
+    }
+
+}
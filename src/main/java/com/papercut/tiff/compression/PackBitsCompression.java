@@ -0,0 +1,125 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.expection.TiffException;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * PackBits游程编码的解码和编码，Compression为32773。
+ * 字面量段整段复制，重复段整段填充，不逐字节处理
+ */
+public class PackBitsCompression implements CompressionDecoder, CompressionEncoder {
+
+    /**
+     * Shared instance
+     */
+    public static final PackBitsCompression INSTANCE = new PackBitsCompression();
+
+    /**
+     * Max bytes of a literal or repeat run
+     */
+    private static final int MAX_RUN = 128;
+
+    /**
+     * Min bytes of a repeat run worth encoding, shorter repeats are kept in
+     * the literal run
+     */
+    private static final int MIN_REPEAT = 3;
+
+    @Override
+    public int decode(byte[] input, int inputOffset, int inputLength, byte[] output,
+            int outputOffset, int outputLength, ByteOrder byteOrder) {
+        int in = inputOffset;
+        int inEnd = inputOffset + inputLength;
+        int out = outputOffset;
+        int outEnd = outputOffset + outputLength;
+        while (in < inEnd && out < outEnd) {
+            int header = input[in++];
+            if (header >= 0) {
+                // Literal run of header + 1 bytes
+                int length = Math.min(header + 1, Math.min(inEnd - in, outEnd - out));
+                System.arraycopy(input, in, output, out, length);
+                in += length;
+                out += length;
+            } else if (header != -128) {
+                // Repeat the next byte 1 - header times
+                if (in >= inEnd) {
+                    break;
+                }
+                int length = Math.min(1 - header, outEnd - out);
+                Arrays.fill(output, out, out + length, input[in++]);
+                out += length;
+            }
+        }
+        int written = out - outputOffset;
+        if (written < outputLength) {
+            throw new TiffException("PackBits data is truncated. Expected: "
+                    + outputLength + ", Decoded: " + written);
+        }
+        return written;
+    }
+
+    @Override
+    public boolean rowEncoding() {
+        return true;
+    }
+
+    @Override
+    public int maxEncodedLength(int inputLength) {
+        return inputLength + (inputLength + MAX_RUN - 1) / MAX_RUN;
+    }
+
+    @Override
+    public int encode(byte[] input, int inputOffset, int inputLength, byte[] output,
+            int outputOffset, ByteOrder byteOrder) {
+        int in = inputOffset;
+        int inEnd = inputOffset + inputLength;
+        int out = outputOffset;
+        int literal = in;
+        while (in < inEnd) {
+
+            // Measure the repeat run at the position
+            byte value = input[in];
+            int repeatEnd = in + 1;
+            int repeatLimit = Math.min(inEnd, in + MAX_RUN);
+            while (repeatEnd < repeatLimit && input[repeatEnd] == value) {
+                repeatEnd++;
+            }
+            int repeat = repeatEnd - in;
+
+            if (repeat >= MIN_REPEAT) {
+                out = writeLiteral(input, literal, in, output, out);
+                output[out++] = (byte) (1 - repeat);
+                output[out++] = value;
+                in = repeatEnd;
+                literal = in;
+            } else {
+                in = repeatEnd;
+                if (in - literal >= MAX_RUN) {
+                    out = writeLiteral(input, literal, literal + MAX_RUN, output, out);
+                    literal += MAX_RUN;
+                }
+            }
+        }
+        out = writeLiteral(input, literal, inEnd, output, out);
+        return out - outputOffset;
+    }
+
+    /**
+     * Write literal runs of the bytes from start to end
+     *
+     * @return output position after the runs
+     */
+    private static int writeLiteral(byte[] input, int start, int end, byte[] output, int out) {
+        while (start < end) {
+            int length = Math.min(end - start, MAX_RUN);
+            output[out++] = (byte) (length - 1);
+            System.arraycopy(input, start, output, out, length);
+            out += length;
+            start += length;
+        }
+        return out;
+    }
+
+}
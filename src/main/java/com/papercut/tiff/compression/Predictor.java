@@ -0,0 +1,198 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.constant.TiffConstants;
+import com.papercut.tiff.expection.TiffException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * 解压后的预测器还原，直接在已解码块上进行。
+ * 水平差分（Predictor 2）按8/16/32/64位分别处理，每行内样本按像素步长累加，
+ * 平面存储（每块一个样本）使用单一累加值；浮点预测器（Predictor 3）先按字节累加，
+ * 再把按字节重要性分组存放的各字节交错还原为文件字节序的浮点数
+ */
+public final class Predictor {
+
+    private Predictor() {
+    }
+
+    /**
+     * Undo the predictor of a decoded block in place
+     *
+     * @param predictor
+     *            predictor
+     * @param block
+     *            decoded block
+     * @param offset
+     *            offset of the block
+     * @param length
+     *            block bytes
+     * @param width
+     *            pixels per block row
+     * @param samples
+     *            samples per pixel in the block, 1 when planar
+     * @param bitsPerSample
+     *            bits per sample
+     * @param byteOrder
+     *            file byte order
+     */
+    public static void decode(int predictor, byte[] block, int offset, int length, int width,
+            int samples, int bitsPerSample, ByteOrder byteOrder) {
+        switch (predictor) {
+        case TiffConstants.PREDICTOR_NO:
+            break;
+        case TiffConstants.PREDICTOR_HORIZONTAL:
+            decodeHorizontal(block, offset, length, width, samples, bitsPerSample, byteOrder);
+            break;
+        case TiffConstants.PREDICTOR_FLOATINGPOINT:
+            decodeFloatingPoint(block, offset, length, width, samples, bitsPerSample, byteOrder);
+            break;
+        default:
+            throw new TiffException("Unsupported predictor: " + predictor);
+        }
+    }
+
+    /**
+     * Undo horizontal differencing
+     */
+    private static void decodeHorizontal(byte[] block, int offset, int length, int width,
+            int samples, int bitsPerSample, ByteOrder byteOrder) {
+        int rowValues = width * samples;
+        switch (bitsPerSample) {
+        case 8:
+            decodeHorizontal8(block, offset, length / rowValues, rowValues, samples);
+            break;
+        case 16:
+            decodeHorizontal16(view(block, offset, length, byteOrder).asShortBuffer(),
+                    length / (rowValues * 2), rowValues, samples);
+            break;
+        case 32:
+            decodeHorizontal32(view(block, offset, length, byteOrder).asIntBuffer(),
+                    length / (rowValues * 4), rowValues, samples);
+            break;
+        case 64:
+            decodeHorizontal64(view(block, offset, length, byteOrder).asLongBuffer(),
+                    length / (rowValues * 8), rowValues, samples);
+            break;
+        default:
+            throw new TiffException("Horizontal predictor is not supported for "
+                    + bitsPerSample + " bits per sample");
+        }
+    }
+
+    private static void decodeHorizontal8(byte[] block, int offset, int rows, int rowValues, int samples) {
+        for (int row = 0; row < rows; row++) {
+            int start = offset + row * rowValues;
+            int end = start + rowValues;
+            if (samples == 1) {
+                byte sum = block[start];
+                for (int i = start + 1; i < end; i++) {
+                    sum += block[i];
+                    block[i] = sum;
+                }
+            } else {
+                for (int i = start + samples; i < end; i++) {
+                    block[i] += block[i - samples];
+                }
+            }
+        }
+    }
+
+    private static void decodeHorizontal16(ShortBuffer values, int rows, int rowValues, int samples) {
+        for (int row = 0; row < rows; row++) {
+            int start = row * rowValues;
+            int end = start + rowValues;
+            if (samples == 1) {
+                short sum = values.get(start);
+                for (int i = start + 1; i < end; i++) {
+                    sum += values.get(i);
+                    values.put(i, sum);
+                }
+            } else {
+                for (int i = start + samples; i < end; i++) {
+                    values.put(i, (short) (values.get(i) + values.get(i - samples)));
+                }
+            }
+        }
+    }
+
+    private static void decodeHorizontal32(IntBuffer values, int rows, int rowValues, int samples) {
+        for (int row = 0; row < rows; row++) {
+            int start = row * rowValues;
+            int end = start + rowValues;
+            if (samples == 1) {
+                int sum = values.get(start);
+                for (int i = start + 1; i < end; i++) {
+                    sum += values.get(i);
+                    values.put(i, sum);
+                }
+            } else {
+                for (int i = start + samples; i < end; i++) {
+                    values.put(i, values.get(i) + values.get(i - samples));
+                }
+            }
+        }
+    }
+
+    private static void decodeHorizontal64(LongBuffer values, int rows, int rowValues, int samples) {
+        for (int row = 0; row < rows; row++) {
+            int start = row * rowValues;
+            int end = start + rowValues;
+            if (samples == 1) {
+                long sum = values.get(start);
+                for (int i = start + 1; i < end; i++) {
+                    sum += values.get(i);
+                    values.put(i, sum);
+                }
+            } else {
+                for (int i = start + samples; i < end; i++) {
+                    values.put(i, values.get(i) + values.get(i - samples));
+                }
+            }
+        }
+    }
+
+    /**
+     * Undo the floating point predictor: byte differencing of each row
+     * followed by interleaving the bytes stored by significance, most
+     * significant first
+     */
+    private static void decodeFloatingPoint(byte[] block, int offset, int length, int width,
+            int samples, int bitsPerSample, ByteOrder byteOrder) {
+        if (bitsPerSample != 16 && bitsPerSample != 32 && bitsPerSample != 64) {
+            throw new TiffException("Floating point predictor is not supported for "
+                    + bitsPerSample + " bits per sample");
+        }
+        int bytesPerSample = bitsPerSample / 8;
+        int rowValues = width * samples;
+        int rowBytes = rowValues * bytesPerSample;
+        int rows = length / rowBytes;
+        boolean bigEndian = byteOrder == ByteOrder.BIG_ENDIAN;
+        byte[] row = new byte[rowBytes];
+        for (int r = 0; r < rows; r++) {
+            int start = offset + r * rowBytes;
+            decodeHorizontal8(block, start, 1, rowBytes, samples);
+            System.arraycopy(block, start, row, 0, rowBytes);
+            for (int significance = 0; significance < bytesPerSample; significance++) {
+                int plane = significance * rowValues;
+                int position = start + (bigEndian ? significance : bytesPerSample - 1 - significance);
+                for (int value = 0; value < rowValues; value++) {
+                    block[position] = row[plane + value];
+                    position += bytesPerSample;
+                }
+            }
+        }
+    }
+
+    /**
+     * Get a byte order view of the block
+     */
+    private static ByteBuffer view(byte[] block, int offset, int length, ByteOrder byteOrder) {
+        return ByteBuffer.wrap(block, offset, length).slice().order(byteOrder);
+    }
+
+}
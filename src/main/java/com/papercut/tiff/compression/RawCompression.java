@@ -0,0 +1,23 @@
+package com.papercut.tiff.compression;
+
+import java.nio.ByteOrder;
+
+/**
+ * 未压缩数据，直接复制
+ */
+public class RawCompression implements CompressionDecoder {
+
+    /**
+     * Shared instance
+     */
+    public static final RawCompression INSTANCE = new RawCompression();
+
+    @Override
+    public int decode(byte[] input, int inputOffset, int inputLength, byte[] output,
+            int outputOffset, int outputLength, ByteOrder byteOrder) {
+        int length = Math.min(inputLength, outputLength);
+        System.arraycopy(input, inputOffset, output, outputOffset, length);
+        return length;
+    }
+
+}
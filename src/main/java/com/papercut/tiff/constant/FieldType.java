@@ -13,66 +13,102 @@ public enum FieldType {
 	/**
 	 * 8-bit unsigned integer
 	 */
-	BYTE(1),
+	BYTE(1, 1),
 
 	/**
 	 * 8-bit byte that contains a 7-bit ASCII code; the last byte must be NUL
 	 * (binary zero)
 	 */
-	ASCII(1),
+	ASCII(2, 1),
 
 	/**
 	 * 16-bit (2-byte) unsigned integer
 	 */
-	SHORT(2),
+	SHORT(3, 2),
 
 	/**
 	 * 32-bit (4-byte) unsigned integer
 	 */
-	LONG(4),
+	LONG(4, 4),
 
 	/**
 	 * Two LONGs: the first represents the numerator of a fraction; the second,
 	 * the denominator
 	 */
-	RATIONAL(8),
+	RATIONAL(5, 8),
 
 	/**
 	 * An 8-bit signed (twos-complement) integer
 	 */
-	SBYTE(1),
+	SBYTE(6, 1),
 
 	/**
 	 * An 8-bit byte that may contain anything, depending on the definition of
 	 * the field
 	 */
-	UNDEFINED(1),
+	UNDEFINED(7, 1),
 
 	/**
 	 * A 16-bit (2-byte) signed (twos-complement) integer
 	 */
-	SSHORT(2),
+	SSHORT(8, 2),
 
 	/**
 	 * A 32-bit (4-byte) signed (twos-complement) integer
 	 */
-	SLONG(4),
+	SLONG(9, 4),
 
 	/**
 	 * Two SLONG’s: the first represents the numerator of a fraction, the second
 	 * the denominator
 	 */
-	SRATIONAL(8),
+	SRATIONAL(10, 8),
 
 	/**
 	 * Single precision (4-byte) IEEE format
 	 */
-	FLOAT(4),
+	FLOAT(11, 4),
 
 	/**
 	 * Double precision (8-byte) IEEE format
 	 */
-	DOUBLE(8);
+	DOUBLE(12, 8),
+
+	/**
+	 * 32-bit (4-byte) unsigned integer offset of a sub IFD
+	 */
+	IFD(13, 4),
+
+	/**
+	 * BigTIFF 64-bit (8-byte) unsigned integer
+	 */
+	LONG8(16, 8),
+
+	/**
+	 * BigTIFF 64-bit (8-byte) signed (twos-complement) integer
+	 */
+	SLONG8(17, 8),
+
+	/**
+	 * BigTIFF 64-bit (8-byte) unsigned integer offset of a sub IFD
+	 */
+	IFD8(18, 8);
+
+	/**
+	 * Field types by field type value
+	 */
+	private static final FieldType[] valueMapping = new FieldType[19];
+
+	static {
+		for (FieldType fieldType : values()) {
+			valueMapping[fieldType.value] = fieldType;
+		}
+	}
+
+	/**
+	 * Field type value
+	 */
+	private final int value;
 
 	/**
 	 * Number of bytes per field value
@@ -82,10 +118,13 @@ public enum FieldType {
 	/**
 	 * Constructor
 	 * 
+	 * @param value
+	 *            field type value
 	 * @param bytes
 	 *            bytes per value
 	 */
-	private FieldType(int bytes) {
+	private FieldType(int value, int bytes) {
+		this.value = value;
 		this.bytes = bytes;
 	}
 
@@ -95,7 +134,7 @@ public enum FieldType {
 	 * @return field type value
 	 */
 	public int getValue() {
-		return ordinal() + 1;
+		return value;
 	}
 
 	/**
@@ -122,10 +161,12 @@ public enum FieldType {
 	 * 
 	 * @param fieldType
 	 *            field type number
-	 * @return field type
+	 * @return field type, null if not a known field type
 	 */
 	public static FieldType getFieldType(int fieldType) {
-		return FieldType.values()[fieldType - 1];
+		return fieldType > 0 && fieldType < valueMapping.length
+				? valueMapping[fieldType]
+				: null;
 	}
 
 	/**
@@ -154,6 +195,9 @@ public enum FieldType {
 			case 32:
 				fieldType = FieldType.LONG;
 				break;
+			case 64:
+				fieldType = FieldType.LONG8;
+				break;
 			}
 			break;
 		case TiffConstants.SAMPLE_FORMAT_SIGNED_INT:
@@ -167,6 +211,9 @@ public enum FieldType {
 			case 32:
 				fieldType = FieldType.SLONG;
 				break;
+			case 64:
+				fieldType = FieldType.SLONG8;
+				break;
 			}
 			break;
 		case TiffConstants.SAMPLE_FORMAT_FLOAT:
@@ -206,11 +253,13 @@ public enum FieldType {
 		case BYTE:
 		case SHORT:
 		case LONG:
+		case LONG8:
 			sampleFormat = TiffConstants.SAMPLE_FORMAT_UNSIGNED_INT;
 			break;
 		case SBYTE:
 		case SSHORT:
 		case SLONG:
+		case SLONG8:
 			sampleFormat = TiffConstants.SAMPLE_FORMAT_SIGNED_INT;
 			break;
 		case FLOAT:
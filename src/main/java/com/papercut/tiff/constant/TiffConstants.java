@@ -16,11 +16,26 @@ public class TiffConstants {
      */
     public static final int FILE_IDENTIFIER = 42;
 
+    /**
+     * BigTIFF File Identifier
+     */
+    public static final int FILE_IDENTIFIER_BIG_TIFF = 43;
+
     /**
      * TIFF header bytes
      */
     public static final int HEADER_BYTES = 8;
 
+    /**
+     * BigTIFF header bytes
+     */
+    public static final int BIG_TIFF_HEADER_BYTES = 16;
+
+    /**
+     * BigTIFF byte size of offsets
+     */
+    public static final int BIG_TIFF_OFFSET_BYTES = 8;
+
     /**
      * Image File Directory header / number of entries bytes
      */
@@ -36,6 +51,21 @@ public class TiffConstants {
      */
     public static final int IFD_ENTRY_BYTES = 12;
 
+    /**
+     * BigTIFF Image File Directory header / number of entries bytes
+     */
+    public static final int BIG_TIFF_IFD_HEADER_BYTES = 8;
+
+    /**
+     * BigTIFF Image File Directory offset to the next IFD bytes
+     */
+    public static final int BIG_TIFF_IFD_OFFSET_BYTES = 8;
+
+    /**
+     * BigTIFF Image File Directory entry bytes
+     */
+    public static final int BIG_TIFF_IFD_ENTRY_BYTES = 20;
+
     /**
      * Default max bytes per strip when writing strips
      */
@@ -86,6 +116,8 @@ public class TiffConstants {
     public static final int PHOTOMETRIC_INTERPRETATION_RGB = 2;
     public static final int PHOTOMETRIC_INTERPRETATION_PALETTE = 3;
     public static final int PHOTOMETRIC_INTERPRETATION_TRANSPARENCY = 4;
+    public static final int PHOTOMETRIC_INTERPRETATION_SEPARATED = 5;
+    public static final int PHOTOMETRIC_INTERPRETATION_YCBCR = 6;
 
     // Planar Configuration constants
     public static final int PLANAR_CONFIGURATION_CHUNKY = 1;
@@ -107,6 +139,19 @@ public class TiffConstants {
     public static final int SUBFILE_TYPE_REDUCED = 2;
     public static final int SAMPLE_FORMAT_SINGLE_PAGE_MULTI_PAGE = 3;
 
+    // New Subfile Type bit flags
+    public static final int NEW_SUBFILE_TYPE_REDUCED_IMAGE = 1;
+    public static final int NEW_SUBFILE_TYPE_SINGLE_PAGE = 2;
+    public static final int NEW_SUBFILE_TYPE_TRANSPARENCY_MASK = 4;
+
+    // T4 Options constants
+    public static final int T4_OPTIONS_2D = 1;
+    public static final int T4_OPTIONS_UNCOMPRESSED = 2;
+    public static final int T4_OPTIONS_FILL_BITS = 4;
+
+    // T6 Options constants
+    public static final int T6_OPTIONS_UNCOMPRESSED = 2;
+
     // Threshholding constants
     public static final int THRESHHOLDING_NO = 1;
     public static final int THRESHHOLDING_ORDERED = 2;
@@ -0,0 +1,179 @@
+package com.papercut.tiff.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ByteBuffer缓冲池，按2的幂大小分级复用缓冲区，避免每次读取tile/strip时分配临时数组。
+ * 通过{@link #acquire(int)}获取的缓冲区使用完毕后需调用{@link #release(ByteBuffer)}归还
+ */
+public class ByteBufferPool {
+
+    /**
+     * Default max bytes retained by the pool while buffers are not in use
+     */
+    public static final long DEFAULT_MAX_RETAINED_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * Smallest size class, as a power of two
+     */
+    private static final int MIN_SIZE_CLASS = 12;
+
+    /**
+     * Largest pooled size class, as a power of two. Larger buffers are
+     * allocated exactly and not retained
+     */
+    private static final int MAX_SIZE_CLASS = 30;
+
+    /**
+     * Shared pool of direct buffers
+     */
+    private static final ByteBufferPool DIRECT = new ByteBufferPool(true, DEFAULT_MAX_RETAINED_BYTES);
+
+    /**
+     * True to allocate direct buffers
+     */
+    private final boolean direct;
+
+    /**
+     * Max bytes retained while not in use
+     */
+    private final long maxRetainedBytes;
+
+    /**
+     * Free buffers by size class
+     */
+    private final ConcurrentLinkedDeque<ByteBuffer>[] free;
+
+    private final AtomicLong retainedBytes = new AtomicLong();
+
+    private final AtomicLong allocations = new AtomicLong();
+
+    private final AtomicLong reuses = new AtomicLong();
+
+    /**
+     * Get the shared direct buffer pool
+     *
+     * @return direct buffer pool
+     */
+    public static ByteBufferPool direct() {
+        return DIRECT;
+    }
+
+    /**
+     * Constructor
+     *
+     * @param direct
+     *            true to allocate direct buffers
+     * @param maxRetainedBytes
+     *            max bytes retained while not in use
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ByteBufferPool(boolean direct, long maxRetainedBytes) {
+        this.direct = direct;
+        this.maxRetainedBytes = maxRetainedBytes;
+        this.free = new ConcurrentLinkedDeque[MAX_SIZE_CLASS + 1];
+        for (int i = MIN_SIZE_CLASS; i <= MAX_SIZE_CLASS; i++) {
+            free[i] = new ConcurrentLinkedDeque<>();
+        }
+    }
+
+    /**
+     * Acquire a buffer, position 0, limit the requested size and big endian
+     * byte order
+     *
+     * @param size
+     *            size in bytes
+     * @return buffer
+     */
+    public ByteBuffer acquire(int size) {
+        int sizeClass = sizeClass(size);
+        ByteBuffer buffer = null;
+        if (sizeClass <= MAX_SIZE_CLASS) {
+            buffer = free[sizeClass].pollFirst();
+        }
+        if (buffer != null) {
+            retainedBytes.addAndGet(-buffer.capacity());
+            reuses.incrementAndGet();
+            buffer.clear();
+        } else {
+            int capacity = sizeClass <= MAX_SIZE_CLASS ? 1 << sizeClass : size;
+            buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+            allocations.incrementAndGet();
+        }
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        buffer.limit(size);
+        return buffer;
+    }
+
+    /**
+     * Release a buffer acquired from this pool. The buffer must not be used
+     * after it is released
+     *
+     * @param buffer
+     *            buffer
+     */
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (buffer.isDirect() != direct || Integer.bitCount(capacity) != 1) {
+            return;
+        }
+        int sizeClass = Integer.numberOfTrailingZeros(capacity);
+        if (sizeClass < MIN_SIZE_CLASS || sizeClass > MAX_SIZE_CLASS) {
+            return;
+        }
+        if (retainedBytes.addAndGet(capacity) > maxRetainedBytes) {
+            retainedBytes.addAndGet(-capacity);
+            return;
+        }
+        free[sizeClass].offerFirst(buffer);
+    }
+
+    /**
+     * Get the size class of a buffer size
+     *
+     * @param size
+     *            size in bytes
+     * @return size class, power of two
+     */
+    private static int sizeClass(int size) {
+        if (size <= 1 << MIN_SIZE_CLASS) {
+            return MIN_SIZE_CLASS;
+        }
+        return 32 - Integer.numberOfLeadingZeros(size - 1);
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Get the bytes currently retained by free buffers
+     *
+     * @return retained bytes
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Get the number of buffers allocated
+     *
+     * @return allocation count
+     */
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    /**
+     * Get the number of acquires served by a released buffer
+     *
+     * @return reuse count
+     */
+    public long getReuses() {
+        return reuses.get();
+    }
+
+}
@@ -0,0 +1,100 @@
+package com.papercut.tiff.io;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 内存中的数据来源，用于已经在内存中的TIFF（如上传的打印任务），无需写入临时文件
+ */
+public class ByteBufferSource implements ByteSource {
+
+    /**
+     * Big endian view of the bytes
+     */
+    private final ByteBuffer bigEndian;
+
+    /**
+     * Little endian view of the bytes
+     */
+    private final ByteBuffer littleEndian;
+
+    /**
+     * Constructor
+     *
+     * @param bytes
+     *            bytes, not copied
+     */
+    public ByteBufferSource(byte[] bytes) {
+        this(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Constructor, the remaining bytes of the buffer are the source
+     *
+     * @param buffer
+     *            buffer, not copied
+     */
+    public ByteBufferSource(ByteBuffer buffer) {
+        this.bigEndian = buffer.slice().order(ByteOrder.BIG_ENDIAN);
+        this.littleEndian = bigEndian.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    @Override
+    public long length() {
+        return bigEndian.limit();
+    }
+
+    @Override
+    public void read(long offset, byte[] bytes, int off, int num) {
+        ByteBuffer buffer = bigEndian.duplicate();
+        buffer.position((int) offset);
+        buffer.get(bytes, off, num);
+    }
+
+    @Override
+    public void read(long offset, ByteBuffer buffer) {
+        ByteBuffer source = bigEndian.duplicate();
+        source.position((int) offset);
+        source.limit((int) offset + buffer.remaining());
+        buffer.put(source);
+    }
+
+    @Override
+    public byte getByte(long offset) {
+        return bigEndian.get((int) offset);
+    }
+
+    @Override
+    public short getShort(long offset, ByteOrder byteOrder) {
+        return buffer(byteOrder).getShort((int) offset);
+    }
+
+    @Override
+    public int getInt(long offset, ByteOrder byteOrder) {
+        return buffer(byteOrder).getInt((int) offset);
+    }
+
+    @Override
+    public long getLong(long offset, ByteOrder byteOrder) {
+        return buffer(byteOrder).getLong((int) offset);
+    }
+
+    @Override
+    public float getFloat(long offset, ByteOrder byteOrder) {
+        return buffer(byteOrder).getFloat((int) offset);
+    }
+
+    @Override
+    public double getDouble(long offset, ByteOrder byteOrder) {
+        return buffer(byteOrder).getDouble((int) offset);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    private ByteBuffer buffer(ByteOrder byteOrder) {
+        return byteOrder == ByteOrder.LITTLE_ENDIAN ? littleEndian : bigEndian;
+    }
+
+}
@@ -0,0 +1,141 @@
+package com.papercut.tiff.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * TIFF数据来源，所有读取均为按偏移量的位置读取，不保存读取位置，
+ * 实现类需保证并发读取安全。
+ * 默认的基本类型读取方法通过{@link #read(long, byte[], int, int)}实现，
+ * 数据已在内存中的实现（内存映射、byte[]）应覆盖为直接读取
+ */
+public interface ByteSource extends Closeable {
+
+    /**
+     * Get the number of bytes in the source
+     *
+     * @return length in bytes
+     */
+    long length();
+
+    /**
+     * Read bytes, filling the full requested range
+     *
+     * @param offset
+     *            byte offset
+     * @param bytes
+     *            destination bytes
+     * @param off
+     *            destination offset
+     * @param num
+     *            number of bytes
+     */
+    void read(long offset, byte[] bytes, int off, int num) throws IOException;
+
+    /**
+     * Read bytes into the remaining space of the buffer
+     *
+     * @param offset
+     *            byte offset
+     * @param buffer
+     *            destination buffer, position is advanced by the bytes read
+     */
+    default void read(long offset, ByteBuffer buffer) throws IOException {
+        int num = buffer.remaining();
+        if (buffer.hasArray()) {
+            read(offset, buffer.array(), buffer.arrayOffset() + buffer.position(), num);
+            buffer.position(buffer.position() + num);
+        } else {
+            byte[] bytes = new byte[num];
+            read(offset, bytes, 0, num);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Read a byte
+     *
+     * @param offset
+     *            byte offset
+     * @return byte
+     */
+    default byte getByte(long offset) throws IOException {
+        byte[] bytes = new byte[1];
+        read(offset, bytes, 0, 1);
+        return bytes[0];
+    }
+
+    /**
+     * Read a short
+     *
+     * @param offset
+     *            byte offset
+     * @param byteOrder
+     *            byte order
+     * @return short
+     */
+    default short getShort(long offset, ByteOrder byteOrder) throws IOException {
+        byte[] bytes = new byte[2];
+        read(offset, bytes, 0, 2);
+        return ByteBuffer.wrap(bytes).order(byteOrder).getShort();
+    }
+
+    /**
+     * Read an int
+     *
+     * @param offset
+     *            byte offset
+     * @param byteOrder
+     *            byte order
+     * @return int
+     */
+    default int getInt(long offset, ByteOrder byteOrder) throws IOException {
+        byte[] bytes = new byte[4];
+        read(offset, bytes, 0, 4);
+        return ByteBuffer.wrap(bytes).order(byteOrder).getInt();
+    }
+
+    /**
+     * Read a long
+     *
+     * @param offset
+     *            byte offset
+     * @param byteOrder
+     *            byte order
+     * @return long
+     */
+    default long getLong(long offset, ByteOrder byteOrder) throws IOException {
+        byte[] bytes = new byte[8];
+        read(offset, bytes, 0, 8);
+        return ByteBuffer.wrap(bytes).order(byteOrder).getLong();
+    }
+
+    /**
+     * Read a float
+     *
+     * @param offset
+     *            byte offset
+     * @param byteOrder
+     *            byte order
+     * @return float
+     */
+    default float getFloat(long offset, ByteOrder byteOrder) throws IOException {
+        return Float.intBitsToFloat(getInt(offset, byteOrder));
+    }
+
+    /**
+     * Read a double
+     *
+     * @param offset
+     *            byte offset
+     * @param byteOrder
+     *            byte order
+     * @return double
+     */
+    default double getDouble(long offset, ByteOrder byteOrder) throws IOException {
+        return Double.longBitsToDouble(getLong(offset, byteOrder));
+    }
+
+}
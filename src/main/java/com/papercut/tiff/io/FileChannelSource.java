@@ -0,0 +1,77 @@
+package com.papercut.tiff.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 基于FileChannel位置读取（pread）的数据来源，不改变通道位置，可并发读取。
+ * 注意：线程在通道读取中被中断会导致通道关闭
+ */
+public class FileChannelSource implements ByteSource {
+
+    private final RandomAccessFile randomAccessFile;
+
+    private final FileChannel channel;
+
+    private final long length;
+
+    /**
+     * Constructor
+     *
+     * @param file
+     *            file
+     * @param mode
+     *            r: 只读, rw: 读写
+     */
+    public FileChannelSource(File file, String mode) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file, mode);
+        this.channel = randomAccessFile.getChannel();
+        this.length = randomAccessFile.length();
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void read(long offset, byte[] bytes, int off, int num) throws IOException {
+        readFully(channel, offset, ByteBuffer.wrap(bytes, off, num));
+    }
+
+    @Override
+    public void read(long offset, ByteBuffer buffer) throws IOException {
+        readFully(channel, offset, buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    /**
+     * Positional read filling the remaining bytes of the buffer
+     *
+     * @param channel
+     *            file channel
+     * @param offset
+     *            byte offset
+     * @param buffer
+     *            destination buffer
+     */
+    static void readFully(FileChannel channel, long offset, ByteBuffer buffer) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0) {
+                throw new EOFException("Unexpected end of file at byte offset " + position);
+            }
+            position += read;
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.papercut.tiff.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * 内存映射的数据来源，文件映射为多个首尾相接的段以支持超过2GB的文件，
+ * 基本类型读取为映射内存上的绝对位置读取
+ */
+public class MappedFileSource implements ByteSource {
+
+    /**
+     * 每个映射段的大小
+     */
+    public static final long SEGMENT_SIZE = 1L << 30;
+
+    /**
+     * 相邻映射段重叠的字节数，保证单个基本类型值不会跨越两个段
+     */
+    private static final int SEGMENT_OVERLAP = 8;
+
+    private final RandomAccessFile randomAccessFile;
+
+    private final long length;
+
+    /**
+     * Mapped segments in big endian order
+     */
+    private final MappedByteBuffer[] segments;
+
+    /**
+     * Little endian views of the mapped segments
+     */
+    private final ByteBuffer[] littleEndianSegments;
+
+    /**
+     * Constructor
+     *
+     * @param file
+     *            file
+     * @param mode
+     *            r: 只读, rw: 读写
+     */
+    public MappedFileSource(File file, String mode) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file, mode);
+        this.length = randomAccessFile.length();
+        FileChannel.MapMode mapMode = "r".equals(mode) ? FileChannel.MapMode.READ_ONLY
+                : FileChannel.MapMode.READ_WRITE;
+        FileChannel channel = randomAccessFile.getChannel();
+        int count = (int) ((length + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        segments = new MappedByteBuffer[count];
+        littleEndianSegments = new ByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            long position = i * SEGMENT_SIZE;
+            long size = Math.min(SEGMENT_SIZE + SEGMENT_OVERLAP, length - position);
+            segments[i] = channel.map(mapMode, position, size);
+            littleEndianSegments[i] = segments[i].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void read(long offset, byte[] bytes, int off, int num) throws IOException {
+        int read = 0;
+        while (read < num) {
+            long position = offset + read;
+            ByteBuffer segment = segments[segment(position)].duplicate();
+            int index = segmentIndex(position);
+            int count = Math.min(num - read, segment.limit() - index);
+            segment.position(index);
+            segment.get(bytes, off + read, count);
+            read += count;
+        }
+    }
+
+    @Override
+    public void read(long offset, ByteBuffer buffer) {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            ByteBuffer segment = segments[segment(position)].duplicate();
+            int index = segmentIndex(position);
+            int count = Math.min(buffer.remaining(), segment.limit() - index);
+            segment.position(index);
+            segment.limit(index + count);
+            buffer.put(segment);
+            position += count;
+        }
+    }
+
+    @Override
+    public byte getByte(long offset) {
+        return segments[segment(offset)].get(segmentIndex(offset));
+    }
+
+    @Override
+    public short getShort(long offset, ByteOrder byteOrder) {
+        return segment(offset, byteOrder).getShort(segmentIndex(offset));
+    }
+
+    @Override
+    public int getInt(long offset, ByteOrder byteOrder) {
+        return segment(offset, byteOrder).getInt(segmentIndex(offset));
+    }
+
+    @Override
+    public long getLong(long offset, ByteOrder byteOrder) {
+        return segment(offset, byteOrder).getLong(segmentIndex(offset));
+    }
+
+    @Override
+    public float getFloat(long offset, ByteOrder byteOrder) {
+        return segment(offset, byteOrder).getFloat(segmentIndex(offset));
+    }
+
+    @Override
+    public double getDouble(long offset, ByteOrder byteOrder) {
+        return segment(offset, byteOrder).getDouble(segmentIndex(offset));
+    }
+
+    /**
+     * Close the file, mapped segments are released when garbage collected
+     */
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+    /**
+     * Get the segment containing the byte offset in the byte order
+     *
+     * @param offset
+     *            byte offset
+     * @param byteOrder
+     *            byte order
+     * @return segment
+     */
+    private ByteBuffer segment(long offset, ByteOrder byteOrder) {
+        int segment = segment(offset);
+        return byteOrder == ByteOrder.LITTLE_ENDIAN ? littleEndianSegments[segment]
+                : segments[segment];
+    }
+
+    private static int segment(long offset) {
+        return (int) (offset / SEGMENT_SIZE);
+    }
+
+    private static int segmentIndex(long offset) {
+        return (int) (offset % SEGMENT_SIZE);
+    }
+
+}
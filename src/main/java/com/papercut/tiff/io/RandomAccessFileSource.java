@@ -0,0 +1,47 @@
+package com.papercut.tiff.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+/**
+ * 基于RandomAccessFile seek + read的数据来源，读取时对文件加锁
+ */
+public class RandomAccessFileSource implements ByteSource {
+
+    private final RandomAccessFile randomAccessFile;
+
+    private final long length;
+
+    /**
+     * Constructor
+     *
+     * @param file
+     *            file
+     * @param mode
+     *            r: 只读, rw: 读写
+     */
+    public RandomAccessFileSource(File file, String mode) throws IOException {
+        this.randomAccessFile = new RandomAccessFile(file, mode);
+        this.length = randomAccessFile.length();
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void read(long offset, byte[] bytes, int off, int num) throws IOException {
+        synchronized (randomAccessFile) {
+            randomAccessFile.seek(offset);
+            randomAccessFile.readFully(bytes, off, num);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        randomAccessFile.close();
+    }
+
+}
@@ -0,0 +1,22 @@
+package com.papercut.tiff.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 调用方提供的字节范围读取方法，如HTTP Range请求或对象存储的分段读取
+ */
+public interface RangeFetcher {
+
+    /**
+     * Fetch a byte range, filling the remaining bytes of the buffer
+     *
+     * @param offset
+     *            byte offset
+     * @param buffer
+     *            destination buffer, position must be advanced by the bytes
+     *            fetched
+     */
+    void fetch(long offset, ByteBuffer buffer) throws IOException;
+
+}
@@ -0,0 +1,65 @@
+package com.papercut.tiff.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * 基于调用方提供的{@link RangeFetcher}的数据来源，
+ * 对于远程数据可与{@link ReadPageCache}组合以减少请求次数
+ */
+public class RangeFetcherSource implements ByteSource {
+
+    private final RangeFetcher fetcher;
+
+    private final long length;
+
+    /**
+     * Constructor
+     *
+     * @param fetcher
+     *            range fetcher
+     * @param length
+     *            total length in bytes
+     */
+    public RangeFetcherSource(RangeFetcher fetcher, long length) {
+        this.fetcher = fetcher;
+        this.length = length;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public void read(long offset, byte[] bytes, int off, int num) throws IOException {
+        read(offset, ByteBuffer.wrap(bytes, off, num));
+    }
+
+    @Override
+    public void read(long offset, ByteBuffer buffer) throws IOException {
+        long position = offset;
+        while (buffer.hasRemaining()) {
+            int before = buffer.position();
+            fetcher.fetch(position, buffer);
+            int fetched = buffer.position() - before;
+            if (fetched <= 0) {
+                throw new EOFException("Range fetcher returned no bytes at byte offset " + position);
+            }
+            position += fetched;
+        }
+    }
+
+    /**
+     * Close the fetcher if it is closeable
+     */
+    @Override
+    public void close() throws IOException {
+        if (fetcher instanceof Closeable) {
+            ((Closeable) fetcher).close();
+        }
+    }
+
+}
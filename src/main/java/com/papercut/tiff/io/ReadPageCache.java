@@ -0,0 +1,247 @@
+package com.papercut.tiff.io;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 读取页缓存，将数据来源按固定大小对齐分页，最近访问的若干页保存在内存中，
+ * 小范围的读取（如IFD解析时连续读取的12字节条目）直接从页中完成。
+ * 检测到顺序访问时，一次读取多个后续页（预读）
+ */
+public class ReadPageCache implements ByteSource {
+
+    /**
+     * Default page size in bytes
+     */
+    public static final int DEFAULT_PAGE_SIZE = 64 * 1024;
+
+    /**
+     * Default number of cached pages
+     */
+    public static final int DEFAULT_PAGE_COUNT = 16;
+
+    /**
+     * 被缓存的数据来源
+     */
+    private final ByteSource source;
+
+    /**
+     * Source length
+     */
+    private final long length;
+
+    /**
+     * Page size in bytes
+     */
+    private final int pageSize;
+
+    /**
+     * Max number of cached pages
+     */
+    private final int pageCount;
+
+    /**
+     * Max number of pages read in a single read ahead
+     */
+    private final int maxReadAhead;
+
+    /**
+     * Cached pages by page index, in access order
+     */
+    private final LinkedHashMap<Long, byte[]> pages;
+
+    /**
+     * Index of the most recently accessed page
+     */
+    private long lastPageIndex = -1;
+
+    /**
+     * Number of pages to read on the next sequential miss, grows while access
+     * stays sequential
+     */
+    private int readAhead = 1;
+
+    private long hits;
+
+    private long misses;
+
+    private long readAheadPages;
+
+    /**
+     * Constructor
+     *
+     * @param source
+     *            source to read pages from
+     * @param pageSize
+     *            page size in bytes
+     * @param pageCount
+     *            max number of cached pages
+     */
+    public ReadPageCache(ByteSource source, int pageSize, int pageCount) {
+        if (pageSize <= 0 || pageCount <= 0) {
+            throw new IllegalArgumentException(
+                    "Page size and page count must be positive. Page size: " + pageSize
+                            + ", Page count: " + pageCount);
+        }
+        this.source = source;
+        this.length = source.length();
+        this.pageSize = pageSize;
+        this.pageCount = pageCount;
+        this.maxReadAhead = Math.max(1, pageCount / 2);
+        this.pages = new LinkedHashMap<Long, byte[]>(pageCount * 2, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, byte[]> eldest) {
+                return size() > ReadPageCache.this.pageCount;
+            }
+        };
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    /**
+     * Read bytes, reads larger than a page bypass the cache
+     *
+     * @param offset
+     *            byte offset
+     * @param bytes
+     *            destination bytes
+     * @param off
+     *            destination offset
+     * @param num
+     *            number of bytes
+     */
+    @Override
+    public synchronized void read(long offset, byte[] bytes, int off, int num) throws IOException {
+        if (num > pageSize) {
+            source.read(offset, bytes, off, num);
+            return;
+        }
+        int read = 0;
+        while (read < num) {
+            long position = offset + read;
+            long pageIndex = position / pageSize;
+            byte[] page = getPage(pageIndex);
+            int pageOffset = (int) (position - pageIndex * pageSize);
+            int count = Math.min(num - read, page.length - pageOffset);
+            System.arraycopy(page, pageOffset, bytes, off + read, count);
+            read += count;
+        }
+    }
+
+    /**
+     * Get a page, reading it and any read ahead pages on a miss
+     *
+     * @param pageIndex
+     *            page index
+     * @return page bytes
+     */
+    private byte[] getPage(long pageIndex) throws IOException {
+        boolean sequential = pageIndex == lastPageIndex + 1;
+        lastPageIndex = pageIndex;
+        byte[] page = pages.get(pageIndex);
+        if (page != null) {
+            hits++;
+            return page;
+        }
+        misses++;
+
+        // Grow the read ahead while access is sequential, reset otherwise
+        int numPages = 1;
+        if (sequential) {
+            numPages = readAhead;
+            readAhead = Math.min(readAhead * 2, maxReadAhead);
+        } else {
+            readAhead = 1;
+        }
+        long lastPage = (length - 1) / pageSize;
+        numPages = (int) Math.min(numPages, lastPage - pageIndex + 1);
+
+        // Stop the read ahead at the first page already cached
+        for (int i = 1; i < numPages; i++) {
+            if (pages.containsKey(pageIndex + i)) {
+                numPages = i;
+                break;
+            }
+        }
+
+        long start = pageIndex * pageSize;
+        int total = (int) Math.min((long) numPages * pageSize, length - start);
+        byte[] bytes = new byte[total];
+        source.read(start, bytes, 0, total);
+
+        // Insert in ascending order so the pages needed next are evicted
+        // last
+        for (int i = 0; i < numPages; i++) {
+            int pageStart = i * pageSize;
+            byte[] readPage = new byte[Math.min(pageSize, total - pageStart)];
+            System.arraycopy(bytes, pageStart, readPage, 0, readPage.length);
+            pages.put(pageIndex + i, readPage);
+            if (i == 0) {
+                page = readPage;
+            } else {
+                readAheadPages++;
+            }
+        }
+        return page;
+    }
+
+    /**
+     * Discard all cached pages
+     */
+    public synchronized void clear() {
+        pages.clear();
+        lastPageIndex = -1;
+        readAhead = 1;
+    }
+
+    /**
+     * Close the cached source
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        pages.clear();
+        source.close();
+    }
+
+    public int getPageSize() {
+        return pageSize;
+    }
+
+    public int getPageCount() {
+        return pageCount;
+    }
+
+    /**
+     * Get the number of page reads served from the cache
+     *
+     * @return hit count
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of page reads that had to read the file
+     *
+     * @return miss count
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of pages loaded by read ahead
+     *
+     * @return read ahead page count
+     */
+    public synchronized long getReadAheadPages() {
+        return readAheadPages;
+    }
+
+}
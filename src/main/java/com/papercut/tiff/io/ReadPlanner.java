@@ -0,0 +1,214 @@
+package com.papercut.tiff.io;
+
+import com.papercut.tiff.expection.TiffException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * 读取计划，将相邻或间隔较小的多个字节范围（如连续的strip、tile）合并为一次大的读取，
+ * 读取后再切分为各个范围对应的ByteBuffer
+ */
+public class ReadPlanner {
+
+    /**
+     * Default max gap in bytes between two ranges merged into one read
+     */
+    public static final int DEFAULT_MAX_GAP = 16 * 1024;
+
+    /**
+     * Default max size in bytes of a merged read
+     */
+    public static final int DEFAULT_MAX_READ_SIZE = 8 * 1024 * 1024;
+
+    /**
+     * Max gap in bytes between two merged ranges, gap bytes are read and
+     * discarded
+     */
+    private final int maxGap;
+
+    /**
+     * Max size in bytes of a merged read, a single range larger than this is
+     * read on its own
+     */
+    private final int maxReadSize;
+
+    /**
+     * Constructor with the default max gap and read size
+     */
+    public ReadPlanner() {
+        this(DEFAULT_MAX_GAP, DEFAULT_MAX_READ_SIZE);
+    }
+
+    /**
+     * Constructor
+     *
+     * @param maxGap
+     *            max gap in bytes between merged ranges
+     * @param maxReadSize
+     *            max size in bytes of a merged read
+     */
+    public ReadPlanner(int maxGap, int maxReadSize) {
+        if (maxGap < 0 || maxReadSize <= 0) {
+            throw new IllegalArgumentException("Invalid read plan limits. Max gap: "
+                    + maxGap + ", Max read size: " + maxReadSize);
+        }
+        this.maxGap = maxGap;
+        this.maxReadSize = maxReadSize;
+    }
+
+    public int getMaxGap() {
+        return maxGap;
+    }
+
+    public int getMaxReadSize() {
+        return maxReadSize;
+    }
+
+    /**
+     * Plan the merged reads for the byte ranges
+     *
+     * @param offsets
+     *            range byte offsets
+     * @param lengths
+     *            range lengths
+     * @return merged reads in offset order
+     */
+    public List<Read> plan(final long[] offsets, long[] lengths) {
+        if (offsets.length != lengths.length) {
+            throw new IllegalArgumentException("Offsets and lengths differ in size. Offsets: "
+                    + offsets.length + ", Lengths: " + lengths.length);
+        }
+        Integer[] order = new Integer[offsets.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(offsets[a], offsets[b]);
+            }
+        });
+
+        List<Read> reads = new ArrayList<>();
+        Read read = null;
+        for (int index : order) {
+            long offset = offsets[index];
+            long end = offset + lengths[index];
+            if (read != null && offset - read.end <= maxGap
+                    && Math.max(end, read.end) - read.offset <= maxReadSize) {
+                read.end = Math.max(end, read.end);
+            } else {
+                read = new Read(offset, end);
+                reads.add(read);
+            }
+            read.ranges.add(index);
+        }
+        return reads;
+    }
+
+    /**
+     * Read the byte ranges with merged reads
+     *
+     * @param source
+     *            byte source
+     * @param offsets
+     *            range byte offsets
+     * @param lengths
+     *            range lengths
+     * @return buffer for each range, in the order of the offsets. Ranges
+     *         merged into one read share the read's backing array
+     */
+    public ByteBuffer[] read(ByteSource source, long[] offsets, long[] lengths) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[offsets.length];
+        for (Read read : plan(offsets, lengths)) {
+            read(source, read, offsets, lengths, buffers);
+        }
+        return buffers;
+    }
+
+    /**
+     * Execute a single planned read, slicing the bytes into the buffers of
+     * the ranges it covers
+     *
+     * @param source
+     *            byte source
+     * @param read
+     *            planned read
+     * @param offsets
+     *            range byte offsets the read was planned from
+     * @param lengths
+     *            range lengths the read was planned from
+     * @param buffers
+     *            range buffers to populate, in the order of the offsets
+     */
+    public void read(ByteSource source, Read read, long[] offsets, long[] lengths,
+            ByteBuffer[] buffers) throws IOException {
+        if (read.end > source.length()) {
+            throw new TiffException(
+                    "No more remaining bytes to read. Total Bytes: "
+                            + source.length() + ", Byte offset: " + read.offset
+                            + ", Attempted to read: " + read.length());
+        }
+        byte[] bytes = new byte[read.length()];
+        source.read(read.offset, bytes, 0, bytes.length);
+        for (int index : read.ranges) {
+            buffers[index] = ByteBuffer.wrap(bytes,
+                    (int) (offsets[index] - read.offset), (int) lengths[index]).slice();
+        }
+    }
+
+    /**
+     * A single merged read covering one or more ranges
+     */
+    public static class Read {
+
+        /**
+         * Read byte offset
+         */
+        private final long offset;
+
+        /**
+         * Read end byte offset, exclusive
+         */
+        private long end;
+
+        /**
+         * Indices of the ranges covered by the read
+         */
+        private final List<Integer> ranges = new ArrayList<>();
+
+        private Read(long offset, long end) {
+            this.offset = offset;
+            this.end = end;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * Get the number of bytes read
+         *
+         * @return read length
+         */
+        public int length() {
+            return (int) (end - offset);
+        }
+
+        /**
+         * Get the indices of the ranges covered by the read
+         *
+         * @return range indices
+         */
+        public List<Integer> getRanges() {
+            return ranges;
+        }
+
+    }
+
+}
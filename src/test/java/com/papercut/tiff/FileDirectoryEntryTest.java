@@ -0,0 +1,296 @@
+package com.papercut.tiff;
+
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.FieldType;
+import com.papercut.tiff.expection.TiffException;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 字段值测试，包括基本类型数组存储和延迟加载
+ */
+public class FileDirectoryEntryTest {
+
+    private static final int THREADS = 8;
+
+    private static final int ROUNDS = 500;
+
+    @Test
+    public void lazyValuesLoadOnce() {
+        AtomicInteger loads = new AtomicInteger();
+        FileDirectoryEntry entry = new FileDirectoryEntry(FieldTagType.TileOffsets,
+                FieldType.LONG, 3, 100, e -> {
+                    loads.incrementAndGet();
+                    return new long[] { 1, 2, 3 };
+                });
+        assertFalse(entry.isLoaded());
+        assertEquals(100, entry.getValueOffset());
+        assertArrayEquals(new long[] { 1, 2, 3 }, entry.getLongArray());
+        assertArrayEquals(new long[] { 1, 2, 3 }, entry.getLongArray());
+        assertTrue(entry.isLoaded());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void concurrentLazyValues() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int round = 0; round < ROUNDS; round++) {
+                long[] expected = { round, round + 1L };
+                AtomicInteger loads = new AtomicInteger();
+                FileDirectoryEntry entry = new FileDirectoryEntry(FieldTagType.TileByteCounts,
+                        FieldType.LONG, 2, 8, e -> {
+                            loads.incrementAndGet();
+                            Thread.yield();
+                            return expected.clone();
+                        });
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<long[]>> results = new ArrayList<>();
+                for (int i = 0; i < THREADS; i++) {
+                    Callable<long[]> read = () -> {
+                        start.await();
+                        return entry.getLongArray();
+                    };
+                    results.add(executor.submit(read));
+                }
+                start.countDown();
+                for (Future<long[]> result : results) {
+                    assertArrayEquals(expected, result.get());
+                }
+                assertEquals(1, loads.get());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Values of each field type, signed values are negative
+     */
+    private static final long[] VALUES = { 1, -2, 3, -4, 5, -6 };
+
+    /**
+     * Encode values in a field type, two values per rational
+     */
+    private static byte[] encode(FieldType fieldType, long[] values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 8).order(ByteOrder.LITTLE_ENDIAN);
+        for (long value : values) {
+            switch (fieldType.getBytes()) {
+                case 1:
+                    buffer.put((byte) value);
+                    break;
+                case 2:
+                    buffer.putShort((short) value);
+                    break;
+                case 4:
+                    if (fieldType == FieldType.FLOAT) {
+                        buffer.putFloat(value);
+                    } else {
+                        buffer.putInt((int) value);
+                    }
+                    break;
+                case 8:
+                    if (fieldType == FieldType.DOUBLE) {
+                        buffer.putDouble(value);
+                    } else if (fieldType == FieldType.RATIONAL || fieldType == FieldType.SRATIONAL) {
+                        buffer.putInt((int) value);
+                    } else {
+                        buffer.putLong(value);
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException(fieldType.name());
+            }
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * Value as read for the field type
+     */
+    private static long expected(FieldType fieldType, long value) {
+        switch (fieldType) {
+            case BYTE:
+            case UNDEFINED:
+                return value & 0xff;
+            case SBYTE:
+                return (byte) value;
+            case SHORT:
+                return value & 0xffff;
+            case SSHORT:
+                return (short) value;
+            case LONG:
+            case RATIONAL:
+                return value & 0xffffffffL;
+            case SLONG:
+            case SRATIONAL:
+                return (int) value;
+            default:
+                return value;
+        }
+    }
+
+    private static Class<?> storage(FieldType fieldType) {
+        switch (fieldType) {
+            case BYTE:
+            case SBYTE:
+            case UNDEFINED:
+                return byte[].class;
+            case SHORT:
+            case SSHORT:
+            case SLONG:
+            case SRATIONAL:
+                return int[].class;
+            case FLOAT:
+                return float[].class;
+            case DOUBLE:
+                return double[].class;
+            default:
+                return long[].class;
+        }
+    }
+
+    /**
+     * Parsed values, inline and out-of-line, are stored in the primitive
+     * array of the field type and read back through the typed accessors and
+     * the list view
+     */
+    @Test
+    public void primitiveStorage() throws Exception {
+        FieldType[] fieldTypes = { FieldType.BYTE, FieldType.SBYTE, FieldType.UNDEFINED,
+                FieldType.SHORT, FieldType.SSHORT, FieldType.LONG, FieldType.SLONG,
+                FieldType.RATIONAL, FieldType.SRATIONAL, FieldType.FLOAT, FieldType.DOUBLE,
+                FieldType.LONG8 };
+        for (FieldType fieldType : fieldTypes) {
+            boolean rational = fieldType == FieldType.RATIONAL || fieldType == FieldType.SRATIONAL;
+            // Inline in the 8 byte BigTIFF value, then out of line
+            int inlineCount = rational ? 2 : 8 / fieldType.getBytes();
+            for (int count : new int[] { inlineCount, VALUES.length }) {
+                long[] values = Arrays.copyOf(VALUES, count);
+                byte[] tiff = new TiffBuilder(ByteOrder.LITTLE_ENDIAN, true)
+                        .image(1, 1, 1, 8)
+                        .strips(1, new byte[1])
+                        .entry(FieldTagType.FreeOffsets, fieldType, rational ? count / 2 : count,
+                                encode(fieldType, values))
+                        .build();
+                String message = fieldType + " x " + count;
+                try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+                    FileDirectoryEntry entry = file.getPage(0).get(FieldTagType.FreeOffsets);
+                    assertTrue(message, entry.isPrimitive());
+                    assertEquals(message, storage(fieldType), entry.values().getClass());
+                    assertEquals(message, count, entry.getValueCount());
+
+                    // A single value of the non-array tag is not a list
+                    Object boxed = entry.getValues();
+                    List<?> list = boxed instanceof List ? (List<?>) boxed
+                            : Arrays.asList(boxed);
+                    assertEquals(message, count == 1 && !rational, !(boxed instanceof List));
+                    long[] longs = entry.getLongArray();
+                    int[] ints = entry.getIntArray();
+                    double[] doubles = entry.getDoubleArray();
+                    for (int i = 0; i < count; i++) {
+                        long value = expected(fieldType, values[i]);
+                        assertEquals(message, value, entry.getLong(i));
+                        assertEquals(message, value, longs[i]);
+                        assertEquals(message, (int) value, entry.getInt(i));
+                        assertEquals(message, (int) value, ints[i]);
+                        assertEquals(message, value, entry.getDouble(i), 0);
+                        assertEquals(message, value, doubles[i], 0);
+                        assertEquals(message, value, ((Number) list.get(i)).longValue());
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Arrays of the stored type are returned without copying
+     */
+    @Test
+    public void typedAccessors() {
+        long[] longs = { 10, 20, 1L << 33 };
+        FileDirectoryEntry offsets = new FileDirectoryEntry(FieldTagType.TileOffsets,
+                FieldType.LONG8, 3, longs);
+        assertSame(longs, offsets.getLongArray());
+        assertEquals(1L << 33, offsets.getLong(2));
+        assertEquals(Arrays.asList(10L, 20L, 1L << 33), offsets.getValues());
+
+        int[] shorts = { 1, 65535 };
+        FileDirectoryEntry colorMap = new FileDirectoryEntry(FieldTagType.ColorMap,
+                FieldType.SHORT, 2, shorts);
+        assertSame(shorts, colorMap.getIntArray());
+        assertEquals(Arrays.asList(1, 65535), colorMap.getValues());
+        assertThrows(TiffException.class, colorMap::getRawBytes);
+
+        byte[] bytes = { 1, (byte) 200 };
+        FileDirectoryEntry undefined = new FileDirectoryEntry(FieldTagType.JPEGTables,
+                FieldType.UNDEFINED, 2, bytes);
+        assertSame(bytes, undefined.getRawBytes());
+        assertEquals(200, undefined.getLong(1));
+        assertEquals(Arrays.asList((short) 1, (short) 200), undefined.getValues());
+
+        // A single value of a non-array tag is a number
+        FileDirectoryEntry width = new FileDirectoryEntry(FieldTagType.ImageWidth,
+                FieldType.LONG, 1, new long[] { 640 });
+        assertEquals(640L, width.getValues());
+        assertEquals(640, width.getInt(0));
+    }
+
+    /**
+     * Boxed entry values keep working through the typed accessors
+     */
+    @Test
+    public void boxedValues() {
+        FileDirectoryEntry entry = new FileDirectoryEntry(FieldTagType.StripOffsets,
+                FieldType.LONG, 2, Arrays.asList(8L, 1024L));
+        assertFalse(entry.isPrimitive());
+        assertArrayEquals(new long[] { 8, 1024 }, entry.getLongArray());
+        assertEquals(1024, entry.getInt(1));
+        assertEquals(2, entry.getValueCount());
+
+        FileDirectoryEntry single = new FileDirectoryEntry(FieldTagType.ImageWidth,
+                FieldType.SHORT, 1, 300);
+        assertEquals(300, single.getLong(0));
+        assertThrows(IndexOutOfBoundsException.class, () -> single.getLong(1));
+    }
+
+    /**
+     * The directory list getters are views of the primitive values
+     */
+    @Test
+    public void directoryListViews() throws Exception {
+        byte[] tiff = new TiffBuilder(ByteOrder.BIG_ENDIAN)
+                .image(32, 32, 1, 8)
+                .tiles(16, 16, new byte[4], new byte[3], new byte[2], new byte[1])
+                .build();
+        try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+            FileDirectory directory = file.getPage(0);
+            List<Long> offsets = directory.getTileOffsets();
+            assertEquals(4, offsets.size());
+            for (int i = 0; i < 4; i++) {
+                assertEquals(Long.valueOf(directory.getBlockOffset(i)), offsets.get(i));
+                assertEquals(4 - i, directory.getTileByteCounts().get(i).intValue());
+            }
+            assertEquals(Arrays.asList(8), directory.getBitsPerSample());
+        }
+    }
+
+}
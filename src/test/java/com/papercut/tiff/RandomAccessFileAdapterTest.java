@@ -0,0 +1,319 @@
+package com.papercut.tiff;
+
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.FieldType;
+import com.papercut.tiff.expection.TiffException;
+import com.papercut.tiff.io.ByteBufferSource;
+import com.papercut.tiff.io.ByteSource;
+import com.papercut.tiff.io.ReadPageCache;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 文件读取封装测试
+ */
+public class RandomAccessFileAdapterTest {
+
+    private static final int PAGE_SIZE = 64;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 29 + 3);
+        }
+        return data;
+    }
+
+    private String write(byte[] data) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), data);
+        return file.getPath();
+    }
+
+    /**
+     * The small reads of IFD parsing are served from the cached pages
+     */
+    @Test
+    public void pagedDirectoryParse() throws IOException {
+        byte[] strip = data(40 * 3);
+        byte[] tiff = new TiffBuilder(ByteOrder.BIG_ENDIAN)
+                .image(40, 3, 1, 8)
+                .strips(1, Arrays.copyOfRange(strip, 0, 40), Arrays.copyOfRange(strip, 40, 80),
+                        Arrays.copyOfRange(strip, 80, 120))
+                .bytes(FieldTagType.ImageDescription, FieldType.ASCII,
+                        "paged description\0".getBytes(StandardCharsets.US_ASCII))
+                .shorts(FieldTagType.ColorMap, new int[3 * 256])
+                .build();
+
+        RandomAccessFileAdapter adapter = new RandomAccessFileAdapter(write(tiff), "r", PAGE_SIZE, 4);
+        ReadPageCache cache = adapter.getPageCache();
+        try (RandomTiffFile file = new RandomTiffFile(adapter)) {
+            FileDirectory directory = file.getPage(0);
+            assertEquals(40, directory.getImageWidth().intValue());
+            assertEquals("paged description", directory.getStringEntryValue(FieldTagType.ImageDescription));
+            assertEquals(3 * 256, directory.get(FieldTagType.ColorMap).getValueCount());
+            for (int i = 0; i < 3; i++) {
+                assertArrayEquals(Arrays.copyOfRange(strip, i * 40, i * 40 + 40),
+                        directory.getBlock(i));
+            }
+            assertTrue(cache.getHits() > cache.getMisses());
+        }
+    }
+
+    /**
+     * Sequential primitive reads read ahead, so most pages are read before
+     * they are accessed
+     */
+    @Test
+    public void sequentialReadAhead() throws IOException {
+        byte[] data = data(64 * PAGE_SIZE);
+        RandomAccessFileAdapter adapter = new RandomAccessFileAdapter(write(data), "r", PAGE_SIZE, 8);
+        adapter.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        ByteBuffer expected = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while (expected.hasRemaining()) {
+                assertEquals(expected.getInt(), adapter.readInt());
+            }
+            assertEquals(data.length, adapter.getPointer());
+
+            ReadPageCache cache = adapter.getPageCache();
+            assertEquals(64, cache.getMisses() + cache.getReadAheadPages());
+            assertTrue(cache.getMisses() <= 64 / 4 + 2);
+            assertEquals(data.length / 4 - cache.getMisses(), cache.getHits());
+        } finally {
+            adapter.close();
+        }
+    }
+
+    /**
+     * Random reads do not read ahead, pages stay cached until evicted
+     */
+    @Test
+    public void randomReadsCachePages() throws IOException {
+        byte[] data = data(16 * PAGE_SIZE);
+        RandomAccessFileAdapter adapter = new RandomAccessFileAdapter(write(data), "r", PAGE_SIZE, 2);
+        ByteBuffer expected = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+        adapter.setByteOrder(ByteOrder.BIG_ENDIAN);
+        try {
+            long[] offsets = { 9 * PAGE_SIZE + 4, 2 * PAGE_SIZE + 8, 9 * PAGE_SIZE + 40,
+                    2 * PAGE_SIZE + 60, 14 * PAGE_SIZE };
+            for (long offset : offsets) {
+                assertEquals(expected.getInt((int) offset), adapter.readInt(offset));
+            }
+            // A value crossing two pages
+            assertEquals(expected.getLong(5 * PAGE_SIZE - 3), adapter.readLong(5 * PAGE_SIZE - 3));
+
+            ReadPageCache cache = adapter.getPageCache();
+            assertEquals(0, cache.getReadAheadPages());
+            assertEquals(5, cache.getMisses());
+            assertEquals(2, cache.getHits());
+        } finally {
+            adapter.close();
+        }
+    }
+
+    /**
+     * Reads at an offset leave the pointer of the sequential reads
+     */
+    @Test
+    public void positionalReadsKeepPointer() throws IOException {
+        byte[] data = data(300);
+        ByteBuffer expected = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        RandomAccessFileAdapter adapter = new RandomAccessFileAdapter(write(data), "r");
+        adapter.setByteOrder(ByteOrder.LITTLE_ENDIAN);
+        try {
+            adapter.setPointer(10);
+            assertEquals(expected.getInt(100), adapter.readInt(100));
+            assertEquals(expected.getDouble(200), adapter.readDouble(200), 0);
+            assertArrayEquals(Arrays.copyOfRange(data, 0, 5), adapter.readBytes(0, 5));
+            assertEquals(10, adapter.getPointer());
+
+            assertEquals(expected.getShort(10), adapter.readShort());
+            assertEquals(12, adapter.getPointer());
+        } finally {
+            adapter.close();
+        }
+    }
+
+    /**
+     * Threads sharing one adapter read the bytes at their own offsets
+     */
+    @Test
+    public void concurrentPositionalReads() throws Exception {
+        byte[] data = data(64 * 1024);
+        ByteBuffer expected = ByteBuffer.wrap(data).order(ByteOrder.BIG_ENDIAN);
+        RandomAccessFileAdapter adapter = new RandomAccessFileAdapter(write(data), "r");
+        adapter.setByteOrder(ByteOrder.BIG_ENDIAN);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int seed = thread;
+                futures.add(executor.submit(() -> {
+                    Random random = new Random(seed);
+                    for (int i = 0; i < 2000; i++) {
+                        int offset = random.nextInt(data.length - 64);
+                        assertEquals(expected.getLong(offset), adapter.readLong(offset));
+                        int length = 1 + random.nextInt(64);
+                        assertArrayEquals(Arrays.copyOfRange(data, offset, offset + length),
+                                adapter.readBytes(offset, length));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+            adapter.close();
+        }
+    }
+
+    /**
+     * Threads sharing one open TIFF decode the tiles of a page
+     */
+    @Test
+    public void concurrentBlockReads() throws Exception {
+        byte[][] tiles = new byte[16][];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = Arrays.copyOfRange(data(16 * 16 + i), i, 16 * 16 + i);
+        }
+        byte[] tiff = new TiffBuilder(ByteOrder.LITTLE_ENDIAN)
+                .image(64, 64, 1, 8)
+                .tiles(16, 16, tiles)
+                .build();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (RandomTiffFile file = new RandomTiffFile(write(tiff), "r")) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int first = thread;
+                futures.add(executor.submit(() -> {
+                    FileDirectory directory = file.getPage(0);
+                    for (int i = 0; i < 200; i++) {
+                        int tile = (first + i * 7) % tiles.length;
+                        assertArrayEquals(tiles[tile], directory.getBlock(tile));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Value arrays are decoded from a single source read in the byte order
+     */
+    @Test
+    public void bulkReads() throws IOException {
+        byte[] data = data(1024);
+        for (ByteOrder byteOrder : Arrays.asList(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+            CountingSource source = new CountingSource(data);
+            RandomAccessFileAdapter adapter = new RandomAccessFileAdapter(source);
+            adapter.setByteOrder(byteOrder);
+            ByteBuffer expected = ByteBuffer.wrap(data).order(byteOrder);
+
+            int[] unsignedShorts = adapter.readUnsignedShorts(3, 100);
+            short[] shorts = adapter.readShorts(3, 100);
+            long[] unsignedInts = adapter.readUnsignedInts(1, 100);
+            int[] ints = adapter.readInts(1, 100);
+            long[] longs = adapter.readLongs(7, 100);
+            float[] floats = adapter.readFloats(2, 100);
+            double[] doubles = adapter.readDoubles(5, 100);
+            assertEquals(7, source.reads);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(expected.getShort(3 + i * 2) & 0xffff, unsignedShorts[i]);
+                assertEquals(expected.getShort(3 + i * 2), shorts[i]);
+                assertEquals(expected.getInt(1 + i * 4) & 0xffffffffL, unsignedInts[i]);
+                assertEquals(expected.getInt(1 + i * 4), ints[i]);
+                assertEquals(expected.getLong(7 + i * 8), longs[i]);
+                assertEquals(expected.getFloat(2 + i * 4), floats[i], 0);
+                assertEquals(expected.getDouble(5 + i * 8), doubles[i], 0);
+            }
+
+            // Sequential bulk reads advance the pointer
+            adapter.setPointer(10);
+            assertArrayEquals(adapter.readUnsignedInts(10, 3), adapter.readUnsignedInts(3));
+            assertArrayEquals(adapter.readDoubles(22, 2), adapter.readDoubles(2), 0);
+            assertEquals(38, adapter.getPointer());
+            assertEquals(0, adapter.readLongs(0).length);
+        }
+    }
+
+    @Test
+    public void bulkReadPastEnd() {
+        RandomAccessFileAdapter adapter = new RandomAccessFileAdapter(new CountingSource(data(100)));
+        adapter.setByteOrder(ByteOrder.BIG_ENDIAN);
+        assertThrows(TiffException.class, () -> adapter.readLongs(40, 8));
+    }
+
+    @Test
+    public void unbufferedByDefault() throws IOException {
+        RandomAccessFileAdapter adapter = new RandomAccessFileAdapter(write(data(10)), "r");
+        try {
+            assertNull(adapter.getPageCache());
+        } finally {
+            adapter.close();
+        }
+    }
+
+    /**
+     * Source counting the reads, primitive reads included
+     */
+    private static final class CountingSource implements ByteSource {
+
+        private final ByteBufferSource source;
+
+        private int reads;
+
+        private CountingSource(byte[] data) {
+            this.source = new ByteBufferSource(data);
+        }
+
+        @Override
+        public long length() {
+            return source.length();
+        }
+
+        @Override
+        public void read(long offset, byte[] bytes, int off, int num) throws IOException {
+            reads++;
+            source.read(offset, bytes, off, num);
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+
+    }
+
+}
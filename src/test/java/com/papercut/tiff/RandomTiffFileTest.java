@@ -0,0 +1,250 @@
+package com.papercut.tiff;
+
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.FieldType;
+import com.papercut.tiff.expection.TiffException;
+import com.papercut.tiff.io.ByteBufferSource;
+import com.papercut.tiff.io.ByteSource;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * 目录项值解析测试
+ */
+public class RandomTiffFileTest {
+
+    /**
+     * Inline value bytes that must not be decoded as values
+     */
+    private static final byte[] PADDING = { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+    private static TiffBuilder image(ByteOrder byteOrder, boolean bigTiff) {
+        return new TiffBuilder(byteOrder, bigTiff)
+                .image(2, 1, 1, 8)
+                .strips(1, new byte[] { 10, 20 });
+    }
+
+    private static FileDirectoryEntry entry(byte[] tiff, FieldTagType tag) throws Exception {
+        try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+            FileDirectoryEntry entry = file.getPage(0).get(tag);
+            entry.getValues();
+            return entry;
+        }
+    }
+
+    @Test
+    public void zeroCountInlineValues() throws Exception {
+        byte[] tiff = image(ByteOrder.LITTLE_ENDIAN, true)
+                .entry(FieldTagType.XResolution, FieldType.RATIONAL, 0, PADDING)
+                .entry(FieldTagType.YResolution, FieldType.SRATIONAL, 0, PADDING)
+                .entry(FieldTagType.SMinSampleValue, FieldType.DOUBLE, 0, PADDING)
+                .entry(FieldTagType.FreeOffsets, FieldType.LONG8, 0, PADDING)
+                .build();
+        assertEquals(0, entry(tiff, FieldTagType.XResolution).getValueCount());
+        assertEquals(0, entry(tiff, FieldTagType.YResolution).getValueCount());
+        assertEquals(0, entry(tiff, FieldTagType.SMinSampleValue).getValueCount());
+        assertEquals(0, entry(tiff, FieldTagType.FreeOffsets).getValueCount());
+    }
+
+    @Test
+    public void singleInlineBigTiffValues() throws Exception {
+        ByteBuffer rational = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN).putInt(300).putInt(2);
+        ByteBuffer value = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN).putDouble(-1.5);
+        ByteBuffer offset = ByteBuffer.allocate(8).order(ByteOrder.BIG_ENDIAN).putLong(1L << 40);
+        byte[] tiff = image(ByteOrder.BIG_ENDIAN, true)
+                .entry(FieldTagType.XResolution, FieldType.RATIONAL, 1, rational.array())
+                .entry(FieldTagType.SMinSampleValue, FieldType.DOUBLE, 1, value.array())
+                .entry(FieldTagType.FreeOffsets, FieldType.LONG8, 1, offset.array())
+                .build();
+        assertArrayEquals(new long[] { 300, 2 }, entry(tiff, FieldTagType.XResolution).getLongArray());
+        assertArrayEquals(new double[] { -1.5 },
+                entry(tiff, FieldTagType.SMinSampleValue).getDoubleArray(), 0);
+        assertArrayEquals(new long[] { 1L << 40 }, entry(tiff, FieldTagType.FreeOffsets).getLongArray());
+    }
+
+    @Test
+    public void negativeBigTiffCount() {
+        byte[] tiff = image(ByteOrder.LITTLE_ENDIAN, true)
+                .entry(FieldTagType.FreeOffsets, FieldType.LONG, 0x8000000080000000L, PADDING)
+                .build();
+        assertThrows(TiffException.class, () -> entry(tiff, FieldTagType.FreeOffsets));
+    }
+
+    /**
+     * A count whose byte size overflows to 0 is not decoded as inline values
+     */
+    @Test
+    public void overflowingBigTiffCount() {
+        byte[] tiff = image(ByteOrder.LITTLE_ENDIAN, true)
+                .entry(FieldTagType.FreeOffsets, FieldType.LONG8, 1L << 61, PADDING)
+                .build();
+        assertThrows(TiffException.class, () -> entry(tiff, FieldTagType.FreeOffsets));
+        assertThrows(TiffException.class, () -> {
+            try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+                file.getPage(0);
+            }
+        });
+    }
+
+    @Test
+    public void overflowingRationalCount() {
+        byte[] tiff = image(ByteOrder.LITTLE_ENDIAN, false)
+                .entry(FieldTagType.XResolution, FieldType.RATIONAL, (1L << 30) + 1, PADDING)
+                .build();
+        assertThrows(TiffException.class, () -> entry(tiff, FieldTagType.XResolution));
+    }
+
+    @Test
+    public void stripValues() throws Exception {
+        for (ByteOrder byteOrder : Arrays.asList(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+            for (boolean bigTiff : new boolean[] { false, true }) {
+                try (RandomTiffFile file = new RandomTiffFile(image(byteOrder, bigTiff).build())) {
+                    FileDirectory directory = file.getPage(0);
+                    assertEquals(2, directory.getImageWidth().intValue());
+                    assertArrayEquals(new byte[] { 10, 20 }, directory.getBlock(0));
+                }
+            }
+        }
+    }
+
+    private static byte[] valueArrays(ByteOrder byteOrder, int count) {
+        ByteBuffer shorts = ByteBuffer.allocate(count * 2).order(byteOrder);
+        ByteBuffer longs = ByteBuffer.allocate(count * 4).order(byteOrder);
+        ByteBuffer rationals = ByteBuffer.allocate(count * 8).order(byteOrder);
+        ByteBuffer doubles = ByteBuffer.allocate(count * 8).order(byteOrder);
+        ByteBuffer longs8 = ByteBuffer.allocate(count * 8).order(byteOrder);
+        for (int i = 0; i < count; i++) {
+            shorts.putShort((short) (-i * 300));
+            longs.putInt(0xfffffff0 - i);
+            rationals.putInt(-i).putInt(i + 1);
+            doubles.putDouble(i / 4.0);
+            longs8.putLong((1L << 40) + i);
+        }
+        return image(byteOrder, true)
+                .entry(FieldTagType.ColorMap, FieldType.SHORT, count, shorts.array())
+                .entry(FieldTagType.SMinSampleValue, FieldType.SSHORT, count, shorts.array())
+                .entry(FieldTagType.FreeOffsets, FieldType.LONG, count, longs.array())
+                .entry(FieldTagType.XResolution, FieldType.SRATIONAL, count, rationals.array())
+                .entry(FieldTagType.SMaxSampleValue, FieldType.DOUBLE, count, doubles.array())
+                .entry(FieldTagType.FreeByteCounts, FieldType.LONG8, count, longs8.array())
+                .build();
+    }
+
+    private static int parseReads(byte[] tiff) throws Exception {
+        CountingSource source = new CountingSource(tiff);
+        try (RandomTiffFile file = new RandomTiffFile(source)) {
+            file.getPage(0);
+            return source.reads;
+        }
+    }
+
+    /**
+     * Each out-of-line value array is decoded from a single read, whatever
+     * its length
+     */
+    @Test
+    public void valueArraysAreReadInBulk() throws Exception {
+        for (ByteOrder byteOrder : Arrays.asList(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+            int count = 1000;
+            byte[] tiff = valueArrays(byteOrder, count);
+            assertEquals(parseReads(valueArrays(byteOrder, 10)), parseReads(tiff));
+
+            try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+                FileDirectory directory = file.getPage(0);
+                int[] shorts = directory.get(FieldTagType.ColorMap).getIntArray();
+                int[] signedShorts = directory.get(FieldTagType.SMinSampleValue).getIntArray();
+                long[] longs = directory.get(FieldTagType.FreeOffsets).getLongArray();
+                int[] rationals = directory.get(FieldTagType.XResolution).getIntArray();
+                double[] doubles = directory.get(FieldTagType.SMaxSampleValue).getDoubleArray();
+                long[] longs8 = directory.get(FieldTagType.FreeByteCounts).getLongArray();
+                assertEquals(count * 2, rationals.length);
+                for (int i = 0; i < count; i++) {
+                    assertEquals(-i * 300 & 0xffff, shorts[i]);
+                    assertEquals((short) (-i * 300), signedShorts[i]);
+                    assertEquals(0xfffffff0L - i, longs[i]);
+                    assertEquals(-i, rationals[i * 2]);
+                    assertEquals(i + 1, rationals[i * 2 + 1]);
+                    assertEquals(i / 4.0, doubles[i], 0);
+                    assertEquals((1L << 40) + i, longs8[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Pages after the requested page are not walked, the corrupt entry
+     * count of the last page is only read by the page count
+     */
+    @Test
+    public void pageWalksOnlyToThePage() throws Exception {
+        byte[] tiff = image(ByteOrder.LITTLE_ENDIAN, true).page().image(1, 1, 1, 8).page()
+                .image(3, 1, 1, 8).build();
+        int lastPage;
+        try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+            lastPage = (int) file.getPageOffset(2);
+        }
+        // Entry count overflowing to 0 bytes of entries
+        ByteBuffer.wrap(tiff).order(ByteOrder.LITTLE_ENDIAN).putLong(lastPage, 1L << 62);
+
+        try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+            assertEquals(2, file.getPage(0).getImageWidth().intValue());
+            assertEquals(1, file.getPage(1).getImageWidth().intValue());
+            assertThrows(TiffException.class, () -> file.getPage(2));
+            assertThrows(TiffException.class, file::getPageCount);
+        }
+    }
+
+    @Test
+    public void selfReferencingChain() throws Exception {
+        byte[] tiff = image(ByteOrder.BIG_ENDIAN, false).build();
+        ByteBuffer buffer = ByteBuffer.wrap(tiff).order(ByteOrder.BIG_ENDIAN);
+        int directory = buffer.getInt(4);
+        buffer.putInt(directory + 2 + buffer.getShort(directory) * 12, directory);
+
+        try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+            assertEquals(2, file.getPage(0).getImageWidth().intValue());
+            assertThrows(TiffException.class, file::getPageCount);
+            assertThrows(TiffException.class, () -> file.getPage(1));
+        }
+    }
+
+    /**
+     * Source counting the reads, primitive reads included
+     */
+    private static final class CountingSource implements ByteSource {
+
+        private final ByteBufferSource source;
+
+        private int reads;
+
+        private CountingSource(byte[] data) {
+            this.source = new ByteBufferSource(data);
+        }
+
+        @Override
+        public long length() {
+            return source.length();
+        }
+
+        @Override
+        public void read(long offset, byte[] bytes, int off, int num) throws IOException {
+            reads++;
+            source.read(offset, bytes, off, num);
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+
+    }
+
+}
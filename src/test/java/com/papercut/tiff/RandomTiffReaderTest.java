@@ -0,0 +1,151 @@
+package com.papercut.tiff;
+
+import com.papercut.tiff.expection.TiffException;
+import com.papercut.tiff.io.ByteBufferSource;
+import com.papercut.tiff.io.ByteSource;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 原始块读取测试，异步读取与同步读取结果一致，读取错误通过future返回
+ */
+public class RandomTiffReaderTest {
+
+    private static final int TILE_SIZE = 16;
+
+    /**
+     * 3 x 2 tiles, the last tile written first
+     */
+    private static byte[] tiff() {
+        byte[][] tiles = new byte[6][];
+        for (int i = 0; i < tiles.length; i++) {
+            tiles[i] = new byte[TILE_SIZE * TILE_SIZE];
+            for (int j = 0; j < tiles[i].length; j++) {
+                tiles[i][j] = (byte) (i * 41 + j);
+            }
+        }
+        // Shorter tile breaking the adjacent reads
+        tiles[4] = new byte[] { 1, 2, 3 };
+        return new TiffBuilder(ByteOrder.LITTLE_ENDIAN)
+                .image(3 * TILE_SIZE, 2 * TILE_SIZE, 1, 8)
+                .tiles(TILE_SIZE, TILE_SIZE, tiles)
+                .build();
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static void assertBlocks(ByteBuffer[] expected, ByteBuffer[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            assertArrayEquals("Block " + i, bytes(expected[i]), bytes(actual[i]));
+        }
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) {
+        return assertThrows(ExecutionException.class, future::get).getCause();
+    }
+
+    @Test
+    public void asyncReadsMatchSyncReads() throws Exception {
+        try (RandomTiffFile file = new RandomTiffFile(tiff())) {
+            RandomTiffReader reader = new RandomTiffReader(file);
+            FileDirectory directory = file.getPage(0);
+
+            int[][] indices = { { 0, 1, 2, 3, 4, 5 }, { 5, 0, 3 }, { 2, 2 }, {} };
+            for (int[] blockIndices : indices) {
+                assertBlocks(reader.readBlocks(directory, blockIndices),
+                        reader.readBlocksAsync(directory, blockIndices).get());
+            }
+            assertBlocks(reader.readWindowBlocks(directory, 10, 5, 20, 20),
+                    reader.readWindowAsync(directory, 10, 5, 20, 20).get());
+            assertArrayEquals(bytes(reader.readBlocks(directory, 4)[0]),
+                    bytes(reader.readBlockAsync(directory, 4).get()));
+        }
+    }
+
+    @Test
+    public void readErrorCompletesFuture() throws Exception {
+        FailingSource source = new FailingSource(tiff());
+        try (RandomTiffFile file = new RandomTiffFile(source)) {
+            RandomTiffReader reader = new RandomTiffReader(file);
+            FileDirectory directory = file.getPage(0);
+            source.failing = true;
+
+            Throwable cause = failure(reader.readBlocksAsync(directory, 0, 1, 5));
+            assertTrue(cause instanceof UncheckedIOException);
+            assertTrue(failure(reader.readBlockAsync(directory, 2)) instanceof UncheckedIOException);
+        }
+    }
+
+    /**
+     * Lazy block offsets are loaded by the I/O task, a load error completes
+     * the future instead of being thrown to the caller
+     */
+    @Test
+    public void lazyOffsetErrorCompletesFuture() throws Exception {
+        FailingSource source = new FailingSource(tiff());
+        try (RandomTiffFile file = new RandomTiffFile(source,
+                new TiffReadOptions().setLazyValues(true))) {
+            RandomTiffReader reader = new RandomTiffReader(file);
+            FileDirectory directory = file.getPage(0);
+            source.failing = true;
+
+            CompletableFuture<ByteBuffer[]> future = reader.readBlocksAsync(directory, 0, 1);
+            Throwable cause = failure(future);
+            assertTrue(cause instanceof TiffException);
+            assertTrue(cause.getCause() instanceof IOException);
+
+            source.failing = false;
+            assertBlocks(reader.readBlocks(directory, 0, 1), reader.readBlocksAsync(directory, 0, 1).get());
+        }
+    }
+
+    /**
+     * Source failing every read once set
+     */
+    private static final class FailingSource implements ByteSource {
+
+        private final ByteBufferSource source;
+
+        private volatile boolean failing;
+
+        private FailingSource(byte[] data) {
+            this.source = new ByteBufferSource(data);
+        }
+
+        @Override
+        public long length() {
+            return source.length();
+        }
+
+        @Override
+        public void read(long offset, byte[] bytes, int off, int num) throws IOException {
+            if (failing) {
+                throw new IOException("Read failed at byte offset " + offset);
+            }
+            source.read(offset, bytes, off, num);
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+
+    }
+
+}
@@ -0,0 +1,287 @@
+package com.papercut.tiff;
+
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.FieldType;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 测试用的TIFF构造器，在内存中写出TIFF或BigTIFF字节，支持多页和子IFD
+ */
+public final class TiffBuilder {
+
+    private final ByteOrder byteOrder;
+
+    private final boolean bigTiff;
+
+    /**
+     * Pages of the IFD chain
+     */
+    private final List<Page> pages = new ArrayList<>();
+
+    /**
+     * Page or sub IFD the entries are added to
+     */
+    private Page current;
+
+    public TiffBuilder(ByteOrder byteOrder) {
+        this(byteOrder, false);
+    }
+
+    public TiffBuilder(ByteOrder byteOrder, boolean bigTiff) {
+        this.byteOrder = byteOrder;
+        this.bigTiff = bigTiff;
+        page();
+    }
+
+    /**
+     * Start the next page of the IFD chain
+     */
+    public TiffBuilder page() {
+        current = new Page();
+        pages.add(current);
+        return this;
+    }
+
+    /**
+     * Start a sub IFD of the last page, listed by its SubIFDs entry
+     */
+    public TiffBuilder subIfd() {
+        current = new Page();
+        pages.get(pages.size() - 1).subIfds.add(current);
+        return this;
+    }
+
+    /**
+     * Add an entry with encoded values, inline when they fit
+     */
+    public TiffBuilder entry(FieldTagType tag, FieldType type, long count, byte[] values) {
+        current.entries.put(tag.getId(), new Entry(type, count, values));
+        return this;
+    }
+
+    public TiffBuilder shorts(FieldTagType tag, int... values) {
+        ByteBuffer buffer = allocate(values.length * 2);
+        for (int value : values) {
+            buffer.putShort((short) value);
+        }
+        return entry(tag, FieldType.SHORT, values.length, buffer.array());
+    }
+
+    public TiffBuilder longs(FieldTagType tag, long... values) {
+        ByteBuffer buffer = allocate(values.length * 4);
+        for (long value : values) {
+            buffer.putInt((int) value);
+        }
+        return entry(tag, FieldType.LONG, values.length, buffer.array());
+    }
+
+    public TiffBuilder bytes(FieldTagType tag, FieldType type, byte[] values) {
+        return entry(tag, type, values.length, values);
+    }
+
+    /**
+     * Add the image width, length and bits per sample of a single or multi
+     * sample image
+     */
+    public TiffBuilder image(int width, int length, int samplesPerPixel, int bitsPerSample) {
+        longs(FieldTagType.ImageWidth, width);
+        longs(FieldTagType.ImageLength, length);
+        int[] bits = new int[samplesPerPixel];
+        Arrays.fill(bits, bitsPerSample);
+        shorts(FieldTagType.BitsPerSample, bits);
+        return shorts(FieldTagType.SamplesPerPixel, samplesPerPixel);
+    }
+
+    /**
+     * Set the strip data, written with the offsets and byte counts
+     */
+    public TiffBuilder strips(int rowsPerStrip, byte[]... strips) {
+        longs(FieldTagType.RowsPerStrip, rowsPerStrip);
+        return blocks(FieldTagType.StripOffsets, FieldTagType.StripByteCounts, strips);
+    }
+
+    /**
+     * Set the tile data, written with the offsets and byte counts
+     */
+    public TiffBuilder tiles(int tileWidth, int tileLength, byte[]... tiles) {
+        longs(FieldTagType.TileWidth, tileWidth);
+        longs(FieldTagType.TileLength, tileLength);
+        return blocks(FieldTagType.TileOffsets, FieldTagType.TileByteCounts, tiles);
+    }
+
+    private TiffBuilder blocks(FieldTagType offsets, FieldTagType byteCounts, byte[]... data) {
+        current.offsetsTag = offsets;
+        current.byteCountsTag = byteCounts;
+        current.blocks.clear();
+        current.blocks.addAll(Arrays.asList(data));
+        return this;
+    }
+
+    /**
+     * Write the TIFF: the header, then per page the sub IFDs, block data,
+     * out-of-line values and the directory. The IFD offsets are patched in
+     * last
+     */
+    public byte[] build() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ByteBuffer header = allocate(bigTiff ? 16 : 8);
+        byte order = (byte) (byteOrder == ByteOrder.BIG_ENDIAN ? 'M' : 'I');
+        header.put(order).put(order);
+        if (bigTiff) {
+            header.putShort((short) 43).putShort((short) 8).putShort((short) 0);
+        } else {
+            header.putShort((short) 42);
+        }
+        out.write(header.array(), 0, header.capacity());
+
+        long[] directoryOffsets = new long[pages.size()];
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            if (!page.subIfds.isEmpty()) {
+                long[] subIfdOffsets = new long[page.subIfds.size()];
+                for (int j = 0; j < subIfdOffsets.length; j++) {
+                    subIfdOffsets[j] = write(page.subIfds.get(j), out);
+                }
+                current = page;
+                longs(FieldTagType.SubIFDs, subIfdOffsets);
+            }
+            directoryOffsets[i] = write(page, out);
+        }
+
+        byte[] bytes = out.toByteArray();
+        ByteBuffer buffer = ByteBuffer.wrap(bytes).order(byteOrder);
+        putOffset(buffer, bigTiff ? 8 : 4, directoryOffsets[0]);
+        for (int i = 0; i + 1 < pages.size(); i++) {
+            putOffset(buffer, pages.get(i).nextOffsetPosition, directoryOffsets[i + 1]);
+        }
+        return bytes;
+    }
+
+    /**
+     * Write the blocks, out-of-line values and directory of a page, with a 0
+     * next IFD offset
+     *
+     * @return directory offset
+     */
+    private long write(Page page, ByteArrayOutputStream out) {
+        int offsetBytes = bigTiff ? 8 : 4;
+        current = page;
+        if (page.offsetsTag != null) {
+            long[] offsets = new long[page.blocks.size()];
+            long[] byteCounts = new long[page.blocks.size()];
+            for (int i = 0; i < page.blocks.size(); i++) {
+                offsets[i] = out.size();
+                byteCounts[i] = page.blocks.get(i).length;
+                out.write(page.blocks.get(i), 0, page.blocks.get(i).length);
+            }
+            longs(page.offsetsTag, offsets);
+            longs(page.byteCountsTag, byteCounts);
+        }
+
+        // Out-of-line values
+        Map<Integer, Long> valueOffsets = new TreeMap<>();
+        for (Map.Entry<Integer, Entry> entry : page.entries.entrySet()) {
+            byte[] values = entry.getValue().values;
+            if (values.length > offsetBytes) {
+                if (out.size() % 2 != 0) {
+                    out.write(0);
+                }
+                valueOffsets.put(entry.getKey(), (long) out.size());
+                out.write(values, 0, values.length);
+            }
+        }
+        if (out.size() % 2 != 0) {
+            out.write(0);
+        }
+
+        long directoryOffset = out.size();
+        int entryBytes = bigTiff ? 20 : 12;
+        ByteBuffer directory = allocate((bigTiff ? 8 : 2) + page.entries.size() * entryBytes + offsetBytes);
+        if (bigTiff) {
+            directory.putLong(page.entries.size());
+        } else {
+            directory.putShort((short) page.entries.size());
+        }
+        for (Map.Entry<Integer, Entry> entry : page.entries.entrySet()) {
+            Entry value = entry.getValue();
+            directory.putShort((short) (int) entry.getKey());
+            directory.putShort((short) value.type.getValue());
+            if (bigTiff) {
+                directory.putLong(value.count);
+            } else {
+                directory.putInt((int) value.count);
+            }
+            Long valueOffset = valueOffsets.get(entry.getKey());
+            if (valueOffset != null) {
+                putOffset(directory, directory.position(), valueOffset);
+                directory.position(directory.position() + offsetBytes);
+            } else {
+                byte[] inline = new byte[offsetBytes];
+                System.arraycopy(value.values, 0, inline, 0, value.values.length);
+                directory.put(inline);
+            }
+        }
+        page.nextOffsetPosition = (int) directoryOffset + directory.position();
+        out.write(directory.array(), 0, directory.capacity());
+        return directoryOffset;
+    }
+
+    private void putOffset(ByteBuffer buffer, int position, long offset) {
+        if (bigTiff) {
+            buffer.putLong(position, offset);
+        } else {
+            buffer.putInt(position, (int) offset);
+        }
+    }
+
+    private ByteBuffer allocate(int bytes) {
+        return ByteBuffer.allocate(bytes).order(byteOrder);
+    }
+
+    /**
+     * Page or sub IFD
+     */
+    private static final class Page {
+
+        private final Map<Integer, Entry> entries = new TreeMap<>();
+
+        private final List<byte[]> blocks = new ArrayList<>();
+
+        private final List<Page> subIfds = new ArrayList<>();
+
+        private FieldTagType offsetsTag;
+
+        private FieldTagType byteCountsTag;
+
+        /**
+         * Position of the next IFD offset, once written
+         */
+        private int nextOffsetPosition;
+
+    }
+
+    private static final class Entry {
+
+        private final FieldType type;
+
+        private final long count;
+
+        private final byte[] values;
+
+        private Entry(FieldType type, long count, byte[] values) {
+            this.type = type;
+            this.count = count;
+            this.values = values;
+        }
+
+    }
+
+}
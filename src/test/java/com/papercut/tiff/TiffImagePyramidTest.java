@@ -0,0 +1,151 @@
+package com.papercut.tiff;
+
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.TiffConstants;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 图像金字塔划分和层级选择测试
+ */
+public class TiffImagePyramidTest {
+
+    private static final int FULL = 0;
+
+    private static final int REDUCED = TiffConstants.NEW_SUBFILE_TYPE_REDUCED_IMAGE;
+
+    private static final int MASK = TiffConstants.NEW_SUBFILE_TYPE_TRANSPARENCY_MASK;
+
+    /**
+     * Describe the current page or sub IFD of the builder
+     */
+    private static TiffBuilder image(TiffBuilder builder, int width, int height, int subfileType) {
+        return builder.longs(FieldTagType.NewSubfileType, subfileType)
+                .image(width, height, 1, 8)
+                .strips(height, new byte[1]);
+    }
+
+    private static List<TiffImagePyramid> pyramids(TiffBuilder builder) throws Exception {
+        try (RandomTiffFile file = new RandomTiffFile(builder.build())) {
+            return file.getImagePyramids();
+        }
+    }
+
+    private static void assertLevels(TiffImagePyramid pyramid, int... widths) {
+        assertEquals(widths.length, pyramid.getLevelCount());
+        for (int level = 0; level < widths.length; level++) {
+            assertEquals("Level " + level, widths[level],
+                    pyramid.getLevel(level).getImageWidth().intValue());
+        }
+    }
+
+    /**
+     * Pyramid of a full resolution page followed by overview pages
+     */
+    private static TiffImagePyramid pyramid(int fullWidth, int fullHeight, int... overviewSizes)
+            throws Exception {
+        TiffBuilder builder = image(new TiffBuilder(ByteOrder.LITTLE_ENDIAN), fullWidth, fullHeight, FULL);
+        for (int i = 0; i < overviewSizes.length; i += 2) {
+            image(builder.page(), overviewSizes[i], overviewSizes[i + 1], REDUCED);
+        }
+        List<TiffImagePyramid> pyramids = pyramids(builder);
+        assertEquals(1, pyramids.size());
+        return pyramids.get(0);
+    }
+
+    @Test
+    public void pageOverviewsBySize() throws Exception {
+        TiffBuilder builder = new TiffBuilder(ByteOrder.BIG_ENDIAN);
+        image(builder, 64, 32, FULL);
+        image(builder.page(), 16, 8, REDUCED);
+        image(builder.page(), 64, 32, MASK);
+        image(builder.page(), 32, 16, REDUCED);
+        image(builder.page(), 10, 10, FULL);
+        image(builder.page(), 5, 5, REDUCED);
+
+        List<TiffImagePyramid> pyramids = pyramids(builder);
+        assertEquals(2, pyramids.size());
+        assertLevels(pyramids.get(0), 64, 32, 16);
+        assertLevels(pyramids.get(1), 10, 5);
+        assertEquals(0.25, pyramids.get(0).getScale(2), 0);
+    }
+
+    @Test
+    public void subIfdOverviews() throws Exception {
+        TiffBuilder builder = new TiffBuilder(ByteOrder.LITTLE_ENDIAN);
+        image(builder, 100, 80, FULL);
+        image(builder.subIfd(), 25, 20, REDUCED);
+        image(builder.subIfd(), 50, 40, REDUCED | MASK);
+        image(builder.subIfd(), 50, 40, REDUCED);
+        image(builder.page(), 13, 10, REDUCED);
+
+        List<TiffImagePyramid> pyramids = pyramids(builder);
+        assertEquals(1, pyramids.size());
+        assertLevels(pyramids.get(0), 100, 50, 25, 13);
+        assertEquals(3, pyramids.get(0).getOverviews().size());
+    }
+
+    /**
+     * Overviews not smaller than the full resolution image are ignored, a
+     * leading mask does not start a pyramid
+     */
+    @Test
+    public void maskAndLargerOverviewsAreSkipped() throws Exception {
+        TiffBuilder builder = new TiffBuilder(ByteOrder.LITTLE_ENDIAN);
+        image(builder, 40, 40, MASK);
+        image(builder.page(), 40, 40, FULL);
+        image(builder.page(), 40, 40, REDUCED);
+        image(builder.page(), 80, 20, REDUCED);
+        image(builder.page(), 20, 20, REDUCED);
+
+        List<TiffImagePyramid> pyramids = pyramids(builder);
+        assertEquals(1, pyramids.size());
+        assertLevels(pyramids.get(0), 40, 20);
+    }
+
+    @Test
+    public void selectLevelBySize() throws Exception {
+        TiffImagePyramid pyramid = pyramid(1000, 800, 250, 200, 125, 100, 500, 400);
+        assertLevels(pyramid, 1000, 500, 250, 125);
+
+        assertEquals(3, pyramid.selectLevel(1, 1));
+        assertEquals(3, pyramid.selectLevel(125, 100));
+        assertEquals(2, pyramid.selectLevel(126, 100));
+        assertEquals(2, pyramid.selectLevel(250, 200));
+
+        // Between levels, the smaller level must cover both dimensions
+        assertEquals(1, pyramid.selectLevel(300, 150));
+        assertEquals(1, pyramid.selectLevel(200, 201));
+
+        // Larger than the full resolution image
+        assertEquals(0, pyramid.selectLevel(501, 400));
+        assertEquals(0, pyramid.selectLevel(2000, 1600));
+        assertEquals(0, pyramid.selectLevel(2000, 1));
+    }
+
+    /**
+     * Scaled sizes are rounded down, overviews of odd sizes are rounded
+     * down when written
+     */
+    @Test
+    public void selectLevelByScale() throws Exception {
+        TiffImagePyramid pyramid = pyramid(1001, 801, 500, 400, 250, 200);
+
+        assertEquals(1, pyramid.selectLevel(0.5));
+        assertEquals(2, pyramid.selectLevel(0.25));
+        assertEquals(2, pyramid.selectLevel(0.1));
+
+        // Between levels
+        assertEquals(1, pyramid.selectLevel(0.26));
+        assertEquals(2, pyramid.selectLevel(0.2499));
+        assertEquals(0, pyramid.selectLevel(0.5 + 1.0 / 1001));
+
+        assertEquals(0, pyramid.selectLevel(1.0));
+        assertEquals(0, pyramid.selectLevel(1.5));
+    }
+
+}
@@ -0,0 +1,99 @@
+package com.papercut.tiff;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 元数据缓存测试
+ */
+public class TiffMetadataCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private String tiff(String name) throws Exception {
+        File file = folder.newFile(name);
+        Files.write(file.toPath(), new TiffBuilder(ByteOrder.LITTLE_ENDIAN)
+                .image(4, 2, 1, 8)
+                .strips(1, new byte[4], new byte[4])
+                .build());
+        return file.getPath();
+    }
+
+    private static long open(String path, TiffMetadataCache cache) throws Exception {
+        try (RandomTiffFile file = new RandomTiffFile(path, "r",
+                new TiffReadOptions().setMetadataCache(cache))) {
+            file.getPage(0);
+            return file.getMetadataCache().getBytes();
+        }
+    }
+
+    @Test
+    public void parsedPagesAreAccounted() throws Exception {
+        String path = tiff("a.tif");
+        TiffMetadataCache cache = new TiffMetadataCache(4, Long.MAX_VALUE);
+        long bytes;
+        try (RandomTiffFile file = new RandomTiffFile(path, "r",
+                new TiffReadOptions().setMetadataCache(cache))) {
+            long opened = cache.getBytes();
+            file.getPage(0);
+            bytes = cache.getBytes();
+            assertTrue(bytes > opened);
+        }
+
+        // Reopening reuses the metadata without growing it
+        try (RandomTiffFile file = new RandomTiffFile(path, "r",
+                new TiffReadOptions().setMetadataCache(cache))) {
+            file.getPage(0);
+            assertEquals(bytes, cache.getBytes());
+            assertEquals(1, cache.getHits());
+        }
+
+        cache.clear();
+        assertEquals(0, cache.getBytes());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void entryLimitEvictsLeastRecentlyUsed() throws Exception {
+        TiffMetadataCache cache = new TiffMetadataCache(2, Long.MAX_VALUE);
+        String a = tiff("a.tif");
+        open(a, cache);
+        long single = cache.getBytes();
+        open(tiff("b.tif"), cache);
+        open(a, cache);
+        open(tiff("c.tif"), cache);
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(2 * single, cache.getBytes());
+
+        // b was least recently used, a is still cached
+        long hits = cache.getHits();
+        open(a, cache);
+        assertEquals(hits + 1, cache.getHits());
+    }
+
+    @Test
+    public void byteBudgetIsEnforced() throws Exception {
+        TiffMetadataCache probe = new TiffMetadataCache(4, Long.MAX_VALUE);
+        long single = open(tiff("probe.tif"), probe);
+
+        TiffMetadataCache cache = new TiffMetadataCache(16, single * 2 + single / 2);
+        for (int i = 0; i < 5; i++) {
+            open(tiff(i + ".tif"), cache);
+            assertTrue(cache.getBytes() <= cache.getMaxBytes());
+        }
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getEvictions());
+        assertEquals(2 * single, cache.getBytes());
+    }
+
+}
@@ -0,0 +1,160 @@
+package com.papercut.tiff;
+
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.FieldType;
+import com.papercut.tiff.expection.TiffException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 元数据索引测试
+ */
+public class TiffSidecarIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * Sidecar header bytes before the page CRC, and the position of the
+     * first page of a single page index
+     */
+    private static final int PAGE_CRC_POSITION = 38;
+
+    private static final int FIRST_PAGE_POSITION = PAGE_CRC_POSITION + 8 + 16;
+
+    private static byte[] tiff(int width) {
+        return new TiffBuilder(ByteOrder.BIG_ENDIAN)
+                .image(width, 2, 1, 8)
+                .bytes(FieldTagType.ImageDescription, FieldType.ASCII,
+                        "abc\0".getBytes(StandardCharsets.US_ASCII))
+                .strips(1, new byte[width], new byte[width])
+                .build();
+    }
+
+    /**
+     * Write the index of a new TIFF file
+     */
+    private Path indexed() throws Exception {
+        File file = folder.newFile("a.tif");
+        Files.write(file.toPath(), tiff(3));
+        try (RandomTiffFile tiff = open(file.toPath())) {
+            tiff.getPage(0);
+        }
+        return file.toPath();
+    }
+
+    private static RandomTiffFile open(Path path) throws Exception {
+        return new RandomTiffFile(path.toString(), "r",
+                new TiffReadOptions().setMetadataCache(null).setSidecarIndex(true));
+    }
+
+    @Test
+    public void indexIsWrittenAndReused() throws Exception {
+        File file = folder.newFile("a.tif");
+        Files.write(file.toPath(), tiff(3));
+        Path sidecar = TiffSidecarIndex.getSidecarPath(file.toPath());
+        assertFalse(Files.exists(sidecar));
+
+        try (RandomTiffFile tiff = open(file.toPath())) {
+            assertEquals(3, tiff.getPage(0).getImageWidth().intValue());
+        }
+        assertTrue(Files.exists(sidecar));
+
+        try (RandomTiffFile tiff = open(file.toPath())) {
+            FileDirectory page = tiff.getPage(0);
+            assertEquals(3, page.getImageWidth().intValue());
+            assertEquals(2, page.getBlockCount());
+            assertArrayEquals(new byte[3], page.getBlock(1));
+        }
+    }
+
+    @Test
+    public void staleIndexIsRebuiltWhileOpen() throws Exception {
+        File file = folder.newFile("a.tif");
+        Files.write(file.toPath(), tiff(3));
+        Path sidecar = TiffSidecarIndex.getSidecarPath(file.toPath());
+        try (RandomTiffFile tiff = open(file.toPath())) {
+            tiff.getPage(0);
+        }
+        byte[] stale = Files.readAllBytes(sidecar);
+
+        // A reader holding the loaded index must not prevent the rebuild
+        try (RandomTiffFile reader = open(file.toPath())) {
+            reader.getPage(0);
+            Files.write(file.toPath(), tiff(5));
+            Files.setLastModifiedTime(file.toPath(),
+                    FileTime.fromMillis(Files.getLastModifiedTime(file.toPath()).toMillis() + 2000));
+            try (RandomTiffFile tiff = open(file.toPath())) {
+                assertEquals(5, tiff.getPage(0).getImageWidth().intValue());
+            }
+        }
+        assertFalse(Arrays.equals(stale, Files.readAllBytes(sidecar)));
+    }
+
+    @Test
+    public void corruptPageIsRebuilt() throws Exception {
+        Path path = indexed();
+        Path sidecar = TiffSidecarIndex.getSidecarPath(path);
+        byte[] index = Files.readAllBytes(sidecar);
+
+        // Entry count of the first page far beyond the index
+        byte[] corrupt = index.clone();
+        ByteBuffer.wrap(corrupt).putInt(FIRST_PAGE_POSITION, Integer.MAX_VALUE);
+        Files.write(sidecar, corrupt);
+
+        try (RandomTiffFile tiff = open(path)) {
+            FileDirectory page = tiff.getPage(0);
+            assertEquals(3, page.getImageWidth().intValue());
+            assertEquals(2, page.getBlockCount());
+        }
+        assertArrayEquals(index, Files.readAllBytes(sidecar));
+    }
+
+    @Test
+    public void negativeStringLengthIsRejected() throws Exception {
+        Path path = indexed();
+        Path sidecar = TiffSidecarIndex.getSidecarPath(path);
+        byte[] index = Files.readAllBytes(sidecar);
+
+        // Negative length of the description string, with a matching CRC
+        int characters = indexOf(index, "abc".getBytes(StandardCharsets.US_ASCII));
+        ByteBuffer buffer = ByteBuffer.wrap(index);
+        assertEquals(3, buffer.getInt(characters - 4));
+        buffer.putInt(characters - 4, -1);
+        CRC32 crc = new CRC32();
+        crc.update(index, FIRST_PAGE_POSITION, index.length - FIRST_PAGE_POSITION);
+        buffer.putLong(PAGE_CRC_POSITION, crc.getValue());
+        Files.write(sidecar, index);
+
+        try (RandomTiffFile tiff = open(path)) {
+            assertThrows(TiffException.class, () -> tiff.getPage(0));
+        }
+    }
+
+    private static int indexOf(byte[] bytes, byte[] sequence) {
+        for (int i = 0; i + sequence.length <= bytes.length; i++) {
+            if (Arrays.equals(sequence, Arrays.copyOfRange(bytes, i, i + sequence.length))) {
+                return i;
+            }
+        }
+        throw new AssertionError("Sequence not found");
+    }
+
+}
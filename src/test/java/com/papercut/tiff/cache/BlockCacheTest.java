@@ -0,0 +1,68 @@
+package com.papercut.tiff.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 单目录块缓存测试
+ */
+public class BlockCacheTest {
+
+    @Test
+    public void byteBudgetIsEnforced() {
+        BlockCache cache = new BlockCache(1000);
+        for (int i = 0; i < 50; i++) {
+            cache.put(i, new byte[90 + i]);
+            assertTrue(cache.getBytes() <= cache.getMaxBytes());
+        }
+        long bytes = 0;
+        for (int i = 0; i < 50; i++) {
+            byte[] block = cache.get(i);
+            if (block != null) {
+                bytes += block.length;
+            }
+        }
+        assertEquals(cache.getBytes(), bytes);
+        assertEquals(50 - cache.size(), cache.getEvictions());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() {
+        BlockCache cache = new BlockCache(300);
+        byte[] first = new byte[100];
+        cache.put(0, first);
+        cache.put(1, new byte[100]);
+        cache.put(2, new byte[100]);
+        assertSame(first, cache.get(0));
+        cache.put(3, new byte[100]);
+        assertNotNull(cache.get(0));
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(2));
+        assertNotNull(cache.get(3));
+    }
+
+    @Test
+    public void replacedBlockIsAccounted() {
+        BlockCache cache = new BlockCache(300);
+        cache.put(0, new byte[100]);
+        cache.put(0, new byte[40]);
+        assertEquals(40, cache.getBytes());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void oversizedBlockIsNotCached() {
+        BlockCache cache = new BlockCache(100);
+        cache.put(0, new byte[50]);
+        cache.put(1, new byte[101]);
+        assertNull(cache.get(1));
+        assertNotNull(cache.get(0));
+        assertEquals(50, cache.getBytes());
+    }
+
+}
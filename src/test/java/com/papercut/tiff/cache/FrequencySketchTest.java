@@ -0,0 +1,54 @@
+package com.papercut.tiff.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 访问频率统计测试
+ */
+public class FrequencySketchTest {
+
+    @Test
+    public void countsSaturate() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment(42);
+        }
+        assertEquals(15, sketch.frequency(42));
+    }
+
+    @Test
+    public void packedCountersAreIndependent() {
+        FrequencySketch sketch = new FrequencySketch(1024);
+        for (int key = 0; key < 256; key++) {
+            for (int i = 0; i < key % 16; i++) {
+                sketch.increment(key);
+            }
+        }
+        int exact = 0;
+        for (int key = 0; key < 256; key++) {
+            int frequency = sketch.frequency(key);
+            assertTrue(frequency >= key % 16);
+            if (frequency == key % 16) {
+                exact++;
+            }
+        }
+        assertTrue("Exact estimates: " + exact, exact > 200);
+    }
+
+    @Test
+    public void countsDecay() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment(7);
+        }
+        // A sketch for 64 entries halves its counters after 640 additions
+        for (int key = 1000; key < 2000; key++) {
+            sketch.increment(key);
+        }
+        assertTrue(sketch.frequency(7) <= 7);
+    }
+
+}
@@ -0,0 +1,154 @@
+package com.papercut.tiff.cache;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 堆外块缓存测试
+ */
+public class OffHeapBlockCacheTest {
+
+    private static final int SLAB_BYTES = 64 * 1024;
+
+    private static final int CHUNK_BYTES = 4 * 1024;
+
+    private static final int CHUNKS_PER_SLAB = SLAB_BYTES / CHUNK_BYTES;
+
+    private static BlockKey key(int index) {
+        return new BlockKey(1, 8, index, 0);
+    }
+
+    private static byte[] block(int index, int length) {
+        byte[] block = new byte[length];
+        for (int i = 0; i < length; i++) {
+            block[i] = (byte) (index * 7 + i);
+        }
+        return block;
+    }
+
+    private static void assertBlock(OffHeapBlockCache cache, int index, int length) {
+        try (CachedBlock cached = cache.get(key(index))) {
+            assertNotNull("Block " + index, cached);
+            assertEquals(length, cached.length());
+            byte[] bytes = new byte[length];
+            cached.getBuffer().duplicate().get(bytes);
+            assertEquals(ByteBuffer.wrap(block(index, length)), ByteBuffer.wrap(bytes));
+        }
+    }
+
+    @Test
+    public void byteBudgetIsEnforced() {
+        OffHeapBlockCache cache = new OffHeapBlockCache(2 * SLAB_BYTES, SLAB_BYTES);
+        for (int i = 0; i < 10 * CHUNKS_PER_SLAB; i++) {
+            assertTrue(cache.put(key(i), block(i, CHUNK_BYTES - i % 100)));
+            assertTrue(cache.getAllocatedBytes() <= cache.getMaxBytes());
+        }
+        assertEquals(2 * CHUNKS_PER_SLAB, cache.size());
+        assertEquals(8 * CHUNKS_PER_SLAB, cache.getEvictions());
+        for (int i = 8 * CHUNKS_PER_SLAB; i < 10 * CHUNKS_PER_SLAB; i++) {
+            assertBlock(cache, i, CHUNK_BYTES - i % 100);
+        }
+    }
+
+    @Test
+    public void evictedChunksAreReused() {
+        OffHeapBlockCache cache = new OffHeapBlockCache(SLAB_BYTES, SLAB_BYTES);
+        for (int i = 0; i < CHUNKS_PER_SLAB; i++) {
+            cache.put(key(i), block(i, CHUNK_BYTES));
+        }
+        assertBlock(cache, 0, CHUNK_BYTES);
+        cache.put(key(100), block(100, CHUNK_BYTES));
+
+        // Block 1 was least recently used, its chunk now holds block 100
+        assertNull(cache.get(key(1)));
+        assertBlock(cache, 0, CHUNK_BYTES);
+        assertBlock(cache, 100, CHUNK_BYTES);
+        assertEquals(SLAB_BYTES, cache.getAllocatedBytes());
+        assertEquals(1, cache.getEvictions());
+    }
+
+    @Test
+    public void referencedBlocksAreNotEvicted() {
+        OffHeapBlockCache cache = new OffHeapBlockCache(SLAB_BYTES, SLAB_BYTES);
+        for (int i = 0; i < CHUNKS_PER_SLAB; i++) {
+            cache.put(key(i), block(i, CHUNK_BYTES));
+        }
+        CachedBlock held = cache.get(key(0));
+        for (int i = 100; i < 100 + 2 * CHUNKS_PER_SLAB; i++) {
+            cache.put(key(i), block(i, CHUNK_BYTES));
+        }
+        assertBlock(cache, 0, CHUNK_BYTES);
+        held.close();
+        assertThrows(IllegalStateException.class, held::getBuffer);
+    }
+
+    @Test
+    public void removedBlockIsFreedOnRelease() {
+        OffHeapBlockCache cache = new OffHeapBlockCache(SLAB_BYTES, SLAB_BYTES);
+        cache.put(key(0), block(0, CHUNK_BYTES));
+        CachedBlock held = cache.get(key(0));
+        cache.clear();
+        assertNull(cache.get(key(0)));
+
+        // The removed chunk is not reused while referenced
+        for (int i = 1; i < CHUNKS_PER_SLAB; i++) {
+            assertTrue(cache.put(key(i), block(i, CHUNK_BYTES)));
+        }
+        byte[] bytes = new byte[CHUNK_BYTES];
+        held.getBuffer().duplicate().get(bytes);
+        assertEquals(ByteBuffer.wrap(block(0, CHUNK_BYTES)), ByteBuffer.wrap(bytes));
+
+        // Once released it takes the next block without an eviction
+        held.close();
+        assertTrue(cache.put(key(CHUNKS_PER_SLAB), block(CHUNKS_PER_SLAB, CHUNK_BYTES)));
+        assertEquals(0, cache.getEvictions());
+        assertEquals(CHUNKS_PER_SLAB, cache.size());
+        for (int i = 1; i <= CHUNKS_PER_SLAB; i++) {
+            assertBlock(cache, i, CHUNK_BYTES);
+        }
+    }
+
+    @Test
+    public void slabsMoveBetweenSizeClasses() {
+        OffHeapBlockCache cache = new OffHeapBlockCache(SLAB_BYTES, SLAB_BYTES);
+        cache.put(key(0), block(0, CHUNK_BYTES));
+        CachedBlock held = cache.get(key(0));
+
+        // The only slab holds a referenced small block
+        assertFalse(cache.put(key(1), block(1, SLAB_BYTES)));
+        assertEquals(1, cache.getRejections());
+        held.close();
+
+        // Reclaimed once unreferenced
+        assertTrue(cache.put(key(1), block(1, SLAB_BYTES)));
+        assertNull(cache.get(key(0)));
+        assertBlock(cache, 1, SLAB_BYTES);
+        assertEquals(SLAB_BYTES, cache.getAllocatedBytes());
+
+        // And back to the small size class after clearing
+        cache.clear();
+        for (int i = 10; i < 10 + CHUNKS_PER_SLAB; i++) {
+            assertTrue(cache.put(key(i), block(i, 1000)));
+        }
+        for (int i = 10; i < 10 + CHUNKS_PER_SLAB; i++) {
+            assertBlock(cache, i, 1000);
+        }
+    }
+
+    @Test
+    public void oversizedBlockIsRejected() {
+        OffHeapBlockCache cache = new OffHeapBlockCache(SLAB_BYTES, SLAB_BYTES);
+        assertFalse(cache.put(key(0), new byte[SLAB_BYTES + 1]));
+        assertEquals(1, cache.getRejections());
+        assertEquals(0, cache.getAllocatedBytes());
+    }
+
+}
@@ -0,0 +1,165 @@
+package com.papercut.tiff.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * W-TinyLFU共享块缓存测试
+ */
+public class SharedBlockCacheTest {
+
+    private static final int BLOCK_BYTES = 16 * 1024;
+
+    private static final int CAPACITY = 100;
+
+    private static BlockKey key(int index) {
+        return new BlockKey(1, 8, index, 0);
+    }
+
+    /**
+     * Read a block through the cache, caching it on a miss
+     */
+    private static byte[] read(SharedBlockCache cache, int index) {
+        byte[] block = cache.get(key(index));
+        if (block == null) {
+            block = new byte[BLOCK_BYTES];
+            block[0] = (byte) index;
+            cache.put(key(index), block);
+        }
+        return block;
+    }
+
+    @Test
+    public void byteBudgetIsEnforced() {
+        SharedBlockCache cache = new SharedBlockCache((long) CAPACITY * BLOCK_BYTES);
+        for (int i = 0; i < 5 * CAPACITY; i++) {
+            read(cache, i);
+            assertTrue(cache.getBytes() <= cache.getMaxBytes());
+        }
+        assertEquals((long) cache.size() * BLOCK_BYTES, cache.getBytes());
+        assertTrue(cache.size() <= CAPACITY);
+    }
+
+    @Test
+    public void scanDoesNotEvictHotBlocks() {
+        SharedBlockCache cache = new SharedBlockCache((long) CAPACITY * BLOCK_BYTES);
+        int hot = CAPACITY / 2;
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < hot; i++) {
+                read(cache, i);
+            }
+        }
+
+        // One-off scan three times the cache size
+        for (int i = 1000; i < 1000 + 3 * CAPACITY; i++) {
+            read(cache, i);
+        }
+
+        for (int i = 0; i < hot; i++) {
+            byte[] block = cache.get(key(i));
+            assertNotNull("Hot block " + i, block);
+            assertEquals((byte) i, block[0]);
+        }
+        assertTrue(cache.getRejections() > 0);
+    }
+
+    @Test
+    public void oversizedBlockIsRejected() {
+        SharedBlockCache cache = new SharedBlockCache(BLOCK_BYTES);
+        cache.put(key(0), new byte[BLOCK_BYTES + 1]);
+        assertNull(cache.get(key(0)));
+        assertEquals(1, cache.getRejections());
+        assertEquals(0, cache.getBytes());
+    }
+
+    /**
+     * Fill the main space with blocks 0 to 98 in probation, block 1 read five
+     * times before it was cached, with block 99 in the one block window
+     */
+    private static SharedBlockCache fullCache() {
+        SharedBlockCache cache = new SharedBlockCache((long) CAPACITY * BLOCK_BYTES);
+        for (int i = 0; i < 5; i++) {
+            cache.get(key(1));
+        }
+        for (int i = 0; i < CAPACITY; i++) {
+            cache.put(key(i), new byte[BLOCK_BYTES]);
+        }
+        assertEquals(CAPACITY, cache.size());
+        return cache;
+    }
+
+    private static void frequency(SharedBlockCache cache, int index, int reads) {
+        for (int i = 0; i < reads; i++) {
+            assertNull(cache.get(key(index)));
+        }
+    }
+
+    /**
+     * A candidate beating the cold least recently used block but not the hot
+     * one after it evicts neither
+     */
+    @Test
+    public void rejectionKeepsVictims() {
+        SharedBlockCache cache = fullCache();
+        frequency(cache, 500, 2);
+        cache.put(key(500), new byte[2 * BLOCK_BYTES]);
+
+        assertEquals(0, cache.getEvictions());
+        assertNull(cache.get(key(500)));
+        assertNotNull(cache.get(key(0)));
+        assertNotNull(cache.get(key(1)));
+        assertEquals(CAPACITY - 1, cache.size());
+    }
+
+    /**
+     * A candidate beating both the cold and the hot block evicts both
+     */
+    @Test
+    public void admissionEvictsVictims() {
+        SharedBlockCache cache = fullCache();
+        frequency(cache, 500, 8);
+        cache.put(key(500), new byte[2 * BLOCK_BYTES]);
+
+        assertEquals(2, cache.getEvictions());
+        assertNotNull(cache.get(key(500)));
+        assertNull(cache.get(key(0)));
+        assertNull(cache.get(key(1)));
+        assertNotNull(cache.get(key(2)));
+        assertTrue(cache.getBytes() <= cache.getMaxBytes());
+    }
+
+    /**
+     * A block within the max bytes but larger than the main space does not
+     * empty the main space
+     */
+    @Test
+    public void blockLargerThanMainSpaceIsRejected() {
+        SharedBlockCache cache = fullCache();
+        frequency(cache, 700, 15);
+        cache.put(key(700), new byte[CAPACITY * BLOCK_BYTES]);
+
+        assertNull(cache.get(key(700)));
+        assertEquals(0, cache.getEvictions());
+        assertEquals(CAPACITY, cache.size());
+        for (int i = 0; i < CAPACITY; i++) {
+            assertNotNull("Block " + i, cache.get(key(i)));
+        }
+    }
+
+    @Test
+    public void clearEmptiesTheCache() {
+        SharedBlockCache cache = new SharedBlockCache((long) CAPACITY * BLOCK_BYTES);
+        for (int i = 0; i < 10; i++) {
+            read(cache, i);
+        }
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertNull(cache.get(key(0)));
+    }
+
+}
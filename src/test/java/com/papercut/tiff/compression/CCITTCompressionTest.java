@@ -0,0 +1,101 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.FileDirectory;
+import com.papercut.tiff.RandomTiffFile;
+import com.papercut.tiff.TiffBuilder;
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.TiffConstants;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * CCITT解码测试，使用JDK TIFF写入的G3一维、G3二维和G4单strip图像
+ */
+public class CCITTCompressionTest {
+
+    private static byte[] fixture(String name) throws Exception {
+        return Files.readAllBytes(Paths.get(CCITTCompressionTest.class.getResource(name).toURI()));
+    }
+
+    /**
+     * Pixel pattern of the fixtures, true for black
+     */
+    private static boolean black(int x, int y) {
+        if (y >= 12 && x >= 40) {
+            return ((x * 7 + y * 13) ^ (x * y)) % 5 < 2;
+        }
+        return ((x / 7) + (y / 5)) % 3 == 0 || x == y;
+    }
+
+    /**
+     * Decode the single strip and compare with the pattern, black as 1 bits
+     * of WhiteIsZero
+     */
+    private static void assertPattern(byte[] tiff, int compression) throws Exception {
+        try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+            FileDirectory directory = file.getPage(0);
+            assertEquals(compression, (int) directory.getCompression());
+            int width = directory.getImageWidth().intValue();
+            int height = directory.getImageHeight().intValue();
+            int rowBytes = (width + 7) / 8;
+            byte[] strip = directory.getBlock(0);
+            assertEquals(rowBytes * height, strip.length);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    int bit = (strip[y * rowBytes + x / 8] >>> (7 - x % 8)) & 1;
+                    assertEquals("Pixel " + x + "," + y, black(x, y) ? 1 : 0, bit);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void group3OneDimensional() throws Exception {
+        assertPattern(fixture("ccitt-g3-1d.tif"), TiffConstants.COMPRESSION_T4);
+    }
+
+    @Test
+    public void group3TwoDimensional() throws Exception {
+        assertPattern(fixture("ccitt-g3-2d.tif"), TiffConstants.COMPRESSION_T4);
+    }
+
+    @Test
+    public void group4() throws Exception {
+        assertPattern(fixture("ccitt-g4.tif"), TiffConstants.COMPRESSION_T6);
+    }
+
+    /**
+     * The G4 strip with its bits reversed, read with FillOrder 2
+     */
+    @Test
+    public void group4ReversedFillOrder() throws Exception {
+        byte[] strip;
+        int width;
+        int height;
+        try (RandomTiffFile file = new RandomTiffFile(fixture("ccitt-g4.tif"))) {
+            FileDirectory directory = file.getPage(0);
+            width = directory.getImageWidth().intValue();
+            height = directory.getImageHeight().intValue();
+            strip = file.getFile().readBytes(directory.getBlockOffset(0),
+                    (int) directory.getBlockByteCount(0));
+        }
+        for (int i = 0; i < strip.length; i++) {
+            strip[i] = (byte) (Integer.reverse(strip[i]) >>> 24);
+        }
+        byte[] tiff = new TiffBuilder(ByteOrder.LITTLE_ENDIAN)
+                .image(width, height, 1, 1)
+                .shorts(FieldTagType.Compression, TiffConstants.COMPRESSION_T6)
+                .shorts(FieldTagType.PhotometricInterpretation,
+                        TiffConstants.PHOTOMETRIC_INTERPRETATION_WHITE_IS_ZERO)
+                .shorts(FieldTagType.FillOrder, TiffConstants.FILL_ORDER_LOWER_COLUMN_LOWER_ORDER)
+                .strips(height, strip)
+                .build();
+        assertPattern(tiff, TiffConstants.COMPRESSION_T6);
+    }
+
+}
@@ -0,0 +1,108 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.RandomTiffFile;
+import com.papercut.tiff.TiffBuilder;
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.TiffConstants;
+import com.papercut.tiff.expection.TiffException;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * Deflate解码测试，包括两种Compression值和出错后复用池中的Inflater
+ */
+public class DeflateCompressionTest {
+
+    private static final int WIDTH = 64;
+
+    private static final int HEIGHT = 16;
+
+    private static byte[] image() {
+        byte[] image = new byte[WIDTH * HEIGHT];
+        for (int i = 0; i < image.length; i++) {
+            image[i] = (byte) (i % WIDTH ^ i / WIDTH * 3);
+        }
+        return image;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[data.length + 64];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        return Arrays.copyOf(buffer, length);
+    }
+
+    private static byte[] decode(byte[] input, int outputLength) {
+        byte[] output = new byte[outputLength];
+        DeflateCompression.INSTANCE.decode(input, 0, input.length, output, 0, outputLength,
+                ByteOrder.BIG_ENDIAN);
+        return output;
+    }
+
+    /**
+     * Decode the single strip of a TIFF with the compression
+     */
+    private static byte[] decodeStrip(int compression, byte[] strip) throws Exception {
+        byte[] tiff = new TiffBuilder(ByteOrder.LITTLE_ENDIAN)
+                .image(WIDTH, HEIGHT, 1, 8)
+                .shorts(FieldTagType.Compression, compression)
+                .strips(HEIGHT, strip)
+                .build();
+        try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+            return file.getPage(0).getBlock(0);
+        }
+    }
+
+    @Test
+    public void deflate() throws Exception {
+        assertArrayEquals(image(), decodeStrip(TiffConstants.COMPRESSION_DEFLATE, deflate(image())));
+    }
+
+    @Test
+    @SuppressWarnings("deprecation")
+    public void pkzipDeflate() throws Exception {
+        assertArrayEquals(image(),
+                decodeStrip(TiffConstants.COMPRESSION_PKZIP_DEFLATE, deflate(image())));
+    }
+
+    @Test
+    public void truncated() {
+        byte[] deflated = deflate(image());
+        assertThrows(TiffException.class,
+                () -> decode(Arrays.copyOf(deflated, deflated.length / 2), WIDTH * HEIGHT));
+    }
+
+    /**
+     * The inflater released after invalid data is reset before the next
+     * decode reuses it
+     */
+    @Test
+    public void inflaterIsReusedAfterInvalidData() {
+        byte[] image = image();
+        byte[] deflated = deflate(image);
+        assertArrayEquals(image, decode(deflated, image.length));
+
+        byte[] invalid = deflated.clone();
+        invalid[0] = 0;
+        for (int i = 0; i < 3; i++) {
+            assertThrows(TiffException.class, () -> decode(invalid, image.length));
+            assertArrayEquals(image, decode(deflated, image.length));
+        }
+
+        // Invalid data after a valid start
+        byte[] corrupt = deflated.clone();
+        Arrays.fill(corrupt, 4, corrupt.length, (byte) 0xff);
+        assertThrows(TiffException.class, () -> decode(corrupt, image.length));
+        assertArrayEquals(image, decode(deflated, image.length));
+    }
+
+}
@@ -0,0 +1,127 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.FileDirectory;
+import com.papercut.tiff.RandomTiffFile;
+import com.papercut.tiff.TiffBuilder;
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.FieldType;
+import com.papercut.tiff.constant.TiffConstants;
+import org.junit.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * JPEG解码测试，YCbCr 2x2子采样的tile只含扫描数据，量化表和哈夫曼表来自JPEGTables
+ */
+public class JPEGCompressionTest {
+
+    private static final int WIDTH = 32;
+
+    private static final int HEIGHT = 16;
+
+    /**
+     * Max difference from the ImageIO color conversion
+     */
+    private static final int TOLERANCE = 3;
+
+    private static final int SOF0 = 0xC0;
+
+    private static final int DQT = 0xDB;
+
+    private static final int DHT = 0xC4;
+
+    private static final int SOS = 0xDA;
+
+    @Test
+    public void sharedTablesYCbCrTile() throws Exception {
+        byte[] jpeg = jpeg();
+        ByteArrayOutputStream tables = new ByteArrayOutputStream();
+        ByteArrayOutputStream tile = new ByteArrayOutputStream();
+        split(jpeg, tables, tile);
+
+        for (ByteOrder byteOrder : new ByteOrder[] { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN }) {
+            byte[] tiff = new TiffBuilder(byteOrder)
+                    .image(WIDTH, HEIGHT, 3, 8)
+                    .shorts(FieldTagType.Compression, TiffConstants.COMPRESSION_JPEG_NEW)
+                    .shorts(FieldTagType.PhotometricInterpretation,
+                            TiffConstants.PHOTOMETRIC_INTERPRETATION_YCBCR)
+                    .shorts(FieldTagType.YCbCrSubSampling, 2, 2)
+                    .bytes(FieldTagType.JPEGTables, FieldType.UNDEFINED, tables.toByteArray())
+                    .tiles(WIDTH, HEIGHT, tile.toByteArray())
+                    .build();
+            assertDecoded(tiff, ImageIO.read(new ByteArrayInputStream(jpeg)));
+        }
+    }
+
+    private static void assertDecoded(byte[] tiff, BufferedImage expected) throws Exception {
+        try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+            FileDirectory directory = file.getPage(0);
+            byte[] block = directory.getBlock(0);
+            assertEquals(WIDTH * HEIGHT * 3, block.length);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int rgb = expected.getRGB(x, y);
+                    int index = (y * WIDTH + x) * 3;
+                    for (int sample = 0; sample < 3; sample++) {
+                        int value = (rgb >>> (16 - 8 * sample)) & 0xFF;
+                        int actual = block[index + sample] & 0xFF;
+                        assertTrue("Pixel " + x + "," + y + " sample " + sample + ": " + actual
+                                + ", expected " + value, Math.abs(actual - value) <= TOLERANCE);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Encode a color gradient with the ImageIO writer, YCbCr with 2x2 chroma
+     * subsampling
+     */
+    private static byte[] jpeg() throws Exception {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                image.setRGB(x, y, (x * 8) << 16 | (y * 16) << 8 | (255 - x * 4 - y * 4));
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "jpeg", out));
+        return out.toByteArray();
+    }
+
+    /**
+     * Split a baseline JPEG stream into a tables-only stream of its DQT and
+     * DHT segments and an abbreviated stream of the rest
+     */
+    private static void split(byte[] jpeg, ByteArrayOutputStream tables, ByteArrayOutputStream stream) {
+        tables.write(0xFF);
+        tables.write(0xD8);
+        stream.write(0xFF);
+        stream.write(0xD8);
+        int position = 2;
+        while (true) {
+            int marker = jpeg[position + 1] & 0xFF;
+            if (marker == SOS) {
+                stream.write(jpeg, position, jpeg.length - position);
+                break;
+            }
+            int length = 2 + ((jpeg[position + 2] & 0xFF) << 8 | (jpeg[position + 3] & 0xFF));
+            if (marker == SOF0) {
+                assertEquals("Luma sampling factors", 0x22, jpeg[position + 11] & 0xFF);
+            }
+            ByteArrayOutputStream segment = marker == DQT || marker == DHT ? tables : stream;
+            segment.write(jpeg, position, length);
+            position += length;
+        }
+        tables.write(0xFF);
+        tables.write(0xD9);
+    }
+
+}
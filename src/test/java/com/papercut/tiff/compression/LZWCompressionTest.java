@@ -0,0 +1,194 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.FileDirectory;
+import com.papercut.tiff.RandomTiffFile;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * LZW解码测试，覆盖高位在前和旧版低位在前两种编码、KwKwK编码以及编码宽度变化
+ */
+public class LZWCompressionTest {
+
+    private static final int CLEAR_CODE = 256;
+
+    private static final int EOI_CODE = 257;
+
+    private static byte[] decode(byte[] input, int outputLength) {
+        byte[] output = new byte[outputLength];
+        LZWCompression.INSTANCE.decode(input, 0, input.length, output, 0, outputLength,
+                ByteOrder.BIG_ENDIAN);
+        return output;
+    }
+
+    /**
+     * Codes 258 and 259 are each used as they are added: "A", "AA", "AAA"
+     */
+    @Test
+    public void kwkwkCodes() {
+        int[] codes = { CLEAR_CODE, 'A', 258, 259, EOI_CODE };
+        byte[] expected = "AAAAAA".getBytes(StandardCharsets.US_ASCII);
+        assertArrayEquals(expected, decode(pack(codes, false), expected.length));
+        assertArrayEquals(expected, decode(pack(codes, true), expected.length));
+    }
+
+    @Test
+    public void roundTrip() {
+        byte[] data = data(8000);
+        assertArrayEquals(data, decode(encode(data, false), data.length));
+    }
+
+    @Test
+    public void oldStyleRoundTrip() {
+        byte[] data = data(8000);
+        assertArrayEquals(data, decode(encode(data, true), data.length));
+    }
+
+    /**
+     * Strip written by the JDK TIFF writer, growing to 12 bit codes
+     */
+    @Test
+    public void fixture() throws Exception {
+        byte[] tiff = Files.readAllBytes(Paths.get(
+                LZWCompressionTest.class.getResource("lzw-gray.tif").toURI()));
+        try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+            FileDirectory directory = file.getPage(0);
+            int width = directory.getImageWidth().intValue();
+            int height = directory.getImageHeight().intValue();
+            byte[] strip = directory.getBlock(0);
+            assertEquals(width * height, strip.length);
+            for (int y = 0; y < height; y++) {
+                for (int x = 0; x < width; x++) {
+                    assertEquals("Pixel " + x + "," + y, gray(x, y), strip[y * width + x] & 0xff);
+                }
+            }
+        }
+    }
+
+    private static int gray(int x, int y) {
+        return ((x * 3 + y * 5) & 0xff) ^ ((x * y) % 11 == 0 ? 0x5a : 0);
+    }
+
+    /**
+     * Data with repeats over a small alphabet, long enough to widen the codes
+     * past 9 and 10 bits without filling the table
+     */
+    private static byte[] data(int length) {
+        Random random = new Random(7);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = i > 8 && random.nextInt(4) == 0 ? data[i - 1 - random.nextInt(8)]
+                    : (byte) random.nextInt(6);
+        }
+        return data;
+    }
+
+    /**
+     * Encode without clearing the table, widening the codes one code early
+     * unless old style
+     */
+    private static byte[] encode(byte[] data, boolean oldStyle) {
+        int earlyChange = oldStyle ? 0 : 1;
+        BitWriter writer = new BitWriter(oldStyle);
+        Map<String, Integer> table = new HashMap<>();
+        int next = 258;
+        int bits = 9;
+        writer.write(CLEAR_CODE, bits);
+        String string = "";
+        for (byte value : data) {
+            String extended = string + (char) (value & 0xff);
+            if (string.isEmpty() || table.containsKey(extended)) {
+                string = extended;
+                continue;
+            }
+            writer.write(code(table, string), bits);
+            table.put(extended, next++);
+            if (next + earlyChange > (1 << bits) && bits < 12) {
+                bits++;
+            }
+            if (next >= 4094) {
+                throw new IllegalStateException("Table is full");
+            }
+            string = String.valueOf((char) (value & 0xff));
+        }
+        writer.write(code(table, string), bits);
+        next++;
+        if (next + earlyChange > (1 << bits) && bits < 12) {
+            bits++;
+        }
+        writer.write(EOI_CODE, bits);
+        return writer.toByteArray();
+    }
+
+    private static int code(Map<String, Integer> table, String string) {
+        return string.length() == 1 ? string.charAt(0) : table.get(string);
+    }
+
+    private static byte[] pack(int[] codes, boolean oldStyle) {
+        BitWriter writer = new BitWriter(oldStyle);
+        for (int code : codes) {
+            writer.write(code, 9);
+        }
+        return writer.toByteArray();
+    }
+
+    /**
+     * Code writer, most significant bit first or least significant bit first
+     * for the old style
+     */
+    private static final class BitWriter {
+
+        private final boolean leastSignificantFirst;
+
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        private long buffer;
+
+        private int count;
+
+        private BitWriter(boolean leastSignificantFirst) {
+            this.leastSignificantFirst = leastSignificantFirst;
+        }
+
+        private void write(int code, int bits) {
+            if (leastSignificantFirst) {
+                buffer |= (long) code << count;
+                count += bits;
+                while (count >= 8) {
+                    out.write((int) buffer & 0xff);
+                    buffer >>>= 8;
+                    count -= 8;
+                }
+            } else {
+                buffer = (buffer << bits) | code;
+                count += bits;
+                while (count >= 8) {
+                    out.write((int) (buffer >>> (count - 8)) & 0xff);
+                    count -= 8;
+                }
+            }
+        }
+
+        private byte[] toByteArray() {
+            if (count > 0) {
+                out.write(leastSignificantFirst ? (int) buffer & 0xff
+                        : (int) (buffer << (8 - count)) & 0xff);
+                count = 0;
+            }
+            return out.toByteArray();
+        }
+
+    }
+
+}
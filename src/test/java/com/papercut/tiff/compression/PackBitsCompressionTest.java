@@ -0,0 +1,112 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.expection.TiffException;
+import org.junit.Test;
+
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * PackBits编码和解码测试
+ */
+public class PackBitsCompressionTest {
+
+    private static final PackBitsCompression PACK_BITS = PackBitsCompression.INSTANCE;
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static byte[] decode(byte[] input, int outputLength) {
+        byte[] output = new byte[outputLength];
+        PACK_BITS.decode(input, 0, input.length, output, 0, outputLength, ByteOrder.BIG_ENDIAN);
+        return output;
+    }
+
+    /**
+     * Example from the PackBits section of the TIFF 6.0 specification
+     */
+    @Test
+    public void specificationExample() {
+        byte[] packed = bytes(0xFE, 0xAA, 0x02, 0x80, 0x00, 0x2A, 0xFD, 0xAA, 0x03, 0x80, 0x00,
+                0x2A, 0x22, 0xF7, 0xAA);
+        byte[] unpacked = bytes(0xAA, 0xAA, 0xAA, 0x80, 0x00, 0x2A, 0xAA, 0xAA, 0xAA, 0xAA, 0x80,
+                0x00, 0x2A, 0x22, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA, 0xAA);
+        assertArrayEquals(unpacked, decode(packed, unpacked.length));
+    }
+
+    /**
+     * A -128 header is a no-op
+     */
+    @Test
+    public void noOpHeader() {
+        assertArrayEquals(bytes(1, 2, 2, 2), decode(bytes(0x80, 0x00, 0x01, 0x80, 0xFE, 0x02), 4));
+    }
+
+    @Test
+    public void truncated() {
+        assertThrows(TiffException.class, () -> decode(bytes(0xFD, 0x07), 5));
+    }
+
+    @Test
+    public void encodeRuns() {
+        byte[] data = bytes(1, 2, 7, 7, 7, 7, 3, 3);
+        byte[] encoded = new byte[PACK_BITS.maxEncodedLength(data.length)];
+        int length = PACK_BITS.encode(data, 0, data.length, encoded, 0, ByteOrder.BIG_ENDIAN);
+        assertArrayEquals(bytes(0x01, 1, 2, 0xFD, 7, 0x01, 3, 3), Arrays.copyOf(encoded, length));
+    }
+
+    @Test
+    public void roundTrip() {
+        Random random = new Random(3);
+        byte[] noise = new byte[1000];
+        random.nextBytes(noise);
+        byte[] runs = new byte[1000];
+        for (int i = 0; i < runs.length; i++) {
+            runs[i] = (byte) (i / (1 + i % 7));
+        }
+        byte[] pairs = new byte[301];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = (byte) (i / 2);
+        }
+        byte[] repeat = new byte[300];
+        Arrays.fill(repeat, (byte) 0x55);
+
+        roundTrip(new byte[0]);
+        roundTrip(bytes(9));
+        roundTrip(bytes(9, 9));
+        roundTrip(bytes(9, 9, 9));
+        roundTrip(Arrays.copyOf(noise, 128));
+        roundTrip(Arrays.copyOf(noise, 129));
+        roundTrip(noise);
+        roundTrip(runs);
+        roundTrip(pairs);
+        roundTrip(repeat);
+    }
+
+    /**
+     * Encode at an offset within the max encoded length and decode back
+     */
+    private static void roundTrip(byte[] data) {
+        int maxLength = PACK_BITS.maxEncodedLength(data.length);
+        byte[] encoded = new byte[3 + maxLength];
+        int length = PACK_BITS.encode(data, 0, data.length, encoded, 3, ByteOrder.BIG_ENDIAN);
+        assertTrue("Encoded " + length + " bytes, max " + maxLength, length <= maxLength);
+
+        byte[] decoded = new byte[2 + data.length];
+        assertEquals(data.length, PACK_BITS.decode(encoded, 3, length, decoded, 2, data.length,
+                ByteOrder.BIG_ENDIAN));
+        assertArrayEquals(data, Arrays.copyOfRange(decoded, 2, decoded.length));
+    }
+
+}
@@ -0,0 +1,166 @@
+package com.papercut.tiff.compression;
+
+import com.papercut.tiff.FileDirectory;
+import com.papercut.tiff.RandomTiffFile;
+import com.papercut.tiff.TiffBuilder;
+import com.papercut.tiff.constant.FieldTagType;
+import com.papercut.tiff.constant.TiffConstants;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.assertArrayEquals;
+
+/**
+ * 预测器还原测试，16位水平差分和32位浮点预测器，分别按大端和小端字节序
+ */
+public class PredictorTest {
+
+    private static final ByteOrder[] BYTE_ORDERS = { ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN };
+
+    private static byte[] bytes(int... values) {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static byte[] shorts(ByteOrder byteOrder, int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * 2).order(byteOrder);
+        for (int value : values) {
+            buffer.putShort((short) value);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Differences wrap around 16 bits, each row restarts the sum
+     */
+    @Test
+    public void horizontal16() {
+        for (ByteOrder byteOrder : BYTE_ORDERS) {
+            byte[] block = shorts(byteOrder, 100, 5, 0xFFFD, 10, 0xFFFF, 1, 2, 3);
+            Predictor.decode(TiffConstants.PREDICTOR_HORIZONTAL, block, 0, block.length, 4, 1, 16,
+                    byteOrder);
+            assertArrayEquals(byteOrder.toString(),
+                    shorts(byteOrder, 100, 105, 102, 112, 0xFFFF, 0, 2, 5), block);
+        }
+    }
+
+    /**
+     * Each sample sums with the same sample of the previous pixel
+     */
+    @Test
+    public void horizontal16Interleaved() {
+        for (ByteOrder byteOrder : BYTE_ORDERS) {
+            byte[] block = shorts(byteOrder, 1000, 7, 1, 1, 0xFFFF, 2);
+            Predictor.decode(TiffConstants.PREDICTOR_HORIZONTAL, block, 0, block.length, 3, 2, 16,
+                    byteOrder);
+            assertArrayEquals(byteOrder.toString(),
+                    shorts(byteOrder, 1000, 7, 1001, 8, 1000, 10), block);
+        }
+    }
+
+    /**
+     * 1.0f and 2.0f stored by byte significance, 3F 40 80 00 00 00 00 00, and
+     * then byte differenced
+     */
+    @Test
+    public void floatingPoint32() {
+        byte[] differenced = bytes(0x3F, 0x01, 0x40, 0x80, 0x00, 0x00, 0x00, 0x00);
+
+        byte[] block = differenced.clone();
+        Predictor.decode(TiffConstants.PREDICTOR_FLOATINGPOINT, block, 0, block.length, 2, 1, 32,
+                ByteOrder.BIG_ENDIAN);
+        assertArrayEquals(bytes(0x3F, 0x80, 0x00, 0x00, 0x40, 0x00, 0x00, 0x00), block);
+
+        block = differenced.clone();
+        Predictor.decode(TiffConstants.PREDICTOR_FLOATINGPOINT, block, 0, block.length, 2, 1, 32,
+                ByteOrder.LITTLE_ENDIAN);
+        assertArrayEquals(bytes(0x00, 0x00, 0x80, 0x3F, 0x00, 0x00, 0x00, 0x40), block);
+    }
+
+    /**
+     * Rows of floats predicted by a test-side encoder decode back to the
+     * values, at an offset within the buffer
+     */
+    @Test
+    public void floatingPoint32Rows() {
+        int width = 5;
+        float[] values = { 0f, -1.5f, 3.25e7f, Float.MIN_VALUE, 1f / 3, 42f, -0f, 1e-20f,
+                Float.MAX_VALUE, 7.5f };
+        for (ByteOrder byteOrder : BYTE_ORDERS) {
+            ByteBuffer expected = ByteBuffer.allocate(values.length * 4).order(byteOrder);
+            for (float value : values) {
+                expected.putFloat(value);
+            }
+            byte[] block = new byte[3 + values.length * 4];
+            int rowBytes = width * 4;
+            for (int row = 0; row < values.length / width; row++) {
+                byte[] encoded = encodeFloatingPoint(Arrays.copyOfRange(values, row * width,
+                        (row + 1) * width));
+                System.arraycopy(encoded, 0, block, 3 + row * rowBytes, rowBytes);
+            }
+            Predictor.decode(TiffConstants.PREDICTOR_FLOATINGPOINT, block, 3, block.length - 3,
+                    width, 1, 32, byteOrder);
+            assertArrayEquals(byteOrder.toString(), expected.array(),
+                    Arrays.copyOfRange(block, 3, block.length));
+        }
+    }
+
+    /**
+     * A deflated strip with horizontal differencing read through the
+     * directory
+     */
+    @Test
+    public void deflatedHorizontal16Strip() throws Exception {
+        for (ByteOrder byteOrder : BYTE_ORDERS) {
+            byte[] differenced = shorts(byteOrder, 100, 5, 0xFFFD, 10, 0xFFFF, 1, 2, 3);
+            byte[] tiff = new TiffBuilder(byteOrder)
+                    .image(4, 2, 1, 16)
+                    .shorts(FieldTagType.Compression, TiffConstants.COMPRESSION_DEFLATE)
+                    .shorts(FieldTagType.Predictor, TiffConstants.PREDICTOR_HORIZONTAL)
+                    .strips(2, deflate(differenced))
+                    .build();
+            try (RandomTiffFile file = new RandomTiffFile(tiff)) {
+                FileDirectory directory = file.getPage(0);
+                assertArrayEquals(byteOrder.toString(),
+                        shorts(byteOrder, 100, 105, 102, 112, 0xFFFF, 0, 2, 5),
+                        directory.getBlock(0));
+            }
+        }
+    }
+
+    /**
+     * Store the big endian bytes of a row by significance, most significant
+     * first, and difference them
+     */
+    private static byte[] encodeFloatingPoint(float[] row) {
+        byte[] bytes = new byte[row.length * 4];
+        for (int i = 0; i < row.length; i++) {
+            int bits = Float.floatToRawIntBits(row[i]);
+            for (int significance = 0; significance < 4; significance++) {
+                bytes[significance * row.length + i] = (byte) (bits >>> (24 - 8 * significance));
+            }
+        }
+        for (int i = bytes.length - 1; i > 0; i--) {
+            bytes[i] -= bytes[i - 1];
+        }
+        return bytes;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater();
+        deflater.setInput(data);
+        deflater.finish();
+        byte[] buffer = new byte[data.length + 64];
+        int length = deflater.deflate(buffer);
+        deflater.end();
+        return Arrays.copyOf(buffer, length);
+    }
+
+}
@@ -0,0 +1,119 @@
+package com.papercut.tiff.io;
+
+import com.papercut.tiff.FileDirectory;
+import com.papercut.tiff.RandomTiffFile;
+import com.papercut.tiff.TiffBuilder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 内存映射数据来源测试，基本类型读取与ByteBuffer的结果一致
+ */
+public class MappedFileSourceTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 73 + 11);
+        }
+        return data;
+    }
+
+    private File write(byte[] data) throws IOException {
+        File file = folder.newFile();
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    @Test
+    public void primitiveReads() throws IOException {
+        byte[] data = data(257);
+        try (MappedFileSource source = new MappedFileSource(write(data), "r")) {
+            assertEquals(data.length, source.length());
+            for (ByteOrder byteOrder : Arrays.asList(ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN)) {
+                ByteBuffer expected = ByteBuffer.wrap(data).order(byteOrder);
+                for (int offset = 0; offset < data.length; offset++) {
+                    assertEquals(expected.get(offset), source.getByte(offset));
+                    if (offset + 2 <= data.length) {
+                        assertEquals(expected.getShort(offset), source.getShort(offset, byteOrder));
+                    }
+                    if (offset + 4 <= data.length) {
+                        assertEquals(expected.getInt(offset), source.getInt(offset, byteOrder));
+                        assertEquals(expected.getFloat(offset), source.getFloat(offset, byteOrder), 0);
+                    }
+                    if (offset + 8 <= data.length) {
+                        assertEquals(expected.getLong(offset), source.getLong(offset, byteOrder));
+                        assertEquals(expected.getDouble(offset), source.getDouble(offset, byteOrder), 0);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void bulkReads() throws IOException {
+        byte[] data = data(1000);
+        try (MappedFileSource source = new MappedFileSource(write(data), "r")) {
+            byte[] bytes = new byte[120];
+            source.read(880, bytes, 0, bytes.length);
+            assertArrayEquals(Arrays.copyOfRange(data, 880, 1000), bytes);
+
+            source.read(5, bytes, 20, 50);
+            assertArrayEquals(Arrays.copyOfRange(data, 5, 55), Arrays.copyOfRange(bytes, 20, 70));
+
+            for (ByteBuffer buffer : Arrays.asList(ByteBuffer.allocate(300), ByteBuffer.allocateDirect(300))) {
+                buffer.position(10);
+                source.read(333, buffer);
+                assertEquals(300, buffer.position());
+                byte[] read = new byte[290];
+                buffer.position(10);
+                buffer.get(read);
+                assertArrayEquals(Arrays.copyOfRange(data, 333, 623), read);
+            }
+        }
+    }
+
+    @Test
+    public void emptyFile() throws IOException {
+        try (MappedFileSource source = new MappedFileSource(write(new byte[0]), "r")) {
+            assertEquals(0, source.length());
+            source.read(0, new byte[0], 0, 0);
+        }
+    }
+
+    /**
+     * A TIFF read through the mapped adapter matches the in-memory read
+     */
+    @Test
+    public void mappedTiff() throws IOException {
+        byte[] strip = data(24 * 10);
+        byte[] tiff = new TiffBuilder(ByteOrder.LITTLE_ENDIAN, true)
+                .image(8, 10, 3, 8)
+                .strips(10, strip)
+                .build();
+        String path = write(tiff).getPath();
+        try (RandomTiffFile file = new RandomTiffFile(path, "r", true)) {
+            assertTrue(file.getFile().isMapped());
+            FileDirectory directory = file.getPage(0);
+            assertEquals(8, directory.getImageWidth().intValue());
+            assertEquals(3, directory.getSamplesPerPixel());
+            assertArrayEquals(strip, directory.getBlock(0));
+        }
+    }
+
+}
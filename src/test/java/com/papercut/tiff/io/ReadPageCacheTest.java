@@ -0,0 +1,105 @@
+package com.papercut.tiff.io;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * 读取页缓存测试
+ */
+public class ReadPageCacheTest {
+
+    private static final int PAGE_SIZE = 16;
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31 + 7);
+        }
+        return data;
+    }
+
+    @Test
+    public void sequentialScanReadsEachPageOnce() throws IOException {
+        byte[] data = data(100 * PAGE_SIZE + 5);
+        CountingSource source = new CountingSource(data);
+        ReadPageCache cache = new ReadPageCache(source, PAGE_SIZE, 4);
+        byte[] read = new byte[data.length];
+        for (int offset = 0; offset < data.length; offset += 3) {
+            cache.read(offset, read, offset, Math.min(3, data.length - offset));
+        }
+        assertArrayEquals(data, read);
+        for (int page = 0; page < source.pageReads.length; page++) {
+            assertEquals("Page " + page, 1, source.pageReads[page]);
+        }
+        assertEquals(source.reads, cache.getMisses());
+    }
+
+    @Test
+    public void readAheadStopsAtCachedPage() throws IOException {
+        byte[] data = data(32 * PAGE_SIZE);
+        CountingSource source = new CountingSource(data);
+        ReadPageCache cache = new ReadPageCache(source, PAGE_SIZE, 16);
+        byte[] read = new byte[1];
+        cache.read(5 * PAGE_SIZE, read, 0, 1);
+        for (int page = 0; page < 8; page++) {
+            cache.read(page * PAGE_SIZE, read, 0, 1);
+            assertEquals(data[page * PAGE_SIZE], read[0]);
+        }
+        assertEquals(1, source.pageReads[5]);
+        assertEquals(1, source.pageReads[4]);
+    }
+
+    @Test
+    public void largeReadsBypassCache() throws IOException {
+        byte[] data = data(8 * PAGE_SIZE);
+        CountingSource source = new CountingSource(data);
+        ReadPageCache cache = new ReadPageCache(source, PAGE_SIZE, 4);
+        byte[] read = new byte[3 * PAGE_SIZE];
+        cache.read(PAGE_SIZE + 1, read, 0, read.length);
+        assertArrayEquals(Arrays.copyOfRange(data, PAGE_SIZE + 1, PAGE_SIZE + 1 + read.length), read);
+        assertEquals(0, cache.getMisses());
+    }
+
+    /**
+     * Source counting the reads of each page
+     */
+    private static final class CountingSource implements ByteSource {
+
+        private final ByteBufferSource source;
+
+        private final int[] pageReads;
+
+        private int reads;
+
+        private CountingSource(byte[] data) {
+            this.source = new ByteBufferSource(data);
+            this.pageReads = new int[(data.length + PAGE_SIZE - 1) / PAGE_SIZE];
+        }
+
+        @Override
+        public long length() {
+            return source.length();
+        }
+
+        @Override
+        public void read(long offset, byte[] bytes, int off, int num) throws IOException {
+            reads++;
+            for (long page = offset / PAGE_SIZE; page <= (offset + num - 1) / PAGE_SIZE; page++) {
+                pageReads[(int) page]++;
+            }
+            source.read(offset, bytes, off, num);
+        }
+
+        @Override
+        public void close() throws IOException {
+            source.close();
+        }
+
+    }
+
+}
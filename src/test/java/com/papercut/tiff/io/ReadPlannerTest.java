@@ -0,0 +1,119 @@
+package com.papercut.tiff.io;
+
+import com.papercut.tiff.expection.TiffException;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+
+/**
+ * 读取计划测试，相邻和间隔较小的范围合并为一次读取
+ */
+public class ReadPlannerTest {
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 17 + 5);
+        }
+        return data;
+    }
+
+    private static void assertRead(ReadPlanner.Read read, long offset, int length, Integer... ranges) {
+        assertEquals(offset, read.getOffset());
+        assertEquals(length, read.length());
+        assertEquals(Arrays.asList(ranges), read.getRanges());
+    }
+
+    @Test
+    public void adjacentRangesAreMerged() {
+        ReadPlanner planner = new ReadPlanner(8, 1000);
+        List<ReadPlanner.Read> reads = planner.plan(new long[] { 100, 110, 126, 160, 300 },
+                new long[] { 10, 8, 4, 40, 10 });
+        assertEquals(3, reads.size());
+        // Adjacent, then an 8 byte gap
+        assertRead(reads.get(0), 100, 30, 0, 1, 2);
+        // 30 byte gap
+        assertRead(reads.get(1), 160, 40, 3);
+        assertRead(reads.get(2), 300, 10, 4);
+    }
+
+    @Test
+    public void rangesAreSortedByOffset() {
+        ReadPlanner planner = new ReadPlanner(0, 1000);
+        List<ReadPlanner.Read> reads = planner.plan(new long[] { 40, 0, 20, 10, 30 },
+                new long[] { 10, 10, 10, 10, 10 });
+        assertEquals(1, reads.size());
+        assertRead(reads.get(0), 0, 50, 1, 3, 2, 4, 0);
+    }
+
+    @Test
+    public void maxReadSizeSplitsReads() {
+        ReadPlanner planner = new ReadPlanner(16, 25);
+        List<ReadPlanner.Read> reads = planner.plan(new long[] { 0, 10, 20, 30, 40 },
+                new long[] { 10, 10, 10, 10, 30 });
+        assertEquals(3, reads.size());
+        assertRead(reads.get(0), 0, 20, 0, 1);
+        assertRead(reads.get(1), 20, 20, 2, 3);
+        // A single range larger than the max read size is read alone
+        assertRead(reads.get(2), 40, 30, 4);
+    }
+
+    @Test
+    public void overlappingRangesAreMerged() {
+        ReadPlanner planner = new ReadPlanner(0, 1000);
+        List<ReadPlanner.Read> reads = planner.plan(new long[] { 0, 5, 5, 0 },
+                new long[] { 10, 3, 3, 20 });
+        assertEquals(1, reads.size());
+        assertEquals(20, reads.get(0).length());
+    }
+
+    @Test
+    public void mismatchedLengths() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new ReadPlanner().plan(new long[] { 0, 10 }, new long[] { 10 }));
+    }
+
+    /**
+     * Each range gets its own bytes in the order of the offsets, with one
+     * source read per planned read
+     */
+    @Test
+    public void readSlicesMergedReads() throws IOException {
+        byte[] data = data(1000);
+        int[] reads = new int[1];
+        ByteSource source = new ByteBufferSource(data) {
+            @Override
+            public void read(long offset, byte[] bytes, int off, int num) {
+                reads[0]++;
+                super.read(offset, bytes, off, num);
+            }
+        };
+        long[] offsets = { 500, 0, 10, 990, 20, 505 };
+        long[] lengths = { 5, 10, 4, 10, 30, 0 };
+        ByteBuffer[] buffers = new ReadPlanner(16, 100).read(source, offsets, lengths);
+        assertEquals(3, reads[0]);
+        assertEquals(offsets.length, buffers.length);
+        for (int i = 0; i < offsets.length; i++) {
+            byte[] bytes = new byte[buffers[i].remaining()];
+            buffers[i].duplicate().get(bytes);
+            assertArrayEquals("Range " + i, Arrays.copyOfRange(data, (int) offsets[i],
+                    (int) (offsets[i] + lengths[i])), bytes);
+            assertEquals(0, buffers[i].position());
+        }
+    }
+
+    @Test
+    public void readPastEnd() {
+        ByteSource source = new ByteBufferSource(data(100));
+        assertThrows(TiffException.class, () -> new ReadPlanner().read(source,
+                new long[] { 0, 90 }, new long[] { 10, 20 }));
+    }
+
+}